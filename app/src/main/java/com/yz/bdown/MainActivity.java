@@ -14,6 +14,7 @@ import com.google.android.material.snackbar.Snackbar;
 import com.yz.bdown.fragment.bilibili.BilibiliFolderFragment;
 import com.yz.bdown.fragment.bilibili.BilibiliFragment;
 import com.yz.bdown.fragment.deepseek.DeepSeekFragment;
+import com.yz.bdown.utils.StreamCacheUtils;
 import com.yz.bdown.utils.SystemNotificationUtils;
 
 /**
@@ -40,6 +41,9 @@ public class MainActivity extends AppCompatActivity {
         // 创建通知渠道
         SystemNotificationUtils.createNotificationChannel(this);
 
+        // 记录应用上下文，下载时即使本次未在线播放也能复用之前缓存的流
+        StreamCacheUtils.init(this);
+
         // 设置 toolbar
         setSupportActionBar(findViewById(R.id.toolbar));
 
@@ -4,11 +4,13 @@ import static android.content.Intent.ACTION_SEND;
 import static androidx.core.content.ContextCompat.startActivity;
 import static com.google.android.material.snackbar.BaseTransientBottomBar.LENGTH_LONG;
 import static com.google.android.material.snackbar.BaseTransientBottomBar.LENGTH_SHORT;
-import static com.yz.bdown.utils.AudioConverterUtils.convertM4sToMp3;
+import static com.yz.bdown.utils.AudioConverterUtils.cancel;
+import static com.yz.bdown.utils.AudioConverterUtils.exportM4sAudioAsync;
 import static com.yz.bdown.utils.FileUtils.getFileUri;
 import static com.yz.bdown.utils.FileUtils.getFolder;
 import static com.yz.bdown.utils.FileUtils.toFile;
 
+import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.ClipData;
 import android.content.ClipboardManager;
@@ -16,61 +18,85 @@ import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Typeface;
-import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.Window;
 import android.widget.Button;
-import android.widget.Filter;
-import android.widget.Filterable;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.snackbar.Snackbar;
 import com.yz.bdown.R;
+import com.yz.bdown.contents.AudioExportModeEnum;
 import com.yz.bdown.model.bilibili.FileItem;
+import com.yz.bdown.utils.AudioConverterUtils.ConvertCallback;
 import com.yz.bdown.utils.TextExtractorUtils;
+import com.yz.bdown.utils.VideoThumbnailUtils;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * B站文件适配器
  * 用于显示和管理已下载的B站视频文件列表
+ * 浏览时按媒体库总数占位，只保留显示位置前后若干页的数据，未加载或已淘汰的位置显示为占位项并按需加载，
+ * 列表位置不随加载与淘汰变化，文件增删时按排序移动已加载的位置；搜索结果数量有上限，全部常驻，
+ * 重新搜索或重新排序时只刷新变化的位置
  */
-public class BilibiliFilePartAdapter extends RecyclerView.Adapter<BilibiliFilePartAdapter.FileViewHolder> implements Filterable {
+public class BilibiliFilePartAdapter extends RecyclerView.Adapter<BilibiliFilePartAdapter.FileViewHolder> {
 
     private static final String TAG = "BilibiliFilePartAdapter";
     private static final String BILIBILI_FOLDER = "bilibiliDown";
-
-    private final List<FileItem> fileList;
-    private final List<FileItem> fileListFull; // 用于搜索过滤
+    // 显示位置所在页前后各保留的页数，超出的页被淘汰
+    private static final int RESIDENT_RADIUS = 2;
+    // 新旧列表都不超过该数量时在后台计算差异，否则整体刷新
+    private static final int DIFF_LIMIT = 2000;
+
+    private final SparseArray<List<FileItem>> pages = new SparseArray<>(); // 常驻的页，仅在主线程修改
+    private int itemCount; // 总数，包含占位项
+    private int pageSize = 1;
+    private boolean pinned; // 搜索结果全部常驻，不淘汰也不按页加载
+    private int currentPage; // 最近绑定的位置所在页，淘汰以此为中心
+    private int submitGeneration; // 每次提交新列表加一，丢弃过期的差异结果
+    private boolean diffPending; // 差异计算中，尚未应用新列表
+    private final ExecutorService diffExecutor = Executors.newSingleThreadExecutor();
+    private PageLoader pageLoader;
     private final List<FileViewHolder> activeViewHolders = new ArrayList<>(); // 追踪所有活跃的 ViewHolder
     private OnFileItemClickListener onFileItemClickListener;
-    private final Map<String, Bitmap> thumbnailCache = new HashMap<>(); // 缩略图缓存
-    private final ExecutorService executorService = Executors.newFixedThreadPool(3); // 线程池用于加载缩略图
+    private int thumbnailWidth, thumbnailHeight; // 缩略图解码尺寸，与网格单元一致
+    // 线程池用于加载缩略图，队列后进先出，快速滑动时优先加载最新可见的项
+    private final ThreadPoolExecutor executorService = new ThreadPoolExecutor(3, 3, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingDeque<Runnable>() {
+                @Override
+                public boolean offer(Runnable runnable) {
+                    return offerFirst(runnable);
+                }
+            });
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
-    // 记录当前选中的排序方式
-    private int currentSortMethod = 0; // 0=未排序，1=按名称，2=按日期，3=按大小
-
     /**
      * 文件项点击监听器接口
      */
@@ -78,6 +104,14 @@ public class BilibiliFilePartAdapter extends RecyclerView.Adapter<BilibiliFilePa
         void onFileItemClick(FileItem fileItem);
     }
 
+    /**
+     * 分页加载接口，绑定到未加载的位置或接近页尾时调用，加载完成后调用 {@link #setPage}
+     * 同一页可能被多次请求，由实现方去重
+     */
+    public interface PageLoader {
+        void loadPage(int page);
+    }
+
     /**
      * 设置文件项点击监听器
      *
@@ -88,19 +122,454 @@ public class BilibiliFilePartAdapter extends RecyclerView.Adapter<BilibiliFilePa
     }
 
     /**
-     * 构造函数
+     * 设置分页加载接口
+     *
+     * @param loader 分页加载接口
+     */
+    public void setPageLoader(PageLoader loader) {
+        this.pageLoader = loader;
+    }
+
+    /**
+     * 重置为分页浏览，排序方式变化或索引刷新后调用
+     * 总数不变时位置一一对应，只刷新内容变化的位置；总数变化时按差异或整体刷新
+     *
+     * @param count    总数
+     * @param pageSize 每页条数
+     * @param page     已加载的页，一般为显示位置所在页
+     * @param items    该页的文件，需可修改
+     */
+    public void resetPages(int count, int pageSize, int page, List<FileItem> items) {
+        SparseArray<List<FileItem>> newPages = new SparseArray<>();
+        if (!items.isEmpty()) {
+            newPages.put(page, items);
+        }
+        submit(newPages, count, pageSize, page, false);
+    }
+
+    /**
+     * 填充一页数据，并淘汰离显示位置较远的页
+     *
+     * @param page  页码
+     * @param items 该页的文件，需可修改
+     */
+    public void setPage(int page, List<FileItem> items) {
+        // 加载期间已滑远的页、等待差异计算时旧列表的页直接丢弃
+        if (pinned || diffPending || Math.abs(page - currentPage) > RESIDENT_RADIUS) {
+            return;
+        }
+
+        pages.put(page, items);
+        // 两次加载之间媒体库可能有增删，只刷新总数范围内的位置
+        int start = page * pageSize;
+        int count = Math.min(items.size(), itemCount - start);
+        if (count > 0) {
+            notifyItemRangeChanged(start, count);
+        }
+        evictFarPages();
+    }
+
+    /**
+     * 显示搜索结果，全部常驻，与当前列表的差异在后台计算
+     *
+     * @param files 搜索结果
+     */
+    public void setFiles(List<FileItem> files) {
+        SparseArray<List<FileItem>> newPages = new SparseArray<>();
+        newPages.put(0, new ArrayList<>(files));
+        submit(newPages, files.size(), Math.max(1, files.size()), 0, true);
+    }
+
+    /**
+     * 获取当前显示列表中的下一个文件，用于预加载
+     *
+     * @param item 当前文件
+     * @return 下一个文件，没有或未加载时返回 null
+     */
+    public FileItem getNextItem(FileItem item) {
+        int position = indexOfName(item.getFileName());
+        return position >= 0 ? getItem(position + 1) : null;
+    }
+
+    /**
+     * 更新已加载的文件，排序位置不变时只刷新对应位置，否则移动到新的位置
+     *
+     * @param item  文件项
+     * @param order 当前排序方式下的顺序
+     * @return 变化的最小位置；未加载该文件或新位置不在已加载的页时返回 -1，需由调用方重新加载
+     */
+    public int updateFile(FileItem item, Comparator<FileItem> order) {
+        int position = indexOfName(item.getFileName());
+        if (position < 0) {
+            return -1;
+        }
+        if (pinned || isInOrder(position, item, order)) {
+            pages.get(position / pageSize).set(position % pageSize, item);
+            notifyItemChanged(position);
+            return position;
+        }
+
+        if (diffPending) {
+            return -1;
+        }
+        shift(position, null);
+        notifyItemRemoved(position);
+        int inserted = insertFile(item, order);
+        return inserted < 0 ? -1 : Math.min(position, inserted);
+    }
+
+    /**
+     * 按排序插入新文件，位置由已加载的相邻文件确定，之后的位置依次后移
      *
-     * @param fileList 文件列表数据
+     * @param item  文件项
+     * @param order 当前排序方式下的顺序
+     * @return 插入的位置；显示搜索结果或位置不在已加载的页时返回 -1，需由调用方重新加载
      */
-    public BilibiliFilePartAdapter(List<FileItem> fileList) {
-        this.fileList = fileList;
-        this.fileListFull = new ArrayList<>(fileList);
+    public int insertFile(FileItem item, Comparator<FileItem> order) {
+        if (pinned || diffPending) {
+            return -1;
+        }
+        int position = findInsertPosition(item, order);
+        if (position < 0) {
+            return -1;
+        }
+        shift(position, item);
+        notifyItemInserted(position);
+        return position;
+    }
+
+    /**
+     * 移除已加载的文件，之后的位置依次前移
+     *
+     * @param fileName 文件名
+     * @return 移除的位置；未加载该文件时返回 -1，需由调用方重新加载
+     */
+    public int removeFile(String fileName) {
+        int position = diffPending ? -1 : indexOfName(fileName);
+        if (position < 0) {
+            return -1;
+        }
+        shift(position, null);
+        notifyItemRemoved(position);
+        return position;
+    }
+
+    /**
+     * 获取已完整加载的页的最后一个文件，用作下一页的游标
+     *
+     * @param page 页码
+     * @return 最后一个文件，该页未完整加载时返回 null
+     */
+    public FileItem getLastItemOfPage(int page) {
+        if (pinned || !isComplete(page)) {
+            return null;
+        }
+        return pages.get(page).get(Math.min(pageSize, itemCount - page * pageSize) - 1);
+    }
+
+    /**
+     * 替换为新的列表
+     * 浏览时总数不变则位置一一对应，直接比较常驻的位置；否则在后台计算差异后在主线程应用，
+     * 列表过大时整体刷新。等待期间不接受插入与删除，有更新的提交时丢弃旧的结果
+     */
+    private void submit(SparseArray<List<FileItem>> newPages, int count, int size, int page, boolean pin) {
+        int generation = ++submitGeneration;
+        if (!pinned && !pin && count == itemCount && size == pageSize) {
+            diffPending = false;
+            SparseArray<List<FileItem>> oldPages = pages.clone();
+            apply(newPages, count, size, page, pin);
+            notifyChangedPositions(oldPages);
+            return;
+        }
+        if (itemCount > DIFF_LIMIT || count > DIFF_LIMIT) {
+            diffPending = false;
+            apply(newPages, count, size, page, pin);
+            notifyDataSetChanged();
+            return;
+        }
+
+        List<FileItem> oldList = snapshot(pages, itemCount, pageSize);
+        List<FileItem> newList = snapshot(newPages, count, size);
+        diffPending = true;
+        diffExecutor.execute(() -> {
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new ItemDiff(oldList, newList), false);
+            mainHandler.post(() -> {
+                if (generation != submitGeneration) {
+                    return;
+                }
+                diffPending = false;
+                apply(newPages, count, size, page, pin);
+                result.dispatchUpdatesTo(this);
+            });
+        });
+    }
+
+    private void apply(SparseArray<List<FileItem>> newPages, int count, int size, int page, boolean pin) {
+        pages.clear();
+        for (int i = 0; i < newPages.size(); i++) {
+            pages.put(newPages.keyAt(i), newPages.valueAt(i));
+        }
+        itemCount = count;
+        pageSize = size;
+        currentPage = page;
+        pinned = pin;
+    }
+
+    /**
+     * 逐个比较新旧常驻页覆盖的位置，内容变化的连续位置合并为一次刷新
+     */
+    private void notifyChangedPositions(SparseArray<List<FileItem>> oldPages) {
+        SparseBooleanArray touched = new SparseBooleanArray();
+        for (int i = 0; i < oldPages.size(); i++) {
+            touched.put(oldPages.keyAt(i), true);
+        }
+        for (int i = 0; i < pages.size(); i++) {
+            touched.put(pages.keyAt(i), true);
+        }
+
+        int runStart = -1;
+        int runEnd = -1;
+        for (int i = 0; i < touched.size(); i++) {
+            int start = touched.keyAt(i) * pageSize;
+            int end = Math.min(start + pageSize, itemCount);
+            for (int position = start; position < end; position++) {
+                if (ItemDiff.sameContents(getItem(oldPages, position), getItem(position))) {
+                    continue;
+                }
+                if (position != runEnd) {
+                    if (runStart >= 0) {
+                        notifyItemRangeChanged(runStart, runEnd - runStart);
+                    }
+                    runStart = position;
+                }
+                runEnd = position + 1;
+            }
+        }
+        if (runStart >= 0) {
+            notifyItemRangeChanged(runStart, runEnd - runStart);
+        }
+    }
+
+    private FileItem getItem(int position) {
+        return getItem(pages, position);
+    }
+
+    private FileItem getItem(SparseArray<List<FileItem>> source, int position) {
+        if (position < 0 || position >= itemCount) {
+            return null;
+        }
+        List<FileItem> page = source.get(position / pageSize);
+        int index = position % pageSize;
+        return page != null && index < page.size() ? page.get(index) : null;
+    }
+
+    /**
+     * 展开为完整列表，未加载的位置为 null
+     */
+    private static List<FileItem> snapshot(SparseArray<List<FileItem>> source, int count, int size) {
+        List<FileItem> list = new ArrayList<>(Collections.nCopies(count, (FileItem) null));
+        for (int i = 0; i < source.size(); i++) {
+            int start = source.keyAt(i) * size;
+            List<FileItem> page = source.valueAt(i);
+            for (int j = 0; j < page.size() && start + j < count; j++) {
+                list.set(start + j, page.get(j));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 在常驻的页中按文件名查找位置
+     *
+     * @return 位置，未加载时返回 -1
+     */
+    private int indexOfName(String fileName) {
+        for (int i = 0; i < pages.size(); i++) {
+            List<FileItem> page = pages.valueAt(i);
+            for (int j = 0; j < page.size(); j++) {
+                FileItem item = page.get(j);
+                if (item != null && item.getFileName().equals(fileName)) {
+                    int position = pages.keyAt(i) * pageSize + j;
+                    return position < itemCount ? position : -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 与已加载的相邻文件比较，判断更新后的文件是否仍在原位置；相邻位置未加载时无法判断
+     */
+    private boolean isInOrder(int position, FileItem item, Comparator<FileItem> order) {
+        FileItem previous = getItem(position - 1);
+        FileItem next = getItem(position + 1);
+        if (position > 0 && (previous == null || order.compare(previous, item) > 0)) {
+            return false;
+        }
+        return position == itemCount - 1 || (next != null && order.compare(item, next) <= 0);
+    }
+
+    /**
+     * 按顺序找到第一个排在新文件之后的已加载文件，它与前一个位置都已加载（或位于开头）时插在两者之间；
+     * 新文件排在最后且最后一个位置已加载时插在末尾
+     *
+     * @return 插入位置，落在未加载的区间时返回 -1
+     */
+    private int findInsertPosition(FileItem item, Comparator<FileItem> order) {
+        if (itemCount == 0) {
+            return 0;
+        }
+        int previous = -2; // 上一个已加载的位置
+        for (int i = 0; i < pages.size(); i++) {
+            int start = pages.keyAt(i) * pageSize;
+            List<FileItem> page = pages.valueAt(i);
+            for (int j = 0; j < page.size() && start + j < itemCount; j++) {
+                FileItem loaded = page.get(j);
+                if (loaded == null) {
+                    continue;
+                }
+                int position = start + j;
+                if (order.compare(item, loaded) < 0) {
+                    return position == 0 || previous == position - 1 ? position : -1;
+                }
+                previous = position;
+            }
+        }
+        return previous == itemCount - 1 ? itemCount : -1;
+    }
+
+    /**
+     * 插入或删除一个位置后重新分页，之后的文件依次后移或前移
+     * 移入未加载页的文件被丢弃，空出的位置在绑定时重新加载所在页
+     *
+     * @param position 位置
+     * @param inserted 插入的文件，删除时为 null
+     */
+    private void shift(int position, FileItem inserted) {
+        int delta = inserted != null ? 1 : -1;
+        SparseArray<FileItem> loaded = new SparseArray<>();
+        int[] keys = new int[pages.size()];
+        for (int i = 0; i < pages.size(); i++) {
+            keys[i] = pages.keyAt(i);
+            int start = keys[i] * pageSize;
+            List<FileItem> page = pages.valueAt(i);
+            for (int j = 0; j < page.size() && start + j < itemCount; j++) {
+                int from = start + j;
+                if (page.get(j) != null && (inserted != null || from != position)) {
+                    loaded.put(from >= position ? from + delta : from, page.get(j));
+                }
+            }
+        }
+        if (inserted != null) {
+            loaded.put(position, inserted);
+        }
+        itemCount += delta;
+
+        pages.clear();
+        for (int key : keys) {
+            int start = key * pageSize;
+            int expected = Math.min(pageSize, itemCount - start);
+            List<FileItem> page = new ArrayList<>(Math.max(expected, 0));
+            boolean any = false;
+            for (int j = 0; j < expected; j++) {
+                FileItem item = loaded.get(start + j);
+                page.add(item);
+                any |= item != null;
+            }
+            if (any) {
+                pages.put(key, page);
+            }
+        }
+    }
+
+    /**
+     * 页已常驻且总数范围内的位置都已加载
+     */
+    private boolean isComplete(int page) {
+        List<FileItem> items = pages.get(page);
+        int expected = Math.min(pageSize, itemCount - page * pageSize);
+        if (items == null || items.size() < expected) {
+            return false;
+        }
+        for (int i = 0; i < expected; i++) {
+            if (items.get(i) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 请求加载未常驻或因插入删除而不完整的页
+     */
+    private void requestPage(int page) {
+        if (pinned || pageLoader == null || page < 0 || page * pageSize >= itemCount || isComplete(page)) {
+            return;
+        }
+        pageLoader.loadPage(page);
+    }
+
+    /**
+     * 淘汰离显示位置超过 RESIDENT_RADIUS 页的数据，常驻的文件数不超过 (2 * RESIDENT_RADIUS + 1) 页
+     */
+    private void evictFarPages() {
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            if (Math.abs(pages.keyAt(i) - currentPage) > RESIDENT_RADIUS) {
+                pages.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * 列表差异回调，按文件名判断是否同一项，按大小与修改时间判断内容是否变化；未加载的位置互相视为相同
+     */
+    private static class ItemDiff extends DiffUtil.Callback {
+        private final List<FileItem> oldList;
+        private final List<FileItem> newList;
+
+        ItemDiff(List<FileItem> oldList, List<FileItem> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        static boolean sameItem(FileItem a, FileItem b) {
+            return a == null ? b == null : b != null && a.getFileName().equals(b.getFileName());
+        }
+
+        static boolean sameContents(FileItem a, FileItem b) {
+            return sameItem(a, b) && (a == null || (a.getFileSizeBytes() == b.getFileSizeBytes()
+                    && a.getLastModifiedTimestamp() == b.getLastModifiedTimestamp()));
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return sameItem(oldList.get(oldItemPosition), newList.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return sameContents(oldList.get(oldItemPosition), newList.get(newItemPosition));
+        }
     }
 
     @NonNull
     @Override
     public FileViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.bilibili_file_card, parent, false);
+        if (thumbnailWidth == 0) {
+            thumbnailWidth = VideoThumbnailUtils.getGridWidth(parent.getContext());
+            thumbnailHeight = VideoThumbnailUtils.getGridHeight(parent.getContext());
+        }
         FileViewHolder holder = new FileViewHolder(view);
         activeViewHolders.add(holder);
         return holder;
@@ -108,7 +577,21 @@ public class BilibiliFilePartAdapter extends RecyclerView.Adapter<BilibiliFilePa
 
     @Override
     public void onBindViewHolder(@NonNull FileViewHolder holder, int position) {
-        FileItem fileItem = fileList.get(position);
+        int page = position / pageSize;
+        if (page != currentPage) {
+            currentPage = page;
+            evictFarPages();
+        }
+
+        FileItem fileItem = getItem(position);
+        if (fileItem == null) {
+            bindPlaceholder(holder);
+            requestPage(page);
+            return;
+        }
+
+        // 滑过半页时预先加载前后的页
+        requestPage(position % pageSize >= pageSize / 2 ? page + 1 : page - 1);
 
         // 设置文件名和大小
         holder.fileName.setText(fileItem.getFileName());
@@ -120,7 +603,7 @@ public class BilibiliFilePartAdapter extends RecyclerView.Adapter<BilibiliFilePa
         }
 
         // 加载视频缩略图
-        loadVideoThumbnail(fileItem, holder.fileThumbnail);
+        loadVideoThumbnail(fileItem, holder);
 
         // 设置按钮点击事件
         setupButtonListeners(holder, fileItem);
@@ -133,6 +616,25 @@ public class BilibiliFilePartAdapter extends RecyclerView.Adapter<BilibiliFilePa
         });
     }
 
+    /**
+     * 绑定占位项，数据加载后位置会被刷新
+     *
+     * @param holder ViewHolder对象
+     */
+    private void bindPlaceholder(FileViewHolder holder) {
+        cancelThumbnailTask(holder);
+        holder.fileName.setText("");
+        holder.fileSize.setText("");
+        if (holder.fileDate != null) {
+            holder.fileDate.setText("");
+        }
+        holder.fileThumbnail.setImageDrawable(null);
+        holder.shareButton.setOnClickListener(null);
+        holder.musicButton.setOnClickListener(null);
+        holder.textExtractButton.setOnClickListener(null);
+        holder.itemView.setOnClickListener(null);
+    }
+
     /**
      * 设置按钮的点击监听器
      *
@@ -142,7 +644,7 @@ public class BilibiliFilePartAdapter extends RecyclerView.Adapter<BilibiliFilePa
     private void setupButtonListeners(FileViewHolder holder, FileItem fileItem) {
         // 设置分享和音乐按钮点击事件
         holder.shareButton.setOnClickListener(v -> share(fileItem, v));
-        holder.musicButton.setOnClickListener(v -> transformMp3(fileItem, v));
+        holder.musicButton.setOnClickListener(v -> showAudioExportDialog(fileItem, v));
 
         // 设置文本提取按钮点击事件
         holder.textExtractButton.setOnClickListener(v -> showTextExtractionDialog(fileItem, v));
@@ -151,40 +653,57 @@ public class BilibiliFilePartAdapter extends RecyclerView.Adapter<BilibiliFilePa
     /**
      * 加载视频缩略图
      *
-     * @param fileItem  文件项数据
-     * @param imageView 图片视图
+     * @param fileItem 文件项数据
+     * @param holder   ViewHolder对象
      */
-    private void loadVideoThumbnail(FileItem fileItem, ImageView imageView) {
-        // 先检查缓存中是否已有缩略图
-        if (thumbnailCache.containsKey(fileItem.getFileName())) {
-            imageView.setImageBitmap(thumbnailCache.get(fileItem.getFileName()));
+    private void loadVideoThumbnail(FileItem fileItem, FileViewHolder holder) {
+        ImageView imageView = holder.fileThumbnail;
+        String videoPath = Uri.parse(fileItem.getPreviewUri()).getPath();
+        long lastModified = fileItem.getLastModifiedTimestamp();
+
+        // 取消该 ViewHolder 之前绑定的加载任务
+        cancelThumbnailTask(holder);
+        holder.thumbnailPath = videoPath;
+
+        // 先检查内存缓存中是否已有缩略图
+        Bitmap cached = VideoThumbnailUtils.getCached(videoPath, lastModified, thumbnailWidth, thumbnailHeight);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
             return;
         }
+        imageView.setImageDrawable(null);
+
+        // 后台线程从磁盘缓存或视频加载缩略图
+        Context context = imageView.getContext().getApplicationContext();
+        holder.thumbnailTask = executorService.submit(() -> {
+            Bitmap bitmap = VideoThumbnailUtils.getThumbnail(context, videoPath, lastModified,
+                    thumbnailWidth, thumbnailHeight);
+            if (bitmap == null) {
+                Log.e(TAG, "无法加载视频缩略图: " + fileItem.getFileName());
+                return;
+            }
 
-        // 后台线程加载缩略图
-        executorService.execute(() -> {
-            try {
-                MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-                String videoPath = fileItem.getPreviewUri().replace("file://", "");
-                retriever.setDataSource(videoPath);
-
-                // 获取视频的第一帧作为缩略图
-                Bitmap bitmap = retriever.getFrameAtTime(0);
-                retriever.release();
-
-                if (bitmap != null) {
-                    // 缓存缩略图
-                    thumbnailCache.put(fileItem.getFileName(), bitmap);
-
-                    // 在主线程更新 UI
-                    mainHandler.post(() -> imageView.setImageBitmap(bitmap));
+            // 在主线程更新 UI，ViewHolder 已绑定其他文件时丢弃结果
+            mainHandler.post(() -> {
+                if (videoPath.equals(holder.thumbnailPath)) {
+                    imageView.setImageBitmap(bitmap);
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "无法加载视频缩略图: " + fileItem.getFileName(), e);
-            }
+            });
         });
     }
 
+    /**
+     * 取消 ViewHolder 上尚未执行的缩略图任务，已在执行的任务完成后结果会被丢弃
+     */
+    private void cancelThumbnailTask(FileViewHolder holder) {
+        if (holder.thumbnailTask != null) {
+            holder.thumbnailTask.cancel(false);
+            executorService.remove((Runnable) holder.thumbnailTask);
+            holder.thumbnailTask = null;
+        }
+        holder.thumbnailPath = null;
+    }
+
     /**
      * 分享文件
      *
@@ -223,39 +742,92 @@ public class BilibiliFilePartAdapter extends RecyclerView.Adapter<BilibiliFilePa
     }
 
     /**
-     * 转换视频为MP3格式
+     * 显示音频导出方式选择对话框
+     *
+     * @param fileItem 文件项
+     * @param v        视图
+     */
+    private void showAudioExportDialog(FileItem fileItem, View v) {
+        AudioExportModeEnum[] modes = AudioExportModeEnum.values();
+        String[] items = new String[modes.length];
+        for (int i = 0; i < modes.length; i++) {
+            items[i] = modes[i].getDisplayName();
+        }
+
+        new AlertDialog.Builder(v.getContext())
+                .setTitle("导出音频")
+                .setItems(items, (dialog, which) -> exportAudio(fileItem, v, modes[which]))
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    /**
+     * 导出视频的音频
      *
      * @param fileItem 文件项
      * @param v        视图
+     * @param mode     导出方式，默认流复制原始音轨，MP3 需重新编码
      */
-    private void transformMp3(FileItem fileItem, View v) {
+    private void exportAudio(FileItem fileItem, View v, AudioExportModeEnum mode) {
         String fileName = fileItem.getFileName();
         String fileNamePrefix = fileName.substring(0, fileName.lastIndexOf('.'));
-        String m4sPath = toFile(fileNamePrefix + "_audio.m4s", BILIBILI_FOLDER).getAbsolutePath();
-        String mp3Path = toFile(fileNamePrefix + ".mp3", BILIBILI_FOLDER).getAbsolutePath();
-
-        CompletableFuture
-                .supplyAsync(() -> convertM4sToMp3(m4sPath, mp3Path))
-                .thenAccept(result -> {
-                    final String tip = fileName + (result ? " 转换成功" : " 转换失败");
-                    Snackbar.make(v, tip, LENGTH_SHORT).show();
-                })
-                .exceptionally(throwable -> {
-                    Snackbar.make(v, "音频转换异常", LENGTH_SHORT).show();
-                    Log.e(TAG, "音频转换异常", throwable);
-                    return null;
-                });
+        File folder = getFolder(BILIBILI_FOLDER);
+        File m4sFile = new File(folder, fileNamePrefix + "_audio.m4s");
+        if (!m4sFile.exists()) {
+            Snackbar.make(v, "未找到对应的音频文件", LENGTH_LONG).show();
+            return;
+        }
+
+        String outputPathPrefix = new File(folder, fileNamePrefix).getAbsolutePath();
+        Dialog progressDialog = createProgressDialog(v.getContext(), "正在导出音频，返回键可取消...");
+        TextView progressTitle = progressDialog.findViewById(R.id.progress_title);
+        ProgressBar progressBar = progressDialog.findViewById(R.id.extraction_progress_bar);
+        progressTitle.setText(mode.getDisplayName());
+
+        long taskId = exportM4sAudioAsync(m4sFile.getAbsolutePath(), outputPathPrefix, mode, new ConvertCallback() {
+            @Override
+            public void onProgress(int progress) {
+                progressBar.setProgress(progress);
+            }
+
+            @Override
+            public void onComplete(String outputPath) {
+                progressDialog.dismiss();
+                Snackbar.make(v, new File(outputPath).getName() + " 导出成功", LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                progressDialog.dismiss();
+                Snackbar.make(v, fileName + " 音频导出失败: " + errorMessage, LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onCancel() {
+                progressDialog.dismiss();
+                Snackbar.make(v, "已取消音频导出", LENGTH_SHORT).show();
+            }
+        });
+
+        // 返回键取消转换
+        progressDialog.setCancelable(true);
+        progressDialog.setCanceledOnTouchOutside(false);
+        progressDialog.setOnCancelListener(dialog -> cancel(taskId));
+        progressDialog.show();
     }
 
     @Override
     public int getItemCount() {
-        return fileList.size();
+        return itemCount;
     }
 
     @Override
     public void onViewRecycled(@NonNull FileViewHolder holder) {
         super.onViewRecycled(holder);
         activeViewHolders.remove(holder);
+
+        // 划出屏幕的项不再加载缩略图
+        cancelThumbnailTask(holder);
     }
 
     /**
@@ -270,119 +842,8 @@ public class BilibiliFilePartAdapter extends RecyclerView.Adapter<BilibiliFilePa
      */
     public void destroy() {
         releasePlayer();
-        executorService.shutdown();
-        thumbnailCache.clear();
-    }
-
-    /**
-     * 按名称排序文件列表
-     */
-    public void sortByName() {
-        currentSortMethod = 1;
-        Collections.sort(fileList, (file1, file2) -> file1.getFileName().compareToIgnoreCase(file2.getFileName()));
-        notifyDataSetChanged();
-    }
-
-    /**
-     * 按日期排序文件列表
-     */
-    public void sortByDate() {
-        currentSortMethod = 2;
-        Collections.sort(fileList, (file1, file2) -> {
-            if (file1.getLastModifiedTimestamp() == file2.getLastModifiedTimestamp()) {
-                return 0;
-            }
-            return file1.getLastModifiedTimestamp() > file2.getLastModifiedTimestamp() ? -1 : 1;
-        });
-        notifyDataSetChanged();
-    }
-
-    /**
-     * 按大小排序文件列表
-     */
-    public void sortBySize() {
-        currentSortMethod = 3;
-        Collections.sort(fileList, (file1, file2) -> {
-            if (file1.getFileSizeBytes() == file2.getFileSizeBytes()) {
-                return 0;
-            }
-            return file1.getFileSizeBytes() > file2.getFileSizeBytes() ? -1 : 1;
-        });
-        notifyDataSetChanged();
-    }
-
-    @Override
-    public Filter getFilter() {
-        return fileFilter;
-    }
-
-    /**
-     * 文件搜索过滤器
-     */
-    private final Filter fileFilter = new Filter() {
-        @Override
-        protected FilterResults performFiltering(CharSequence constraint) {
-            List<FileItem> filteredList = new ArrayList<>();
-
-            if (constraint == null || constraint.length() == 0) {
-                filteredList.addAll(fileListFull);
-            } else {
-                String filterPattern = constraint.toString().toLowerCase().trim();
-
-                for (FileItem item : fileListFull) {
-                    if (item.getFileName().toLowerCase().contains(filterPattern)) {
-                        filteredList.add(item);
-                    }
-                }
-            }
-
-            FilterResults results = new FilterResults();
-            results.values = filteredList;
-            return results;
-        }
-
-        @Override
-        protected void publishResults(CharSequence constraint, FilterResults results) {
-            fileList.clear();
-            //noinspection unchecked
-            fileList.addAll((List<FileItem>) results.values);
-
-            // 应用当前排序方式
-            applySortMethod();
-
-            notifyDataSetChanged();
-        }
-    };
-
-    /**
-     * 应用当前选中的排序方式
-     */
-    private void applySortMethod() {
-        switch (currentSortMethod) {
-            case 1:
-                Collections.sort(fileList, (file1, file2) ->
-                        file1.getFileName().compareToIgnoreCase(file2.getFileName()));
-                break;
-            case 2:
-                Collections.sort(fileList, (file1, file2) -> {
-                    if (file1.getLastModifiedTimestamp() == file2.getLastModifiedTimestamp()) {
-                        return 0;
-                    }
-                    return file1.getLastModifiedTimestamp() > file2.getLastModifiedTimestamp() ? -1 : 1;
-                });
-                break;
-            case 3:
-                Collections.sort(fileList, (file1, file2) -> {
-                    if (file1.getFileSizeBytes() == file2.getFileSizeBytes()) {
-                        return 0;
-                    }
-                    return file1.getFileSizeBytes() > file2.getFileSizeBytes() ? -1 : 1;
-                });
-                break;
-            default:
-                // 不排序
-                break;
-        }
+        executorService.shutdownNow();
+        diffExecutor.shutdownNow();
     }
 
     /**
@@ -576,6 +1037,8 @@ public class BilibiliFilePartAdapter extends RecyclerView.Adapter<BilibiliFilePa
         TextView fileName, fileSize, fileDate;
         ImageButton shareButton, musicButton, textExtractButton;
         ImageView fileThumbnail;
+        String thumbnailPath; // 当前绑定的缩略图对应的视频路径
+        Future<?> thumbnailTask; // 当前的缩略图加载任务
 
         public FileViewHolder(@NonNull View itemView) {
             super(itemView);
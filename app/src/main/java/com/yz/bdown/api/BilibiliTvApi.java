@@ -7,9 +7,11 @@ import static com.yz.bdown.contents.BilibiliConstants.KEY_SESSDATA;
 import static com.yz.bdown.contents.BilibiliConstants.REFERER;
 import static com.yz.bdown.contents.BilibiliConstants.USER_AGENT;
 import static com.yz.bdown.utils.AudioConverterUtils.convertM4sToMp3;
+import static com.yz.bdown.utils.AudioConverterUtils.exportM4sAudio;
 import static com.yz.bdown.utils.FileUtils.toFile;
 import static com.yz.bdown.utils.M4sDownloadUtils.downloadM4sFile;
-import static com.yz.bdown.utils.M4sMergerUtils.mergeVideoAndAudio;
+import static com.yz.bdown.utils.MergeExecutorUtils.concat;
+import static com.yz.bdown.utils.MergeExecutorUtils.merge;
 import static org.apache.commons.collections4.MapUtils.isEmpty;
 import static org.apache.commons.lang3.tuple.Pair.of;
 import static java.lang.String.format;
@@ -24,7 +26,11 @@ import com.alibaba.fastjson2.JSONObject;
 import com.yz.bdown.model.bilibili.BilibiliBaseResp;
 import com.yz.bdown.model.bilibili.BilibiliTvInfo;
 import com.yz.bdown.model.bilibili.BilibiliTvPart;
+import com.yz.bdown.model.bilibili.db.MediaLibraryManager;
 import com.yz.bdown.callback.DownloadCallback;
+import com.yz.bdown.contents.AudioExportModeEnum;
+import com.yz.bdown.utils.DownloadFrontierUtils;
+import com.yz.bdown.utils.FileUtils;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -34,6 +40,12 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import okhttp3.Headers;
 import okhttp3.OkHttpClient;
@@ -49,6 +61,11 @@ public class BilibiliTvApi {
             .readTimeout(10, MINUTES)
             .build();
 
+    // 边下边播时音频轨道的下载线程
+    private static final ExecutorService TRACK_EXECUTOR = Executors.newCachedThreadPool();
+    // 并行下载时等待音频轨期间检查取消的间隔
+    private static final long CANCEL_POLL_MS = 200;
+
     private static final String PART_LIST = "https://api.bilibili.com/x/player/pagelist?bvid=%s";
 
     private static final String VIDEO_DOWNLOAD = "https://api.bilibili.com/x/player/wbi/playurl";
@@ -62,8 +79,16 @@ public class BilibiliTvApi {
 
     private final SharedPreferences sharedPref;
 
+    // 媒体库索引，下载完成后写入元数据与缩略图（可为null）
+    private final MediaLibraryManager mediaLibrary;
+
     public BilibiliTvApi(SharedPreferences sharedPreferences) {
+        this(sharedPreferences, null);
+    }
+
+    public BilibiliTvApi(SharedPreferences sharedPreferences, MediaLibraryManager mediaLibrary) {
         this.sharedPref = sharedPreferences;
+        this.mediaLibrary = mediaLibrary;
     }
 
     public BilibiliTvInfo queryBTvParts(String bvid) {
@@ -108,7 +133,8 @@ public class BilibiliTvApi {
             String title = partJson.getString("part");
             Integer duration = partJson.getInteger("duration");
             Long cid = partJson.getLong("cid");
-            BilibiliTvParts.add(new BilibiliTvPart(bvid, cid, title, duration));
+            String partCover = partJson.getString("first_frame");
+            BilibiliTvParts.add(new BilibiliTvPart(bvid, cid, title, duration, partCover));
         }
 
         // 如果只有一个分P，使用其标题作为视频标题
@@ -220,7 +246,10 @@ public class BilibiliTvApi {
                 callback.onDownloadStart(0, "正在合并视频和音频...");
             }
 
-            boolean mergeResult = mergeVideoAndAudio(videoFile.getPath(), audioFile.getPath(), mergeFile.getPath());
+            boolean mergeResult = merge(videoFile.getPath(), audioFile.getPath(), mergeFile.getPath(), callback, null);
+            if (mergeResult) {
+                indexDownload(mergeFile, BilibiliTvPart);
+            }
 
             if (mergeResult && callback != null) {
                 callback.onDownloadComplete(title + ".mp4", mergeFile.getAbsolutePath());
@@ -352,6 +381,22 @@ public class BilibiliTvApi {
         return convertM4sToMp3(m4sAudioFile.getAbsolutePath(), mp3File.getPath());
     }
 
+    /**
+     * 以流复制方式导出原始音轨（AAC 输出 .m4a，FLAC 输出 .flac）
+     *
+     * @param fileName 文件名（不含扩展名）
+     * @return 是否导出成功
+     */
+    public boolean extractAudio(String fileName) {
+        File m4sAudioFile = new File(FileUtils.getFolder(BILIBILI_FOLDER), fileName + "_audio.m4s");
+        if (!m4sAudioFile.exists()) {
+            Log.w(TAG, "extractAudio m4s not found, fileName=" + fileName);
+            return false;
+        }
+        String outputPathPrefix = new File(m4sAudioFile.getParentFile(), fileName).getPath();
+        return exportM4sAudio(m4sAudioFile.getAbsolutePath(), outputPathPrefix, AudioExportModeEnum.COPY) != null;
+    }
+
     /**
      * 下载B站视频分P到指定目录
      *
@@ -362,6 +407,63 @@ public class BilibiliTvApi {
      * @return 下载结果
      */
     public boolean downloadBTvPart(BilibiliTvPart bTvPart, File downloadDir, String fileName, DownloadCallback callback) {
+        return downloadBTvPart(bTvPart, downloadDir, fileName, callback, null);
+    }
+
+    /**
+     * 下载B站视频分P到指定目录（可取消）
+     *
+     * @param bTvPart     视频分P信息
+     * @param downloadDir 下载目录
+     * @param fileName    文件名
+     * @param callback    下载回调
+     * @param cancelled   取消标记，下载和合并过程中检查（可为null）
+     * @return 下载结果
+     */
+    public boolean downloadBTvPart(BilibiliTvPart bTvPart,
+                                   File downloadDir,
+                                   String fileName,
+                                   DownloadCallback callback,
+                                   AtomicBoolean cancelled) {
+        return downloadBTvPart(bTvPart, downloadDir, fileName, callback, cancelled, false);
+    }
+
+    /**
+     * 边下边播：登记即将下载的视频与音频轨道文件，需在开始下载前调用，
+     * 播放器打开这两个文件时会等待下载开始并跟随下载进度读取
+     *
+     * @param bTvPart     视频分P信息
+     * @param downloadDir 下载目录
+     * @return 视频与音频轨道文件
+     */
+    public Pair<File, File> prepareStreamingTracks(BilibiliTvPart bTvPart, File downloadDir) {
+        File videoFile = trackFile(downloadDir, bTvPart, "_video.m4s");
+        File audioFile = trackFile(downloadDir, bTvPart, "_audio.m4s");
+        DownloadFrontierUtils.expect(videoFile);
+        DownloadFrontierUtils.expect(audioFile);
+        return of(videoFile, audioFile);
+    }
+
+    /**
+     * 下载B站视频分P到指定目录（可取消，可边下边播）
+     *
+     * @param bTvPart     视频分P信息
+     * @param downloadDir 下载目录
+     * @param fileName    文件名
+     * @param callback    下载回调
+     * @param cancelled   取消标记，下载和合并过程中检查（可为null）
+     * @param playNow     边下边播，视频与音频同时下载，以便播放器能同时读到两条轨道的开头
+     * @return 下载结果
+     */
+    public boolean downloadBTvPart(BilibiliTvPart bTvPart,
+                                   File downloadDir,
+                                   String fileName,
+                                   DownloadCallback callback,
+                                   AtomicBoolean cancelled,
+                                   boolean playNow) {
+        // 准备临时文件
+        File videoFile = trackFile(downloadDir, bTvPart, "_video.m4s");
+        File audioFile = trackFile(downloadDir, bTvPart, "_audio.m4s");
         try {
             String bvid = bTvPart.getBvid();
             long cid = bTvPart.getCid();
@@ -385,59 +487,15 @@ public class BilibiliTvApi {
                 }
             }
 
-            // 准备临时文件
-            final String title = bTvPart.getTitle().replace('/', ' ');
-            File videoFile = new File(downloadDir, title + "_video.m4s");
-            File audioFile = new File(downloadDir, title + "_audio.m4s");
-
-            // 创建视频和音频下载的回调
-            DownloadCallback videoCallback = callback == null ? null : new DownloadCallback() {
-                @Override
-                public void onDownloadStart(long totalBytes, String name) {
-                    callback.onDownloadStart(totalBytes, "视频: " + name);
-                }
-
-                @Override
-                public void onProgressUpdate(long bytesRead, long totalBytes, double speed) {
-                    callback.onProgressUpdate(bytesRead, totalBytes, speed);
-                }
-
-                @Override
-                public void onDownloadComplete(String name, String filePath) {
-                    // 不触发完成回调，等待最终合并完成再通知
-                }
-
-                @Override
-                public void onDownloadError(String errorMessage) {
-                    callback.onDownloadError("视频下载失败: " + errorMessage);
-                }
-            };
-
-            DownloadCallback audioCallback = callback == null ? null : new DownloadCallback() {
-                @Override
-                public void onDownloadStart(long totalBytes, String name) {
-                    callback.onDownloadStart(totalBytes, "音频: " + name);
-                }
-
-                @Override
-                public void onProgressUpdate(long bytesRead, long totalBytes, double speed) {
-                    callback.onProgressUpdate(bytesRead, totalBytes, speed);
-                }
-
-                @Override
-                public void onDownloadComplete(String name, String filePath) {
-                    // 不触发完成回调，等待最终合并完成再通知
-                }
-
-                @Override
-                public void onDownloadError(String errorMessage) {
-                    callback.onDownloadError("音频下载失败: " + errorMessage);
-                }
-            };
-
             // 下载视频和音频
-            if (!downloadM4sFile(urlPair.getKey(), videoFile, videoCallback) ||
-                    !downloadM4sFile(urlPair.getValue(), audioFile, audioCallback)) {
+            boolean downloaded = playNow
+                    ? downloadTracksInParallel(urlPair, videoFile, audioFile, callback, cancelled)
+                    : downloadTracks(urlPair, videoFile, audioFile, callback, cancelled);
+            if (!downloaded) {
+                if (isCancelled(cancelled)) {
+                    Log.i(TAG, "downloadBTvPart cancelled, BilibiliTvPart=" + bTvPart);
+                    return false;
+                }
                 Log.w(TAG, "downloadBTvPart m4s failed, BilibiliTvPart=" + bTvPart);
                 if (callback != null) {
                     callback.onDownloadError("下载视频或音频文件失败");
@@ -452,11 +510,15 @@ public class BilibiliTvApi {
                 callback.onDownloadStart(0, "正在合并视频和音频...");
             }
 
-            boolean mergeResult = mergeVideoAndAudio(videoFile.getPath(), audioFile.getPath(), mergeFile.getPath());
+            boolean mergeResult = merge(videoFile.getPath(), audioFile.getPath(),
+                    mergeFile.getPath(), callback, cancelled);
+            if (mergeResult) {
+                indexDownload(mergeFile, bTvPart);
+            }
 
             if (mergeResult && callback != null) {
                 callback.onDownloadComplete(fileName, mergeFile.getAbsolutePath());
-            } else if (!mergeResult && callback != null) {
+            } else if (!mergeResult && callback != null && !isCancelled(cancelled)) {
                 callback.onDownloadError("合并视频和音频失败");
             }
 
@@ -467,6 +529,245 @@ public class BilibiliTvApi {
                 callback.onDownloadError("下载过程发生异常: " + t.getMessage());
             }
             return false;
+        } finally {
+            // 获取地址失败等情况下载未开始，同样通知等待中的播放器
+            DownloadFrontierUtils.finish(videoFile);
+            DownloadFrontierUtils.finish(audioFile);
+        }
+    }
+
+    /**
+     * 依次下载视频和音频
+     */
+    private boolean downloadTracks(Pair<String, String> urlPair,
+                                   File videoFile,
+                                   File audioFile,
+                                   DownloadCallback callback,
+                                   AtomicBoolean cancelled) {
+        // 创建视频和音频下载的回调
+        DownloadCallback videoCallback = callback == null ? null : new DownloadCallback() {
+            @Override
+            public void onDownloadStart(long totalBytes, String name) {
+                callback.onDownloadStart(totalBytes, "视频: " + name);
+            }
+
+            @Override
+            public void onProgressUpdate(long bytesRead, long totalBytes, double speed) {
+                callback.onProgressUpdate(bytesRead, totalBytes, speed);
+            }
+
+            @Override
+            public void onDownloadComplete(String name, String filePath) {
+                // 不触发完成回调，等待最终合并完成再通知
+            }
+
+            @Override
+            public void onDownloadError(String errorMessage) {
+                callback.onDownloadError("视频下载失败: " + errorMessage);
+            }
+        };
+
+        DownloadCallback audioCallback = callback == null ? null : new DownloadCallback() {
+            @Override
+            public void onDownloadStart(long totalBytes, String name) {
+                callback.onDownloadStart(totalBytes, "音频: " + name);
+            }
+
+            @Override
+            public void onProgressUpdate(long bytesRead, long totalBytes, double speed) {
+                callback.onProgressUpdate(bytesRead, totalBytes, speed);
+            }
+
+            @Override
+            public void onDownloadComplete(String name, String filePath) {
+                // 不触发完成回调，等待最终合并完成再通知
+            }
+
+            @Override
+            public void onDownloadError(String errorMessage) {
+                callback.onDownloadError("音频下载失败: " + errorMessage);
+            }
+        };
+
+        return downloadM4sFile(urlPair.getKey(), videoFile, videoCallback, cancelled)
+                && downloadM4sFile(urlPair.getValue(), audioFile, audioCallback, cancelled);
+    }
+
+    /**
+     * 同时下载视频和音频，进度按两条轨道合计
+     * 音频轨使用单独的停止标记：视频轨失败或取消后立即中止音频轨，等待音频轨期间仍响应外部取消
+     */
+    private boolean downloadTracksInParallel(Pair<String, String> urlPair,
+                                             File videoFile,
+                                             File audioFile,
+                                             DownloadCallback callback,
+                                             AtomicBoolean cancelled) {
+        ParallelProgress progress = callback == null ? null : new ParallelProgress(callback);
+        AtomicBoolean audioStopped = new AtomicBoolean(isCancelled(cancelled));
+        Future<Boolean> audioFuture = TRACK_EXECUTOR.submit(() -> downloadM4sFile(urlPair.getValue(), audioFile,
+                progress == null ? null : progress.track(1, "音频"), audioStopped));
+        boolean videoOk = downloadM4sFile(urlPair.getKey(), videoFile,
+                progress == null ? null : progress.track(0, "视频"), cancelled);
+        if (!videoOk) {
+            // 视频轨失败时音频轨已无用，不再占用带宽
+            audioStopped.set(true);
+        }
+        try {
+            while (true) {
+                try {
+                    return audioFuture.get(CANCEL_POLL_MS, TimeUnit.MILLISECONDS) && videoOk;
+                } catch (TimeoutException e) {
+                    if (isCancelled(cancelled)) {
+                        audioStopped.set(true);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "download audio track err, audioFile=" + audioFile, e);
+            return false;
+        }
+    }
+
+    public boolean concatBTvParts(List<BilibiliTvPart> bTvParts, File downloadDir, String fileName) {
+        return concatBTvParts(bTvParts, downloadDir, fileName, null, null);
+    }
+
+    /**
+     * 将已下载的多个分P无损拼接为一个文件，章节名使用分P标题
+     * 拼接任务在合并线程池中排队执行，调用线程阻塞直到完成
+     *
+     * @param bTvParts    按播放顺序排列的分P列表
+     * @param downloadDir 分P文件所在目录
+     * @param fileName    拼接后的文件名
+     * @param callback    进度回调（可为null）
+     * @param cancelled   取消标记（可为null）
+     * @return 拼接结果
+     */
+    public boolean concatBTvParts(List<BilibiliTvPart> bTvParts,
+                                  File downloadDir,
+                                  String fileName,
+                                  DownloadCallback callback,
+                                  AtomicBoolean cancelled) {
+        if (CollectionUtils.isEmpty(bTvParts) || downloadDir == null) {
+            Log.w(TAG, "concatBTvParts invalid params");
+            if (callback != null) {
+                callback.onDownloadError("没有可合并的分P");
+            }
+            return false;
+        }
+
+        List<Pair<String, String>> parts = new ArrayList<>(bTvParts.size());
+        for (BilibiliTvPart bTvPart : bTvParts) {
+            File partFile = new File(downloadDir, FileUtils.sanitizeFileName(bTvPart.getTitle() + ".mp4"));
+            if (!partFile.exists()) {
+                Log.w(TAG, "concatBTvParts part not downloaded, BilibiliTvPart=" + bTvPart);
+                if (callback != null) {
+                    callback.onDownloadError("分P未下载: " + bTvPart.getTitle());
+                }
+                return false;
+            }
+            parts.add(of(partFile.getPath(), bTvPart.getTitle()));
+        }
+
+        if (callback != null) {
+            callback.onDownloadStart(0, "正在合并 " + parts.size() + " 个分P...");
+        }
+        File outputFile = new File(downloadDir, fileName);
+        boolean result = concat(parts, outputFile.getPath(), callback, cancelled);
+        if (isCancelled(cancelled)) {
+            Log.i(TAG, "concatBTvParts cancelled, fileName=" + fileName);
+            return false;
+        }
+        if (result && mediaLibrary != null) {
+            // 拼接文件不对应单个分P，不记录 CID
+            BilibiliTvPart first = bTvParts.get(0);
+            mediaLibrary.indexDownload(outputFile, first.getBvid(), 0, first.getCover());
+        }
+
+        if (callback != null) {
+            if (result) {
+                callback.onDownloadComplete(fileName, outputFile.getAbsolutePath());
+            } else {
+                callback.onDownloadError("合并分P失败");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 下载流程最后一步：写入媒体库索引与缩略图
+     */
+    private void indexDownload(File mergeFile, BilibiliTvPart bTvPart) {
+        if (mediaLibrary == null) {
+            return;
+        }
+        mediaLibrary.indexDownload(mergeFile, bTvPart.getBvid(), bTvPart.getCid(), bTvPart.getCover());
+    }
+
+    /**
+     * 分P的视频或音频轨道临时文件
+     */
+    private static File trackFile(File downloadDir, BilibiliTvPart bTvPart, String suffix) {
+        return new File(downloadDir, bTvPart.getTitle().replace('/', ' ') + suffix);
+    }
+
+    private static boolean isCancelled(AtomicBoolean cancelled) {
+        return cancelled != null && cancelled.get();
+    }
+
+    /**
+     * 并行下载时合计两条轨道的进度
+     */
+    private static class ParallelProgress {
+        private final DownloadCallback callback;
+        private final long[] bytesRead = new long[2];
+        private final long[] totalBytes = {-1, -1};
+        private final double[] speeds = new double[2];
+
+        ParallelProgress(DownloadCallback callback) {
+            this.callback = callback;
+        }
+
+        DownloadCallback track(int index, String label) {
+            return new DownloadCallback() {
+                @Override
+                public void onDownloadStart(long total, String name) {
+                    synchronized (ParallelProgress.this) {
+                        totalBytes[index] = total;
+                    }
+                    callback.onDownloadStart(combinedTotal(), label + ": " + name);
+                }
+
+                @Override
+                public void onProgressUpdate(long read, long total, double speed) {
+                    long combinedRead;
+                    double combinedSpeed;
+                    synchronized (ParallelProgress.this) {
+                        bytesRead[index] = read;
+                        speeds[index] = speed;
+                        combinedRead = bytesRead[0] + bytesRead[1];
+                        combinedSpeed = speeds[0] + speeds[1];
+                    }
+                    callback.onProgressUpdate(combinedRead, combinedTotal(), combinedSpeed);
+                }
+
+                @Override
+                public void onDownloadComplete(String name, String filePath) {
+                    // 不触发完成回调，等待最终合并完成再通知
+                }
+
+                @Override
+                public void onDownloadError(String errorMessage) {
+                    callback.onDownloadError(label + "下载失败: " + errorMessage);
+                }
+            };
+        }
+
+        /**
+         * 两条轨道大小都已知时返回合计大小，否则返回 -1
+         */
+        private synchronized long combinedTotal() {
+            return totalBytes[0] > 0 && totalBytes[1] > 0 ? totalBytes[0] + totalBytes[1] : -1;
         }
     }
 }
@@ -0,0 +1,37 @@
+package com.yz.bdown.contents;
+
+public enum AudioExportModeEnum {
+
+    COPY("提取原始音轨 (快速)", null, null, 0),          // 流复制 AAC/FLAC 音轨，不重新编码
+    MP3("转换为 MP3", ".mp3", null, 0),                   // 使用 libmp3lame 重新编码
+    AAC("转换为 AAC", ".m4a", "audio/mp4a-latm", 192_000), // 优先 MediaCodec 编码，不支持时使用 FFmpeg
+    OPUS("转换为 Opus", ".ogg", "audio/opus", 128_000);   // 优先 MediaCodec 编码，不支持时使用 FFmpeg
+
+    private final String displayName; // 显示名称
+    private final String extension; // 输出扩展名，流复制时由音轨编码决定
+    private final String codecMime; // MediaCodec 编码类型，为空表示仅使用 FFmpeg
+    private final int bitRate; // 目标码率
+
+    AudioExportModeEnum(String displayName, String extension, String codecMime, int bitRate) {
+        this.displayName = displayName;
+        this.extension = extension;
+        this.codecMime = codecMime;
+        this.bitRate = bitRate;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getCodecMime() {
+        return codecMime;
+    }
+
+    public int getBitRate() {
+        return bitRate;
+    }
+}
@@ -7,9 +7,9 @@ public enum DeepSeekModelEnum {
 
     private final String model; // 模型类型
     private final boolean stream; // 是否启动流式响应
-    private final int maxContextLength; // 最大上下文长度（字符数）
-    private final int maxReasoningLength; // 最大思维链长度（字符数）
-    private final int maxOutputLength; // 最大输出长度（字符数）
+    private final int maxContextLength; // 最大上下文长度（token 数）
+    private final int maxReasoningLength; // 最大思维链长度（token 数）
+    private final int maxOutputLength; // 最大输出长度（token 数）
 
     DeepSeekModelEnum(String model, boolean stream, int maxContextLength, int maxReasoningLength, int maxOutputLength) {
         this.model = model;
@@ -1,22 +1,23 @@
 package com.yz.bdown.fragment.bilibili;
 
+import android.app.AlertDialog;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.FrameLayout;
+import android.widget.ImageButton;
 import android.widget.RadioButton;
 import android.widget.RadioGroup;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.fragment.app.Fragment;
-import androidx.media3.common.MediaItem;
-import androidx.media3.common.Player;
-import androidx.media3.exoplayer.ExoPlayer;
 import androidx.media3.ui.PlayerView;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -24,13 +25,20 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.yz.bdown.R;
 import com.yz.bdown.adapter.BilibiliFilePartAdapter;
 import com.yz.bdown.model.bilibili.FileItem;
+import com.yz.bdown.model.bilibili.MediaRecord;
+import com.yz.bdown.model.bilibili.StorageReport;
+import com.yz.bdown.model.bilibili.db.MediaLibraryDbHelper;
+import com.yz.bdown.model.bilibili.db.MediaLibraryManager;
 import com.yz.bdown.utils.FileUtils;
 import com.yz.bdown.utils.TextExtractorUtils;
 
 import java.io.File;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * B站文件夹Fragment
@@ -43,14 +51,31 @@ public class BilibiliFolderFragment extends Fragment {
     private EditText searchInput;
     private RadioGroup sortGroup;
     private RadioButton sortName, sortDate, sortSize;
+    private ImageButton storageCleanButton;
     private String selectedFolder = "bilibiliDown"; // 默认文件夹
 
+    // 分页加载相关
+    private static final int PAGE_SIZE = 60;
+    // 搜索最多返回的条数
+    private static final int SEARCH_LIMIT = 500;
+    // 文件夹变化后延迟重新加载，合并连续的变化
+    private static final long RELOAD_DELAY_MS = 300;
+    private File libraryDir;
+    private int sortMethod = MediaLibraryDbHelper.SORT_NONE;
+    private final SparseArray<MediaRecord> pageAnchors = new SparseArray<>(); // 已加载页的最后一条记录，作为下一页游标
+    private final Set<Integer> loadingPages = new HashSet<>();
+    private int loadGeneration; // 排序变化、搜索或索引刷新后丢弃旧的加载结果
+    private int pageGeneration; // 重新加载或位置因文件增删移动后丢弃加载中的页
+    private String searchQuery = "";
+    private final Runnable reloadTask = this::reloadPages;
+
     // 视频播放器相关控件
     private FrameLayout videoPlayerContainer;
     private PlayerView popupVideoPlayer;
     private TextView popupVideoTitle;
     private Button popupCloseButton;
-    private ExoPlayer exoPlayer;
+    private PreviewPlayerPool playerPool;
+    private SeekPreviewController seekPreview;
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -69,9 +94,19 @@ public class BilibiliFolderFragment extends Fragment {
         // 设置排序监听
         setupSortListener();
 
+        // 设置存储清理
+        storageCleanButton.setOnClickListener(v -> analyzeStorage());
+
         // 设置播放器相关监听
         setupPlayerListeners();
 
+        // 拖动进度条时显示雪碧图预览
+        seekPreview = new SeekPreviewController(requireContext(), popupVideoPlayer,
+                view.findViewById(R.id.seek_preview_image));
+
+        // 播放器在 onResume 后空闲时预先创建，减少首次播放的等待
+        playerPool = new PreviewPlayerPool(requireContext());
+
         return view;
     }
 
@@ -87,12 +122,15 @@ public class BilibiliFolderFragment extends Fragment {
         sortName = view.findViewById(R.id.sort_name);
         sortDate = view.findViewById(R.id.sort_date);
         sortSize = view.findViewById(R.id.sort_size);
+        storageCleanButton = view.findViewById(R.id.storage_clean_button);
 
         // 初始化视频播放器相关控件
         videoPlayerContainer = view.findViewById(R.id.video_player_container);
         popupVideoPlayer = view.findViewById(R.id.popup_video_player);
         popupVideoTitle = view.findViewById(R.id.popup_video_title);
         popupCloseButton = view.findViewById(R.id.popup_close_button);
+        popupVideoPlayer.setControllerShowTimeoutMs(3000); // 控制器显示3秒后自动隐藏
+        popupVideoPlayer.setControllerHideOnTouch(true);
     }
 
     /**
@@ -101,11 +139,17 @@ public class BilibiliFolderFragment extends Fragment {
     private void setupRecyclerView() {
         // 设置 RecyclerView 为网格布局，每行显示两个卡片
         fileRecyclerView.setLayoutManager(new GridLayoutManager(getContext(), 2));
-        fileAdapter = new BilibiliFilePartAdapter(getFilesFromExternalMovies());
+        fileAdapter = new BilibiliFilePartAdapter();
         fileRecyclerView.setAdapter(fileAdapter);
 
         // 设置文件项点击监听器
         fileAdapter.setOnFileItemClickListener(this::showVideoPlayer);
+
+        // 绑定到未加载的位置时按页加载
+        fileAdapter.setPageLoader(this::loadPage);
+
+        // 从媒体库索引异步加载文件列表
+        loadFiles();
     }
 
     /**
@@ -125,44 +169,195 @@ public class BilibiliFolderFragment extends Fragment {
     }
 
     /**
-     * 从外部存储获取文件列表
-     *
-     * @return 文件项列表
+     * 从媒体库索引分页加载文件列表，索引在后台增量更新，不阻塞主线程
      */
-    private List<FileItem> getFilesFromExternalMovies() {
-        List<FileItem> fileList = new ArrayList<>();
+    private void loadFiles() {
         File extDownloadDir = FileUtils.getFolder(selectedFolder);
         if (extDownloadDir == null || !extDownloadDir.exists()) {
-            return fileList;
+            return;
         }
+        libraryDir = extDownloadDir;
 
-        File[] files = extDownloadDir.listFiles();
-        if (files == null) {
-            return fileList;
+        reloadPages();
+
+        // 增量扫描发现变化后从第一页重新加载
+        MediaLibraryManager.getInstance(requireContext()).rescanAsync(extDownloadDir, () -> {
+            if (fileAdapter != null && getView() != null) {
+                reloadPages();
+            }
+        });
+
+        // 监听文件夹变化，下载完成或文件删除时增量刷新
+        MediaLibraryManager.getInstance(requireContext()).startWatching(extDownloadDir,
+                new MediaLibraryManager.OnLibraryChangedListener() {
+                    @Override
+                    public void onMediaUpdated(MediaRecord record, boolean added) {
+                        if (fileAdapter == null || getView() == null) {
+                            return;
+                        }
+                        // 已加载的文件原位更新或按排序移动，新文件插入到已加载的相邻文件之间
+                        FileItem item = createFileItem(record);
+                        Comparator<FileItem> order = itemOrder();
+                        int position = fileAdapter.updateFile(item, order);
+                        if (position < 0 && added) {
+                            position = fileAdapter.insertFile(item, order);
+                        }
+                        onPositionsShifted(position);
+                    }
+
+                    @Override
+                    public void onMediaRemoved(String path) {
+                        if (fileAdapter != null && getView() != null) {
+                            onPositionsShifted(fileAdapter.removeFile(new File(path).getName()));
+                        }
+                    }
+                });
+    }
+
+    /**
+     * 文件增删或更新后，该位置所在页及之后的游标失效，改用已完整加载的页的最后一个文件，其余页回退为按偏移量查询；
+     * 加载中的页可能是按旧游标查询的，重新加载
+     *
+     * @param position 变化的最小位置，位置不在已加载的页时为 -1，此时重新加载
+     */
+    private void onPositionsShifted(int position) {
+        if (position < 0) {
+            scheduleReload();
+            return;
         }
 
-        for (File file : files) {
-            // 只处理MP4文件
-            if (file.isFile() && file.getName().endsWith(".mp4")) {
-                fileList.add(createFileItem(file));
+        int firstPage = position / PAGE_SIZE;
+        for (int i = pageAnchors.size() - 1; i >= 0 && pageAnchors.keyAt(i) >= firstPage; i--) {
+            pageAnchors.removeAt(i);
+        }
+        for (int page = firstPage; page * PAGE_SIZE < fileAdapter.getItemCount(); page++) {
+            FileItem last = fileAdapter.getLastItemOfPage(page);
+            if (last != null) {
+                pageAnchors.put(page, toCursor(last));
             }
         }
+
+        List<Integer> pending = new ArrayList<>(loadingPages);
+        pageGeneration++;
+        loadingPages.clear();
+        for (int page : pending) {
+            loadPage(page);
+        }
+    }
+
+    /**
+     * 当前排序方式下文件的顺序，与分页查询一致
+     */
+    private Comparator<FileItem> itemOrder() {
+        Comparator<MediaRecord> order = MediaLibraryDbHelper.pageOrder(sortMethod);
+        return (a, b) -> order.compare(toCursor(a), toCursor(b));
+    }
+
+    /**
+     * 由文件项构造分页查询的游标，只包含排序用到的字段
+     */
+    private MediaRecord toCursor(FileItem item) {
+        MediaRecord record = new MediaRecord();
+        record.setPath(new File(libraryDir, item.getFileName()).getAbsolutePath());
+        record.setFileName(item.getFileName());
+        record.setSize(item.getFileSizeBytes());
+        record.setLastModified(item.getLastModifiedTimestamp());
+        return record;
+    }
+
+    /**
+     * 延迟重新加载，连续的文件变化只加载一次
+     */
+    private void scheduleReload() {
+        fileRecyclerView.removeCallbacks(reloadTask);
+        fileRecyclerView.postDelayed(reloadTask, RELOAD_DELAY_MS);
+    }
+
+    /**
+     * 重新加载，排序方式、搜索关键字变化或索引刷新时调用
+     * 浏览时先获取总数与显示位置所在的页，其余页在绑定到对应位置时加载；搜索时在标题索引中查询
+     */
+    private void reloadPages() {
+        if (libraryDir == null || fileAdapter == null) {
+            return;
+        }
+
+        fileRecyclerView.removeCallbacks(reloadTask);
+        loadGeneration++;
+        pageGeneration++;
+        pageAnchors.clear();
+        loadingPages.clear();
+        int generation = loadGeneration;
+        MediaLibraryManager manager = MediaLibraryManager.getInstance(requireContext());
+        if (!searchQuery.isEmpty()) {
+            manager.searchAsync(libraryDir, searchQuery, sortMethod, SEARCH_LIMIT, (records, more) -> {
+                if (fileAdapter != null && getView() != null && generation == loadGeneration) {
+                    fileAdapter.setFiles(createFileItems(records));
+                }
+            });
+            return;
+        }
+
+        int position = ((GridLayoutManager) fileRecyclerView.getLayoutManager()).findFirstVisibleItemPosition();
+        int page = Math.max(position, 0) / PAGE_SIZE;
+        manager.loadWindowAsync(libraryDir, sortMethod, page * PAGE_SIZE, PAGE_SIZE, (count, records) -> {
+            if (fileAdapter != null && getView() != null && generation == loadGeneration) {
+                if (!records.isEmpty()) {
+                    pageAnchors.put(page, records.get(records.size() - 1));
+                }
+                fileAdapter.resetPages(count, PAGE_SIZE, page, createFileItems(records));
+            }
+        });
+    }
+
+    /**
+     * 按当前排序方式加载一页，上一页已加载时以其最后一条记录作为游标，否则按偏移量查询
+     *
+     * @param page 页码
+     */
+    private void loadPage(int page) {
+        if (libraryDir == null || !loadingPages.add(page)) {
+            return;
+        }
+
+        int generation = pageGeneration;
+        MediaRecord after = page > 0 ? pageAnchors.get(page - 1) : null;
+        MediaLibraryManager.getInstance(requireContext()).loadPageAsync(libraryDir, sortMethod, after,
+                page * PAGE_SIZE, PAGE_SIZE, (records, more) -> {
+                    // 加载完成时页面可能已销毁，或已重新加载、位置已因文件增删移动
+                    if (fileAdapter == null || getView() == null || generation != pageGeneration) {
+                        return;
+                    }
+
+                    loadingPages.remove(page);
+                    if (!records.isEmpty()) {
+                        pageAnchors.put(page, records.get(records.size() - 1));
+                    }
+                    fileAdapter.setPage(page, createFileItems(records));
+                });
+    }
+
+    private List<FileItem> createFileItems(List<MediaRecord> records) {
+        List<FileItem> fileList = new ArrayList<>(records.size());
+        for (MediaRecord record : records) {
+            fileList.add(createFileItem(record));
+        }
         return fileList;
     }
 
     /**
      * 创建文件项对象
      *
-     * @param file 文件
+     * @param record 媒体库记录
      * @return 文件项
      */
-    private FileItem createFileItem(File file) {
-        String fileName = file.getName();
-        long fileLength = file.length();
+    private FileItem createFileItem(MediaRecord record) {
+        String fileName = record.getFileName();
+        long fileLength = record.getSize();
         String fileSize = formatFileSize(fileLength);
         String fileType = getFileType(fileName);
-        String previewUri = file.toURI().toString(); // 文件路径作为预览 URI
-        long lastModified = file.lastModified();
+        String previewUri = new File(record.getPath()).toURI().toString(); // 文件路径作为预览 URI
+        long lastModified = record.getLastModified();
 
         return new FileItem(fileName, fileSize, fileType, previewUri, fileLength, lastModified);
     }
@@ -178,7 +373,11 @@ public class BilibiliFolderFragment extends Fragment {
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                fileAdapter.getFilter().filter(s);
+                String query = s.toString().trim();
+                if (!query.equals(searchQuery)) {
+                    searchQuery = query;
+                    reloadPages();
+                }
             }
 
             @Override
@@ -193,11 +392,92 @@ public class BilibiliFolderFragment extends Fragment {
     private void setupSortListener() {
         sortGroup.setOnCheckedChangeListener((group, checkedId) -> {
             if (checkedId == R.id.sort_name) {
-                fileAdapter.sortByName();
+                sortMethod = MediaLibraryDbHelper.SORT_NAME;
             } else if (checkedId == R.id.sort_date) {
-                fileAdapter.sortByDate();
+                sortMethod = MediaLibraryDbHelper.SORT_DATE;
             } else if (checkedId == R.id.sort_size) {
-                fileAdapter.sortBySize();
+                sortMethod = MediaLibraryDbHelper.SORT_SIZE;
+            }
+
+            // 按新的排序键重新分页
+            reloadPages();
+        });
+    }
+
+    /**
+     * 分析残留临时文件与重复文件，显示可回收空间
+     */
+    private void analyzeStorage() {
+        if (libraryDir == null) {
+            return;
+        }
+
+        storageCleanButton.setEnabled(false);
+        Toast.makeText(requireContext(), "正在分析存储空间...", Toast.LENGTH_SHORT).show();
+        MediaLibraryManager.getInstance(requireContext()).analyzeStorageAsync(libraryDir, report -> {
+            if (getView() == null) {
+                return;
+            }
+            storageCleanButton.setEnabled(true);
+            showStorageReport(report);
+        });
+    }
+
+    /**
+     * 显示存储分析结果，由用户选择清理临时文件或重复文件
+     *
+     * @param report 存储分析结果
+     */
+    private void showStorageReport(StorageReport report) {
+        if (report.getReclaimableBytes() == 0) {
+            Toast.makeText(requireContext(), "没有可清理的文件", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        String message = "残留临时文件: " + report.getOrphanFiles().size() + " 个，"
+                + formatFileSize(report.getOrphanBytes()) + "\n"
+                + "重复文件: " + report.getDuplicateGroups().size() + " 组，"
+                + formatFileSize(report.getDuplicateBytes()) + "\n"
+                + "可回收空间: " + formatFileSize(report.getReclaimableBytes());
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(requireContext())
+                .setTitle("存储清理")
+                .setMessage(message)
+                .setNeutralButton("取消", null);
+        if (!report.getOrphanFiles().isEmpty()) {
+            builder.setPositiveButton("清理临时文件", (dialog, which) -> deleteFiles(report.getOrphanFiles()));
+        }
+        if (!report.getDuplicateGroups().isEmpty()) {
+            builder.setNegativeButton("删除重复文件", (dialog, which) -> deleteFiles(duplicatesToDelete(report)));
+        }
+        builder.show();
+    }
+
+    /**
+     * 每组重复文件保留最早下载的一个
+     */
+    private List<File> duplicatesToDelete(StorageReport report) {
+        List<File> files = new ArrayList<>();
+        for (List<MediaRecord> group : report.getDuplicateGroups()) {
+            MediaRecord keep = group.get(0);
+            for (MediaRecord record : group) {
+                if (record.getLastModified() < keep.getLastModified()) {
+                    keep = record;
+                }
+            }
+            for (MediaRecord record : group) {
+                if (record != keep) {
+                    files.add(new File(record.getPath()));
+                }
+            }
+        }
+        return files;
+    }
+
+    private void deleteFiles(List<File> files) {
+        MediaLibraryManager.getInstance(requireContext()).deleteFilesAsync(files, freedBytes -> {
+            if (getView() != null) {
+                Toast.makeText(requireContext(), "已释放 " + formatFileSize(freedBytes), Toast.LENGTH_SHORT).show();
             }
         });
     }
@@ -208,39 +488,22 @@ public class BilibiliFolderFragment extends Fragment {
      * @param fileItem 要播放的文件项
      */
     private void showVideoPlayer(FileItem fileItem) {
-        // 初始化播放器
-        if (exoPlayer == null) {
-            initializeExoPlayer();
-        }
-
         // 设置视频标题，截断长文件名
         setVideoTitle(fileItem.getFileName());
 
-        // 加载视频
-        loadVideo(fileItem.getPreviewUri());
+        // 复用已创建的播放器加载视频
+        playerPool.play(fileItem.getPreviewUri(), popupVideoPlayer);
 
         // 显示播放器容器
         videoPlayerContainer.setVisibility(View.VISIBLE);
-    }
 
-    /**
-     * 初始化ExoPlayer
-     */
-    private void initializeExoPlayer() {
-        exoPlayer = new ExoPlayer.Builder(requireContext()).build();
-        popupVideoPlayer.setPlayer(exoPlayer);
+        // 加载拖动预览图
+        seekPreview.load(new File(libraryDir, fileItem.getFileName()).getAbsolutePath(),
+                fileItem.getLastModifiedTimestamp());
 
-        // 设置播放器监听器以支持全屏播放
-        exoPlayer.addListener(new Player.Listener() {
-            @Override
-            public void onPlaybackStateChanged(int state) {
-                if (state == Player.STATE_READY) {
-                    // 视频准备就绪，可以考虑显示全屏按钮等
-                    popupVideoPlayer.setControllerShowTimeoutMs(3000); // 控制器显示3秒后自动隐藏
-                    popupVideoPlayer.setControllerHideOnTouch(true);
-                }
-            }
-        });
+        // 预加载列表中的下一个文件
+        FileItem next = fileAdapter.getNextItem(fileItem);
+        playerPool.preload(next != null ? next.getPreviewUri() : null);
     }
 
     /**
@@ -256,24 +519,15 @@ public class BilibiliFolderFragment extends Fragment {
         popupVideoTitle.setText(displayTitle);
     }
 
-    /**
-     * 加载视频到播放器
-     *
-     * @param videoUri 视频URI
-     */
-    private void loadVideo(String videoUri) {
-        MediaItem mediaItem = MediaItem.fromUri(videoUri);
-        exoPlayer.setMediaItem(mediaItem);
-        exoPlayer.prepare();
-        exoPlayer.play();
-    }
-
     /**
      * 隐藏视频播放器弹窗
      */
     private void hideVideoPlayer() {
-        if (exoPlayer != null) {
-            exoPlayer.stop();
+        if (playerPool != null) {
+            playerPool.stop();
+        }
+        if (seekPreview != null) {
+            seekPreview.clear();
         }
         videoPlayerContainer.setVisibility(View.GONE);
     }
@@ -307,10 +561,28 @@ public class BilibiliFolderFragment extends Fragment {
         return new DecimalFormat("#,##0.#").format(size / Math.pow(1024, digitGroups)) + " " + units[digitGroups];
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        // 空闲时预先创建播放器；不可见期间播放器可能因内存不足被释放，返回后重新创建
+        View view = getView();
+        if (view != null) {
+            view.post(() -> {
+                if (playerPool != null) {
+                    playerPool.warmUp();
+                }
+            });
+        }
+    }
+
     @Override
     public void onPause() {
         super.onPause();
-        releasePlayer();
+        // 停止播放并释放预加载的播放器，保留已创建的播放器以便返回后复用
+        if (playerPool != null) {
+            playerPool.stop();
+            playerPool.releaseStandby();
+        }
     }
 
     @Override
@@ -323,7 +595,19 @@ public class BilibiliFolderFragment extends Fragment {
      * 释放所有资源
      */
     private void releaseResources() {
+        fileRecyclerView.removeCallbacks(reloadTask);
         releasePlayer();
+        if (playerPool != null) {
+            playerPool.destroy();
+            playerPool = null;
+        }
+        if (seekPreview != null) {
+            seekPreview.release();
+            seekPreview = null;
+        }
+
+        // 停止监听文件夹
+        MediaLibraryManager.getInstance(requireContext()).stopWatching();
 
         // 销毁适配器资源
         if (fileAdapter != null) {
@@ -342,9 +626,8 @@ public class BilibiliFolderFragment extends Fragment {
             fileAdapter.releasePlayer(); // 释放适配器中的播放器
         }
 
-        if (exoPlayer != null) {
-            exoPlayer.release();
-            exoPlayer = null;
+        if (playerPool != null) {
+            playerPool.release();
         }
     }
 }
\ No newline at end of file
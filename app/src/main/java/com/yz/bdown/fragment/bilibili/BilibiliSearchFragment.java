@@ -7,6 +7,7 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 import static java.util.concurrent.CompletableFuture.supplyAsync;
 
 import android.app.AlertDialog;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -20,7 +21,15 @@ import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import androidx.annotation.OptIn;
 import androidx.fragment.app.Fragment;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.source.MediaSource;
+import androidx.media3.exoplayer.source.MergingMediaSource;
+import androidx.media3.exoplayer.source.ProgressiveMediaSource;
+import androidx.media3.ui.PlayerView;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -31,14 +40,20 @@ import com.yz.bdown.api.BilibiliTvApi;
 import com.yz.bdown.model.bilibili.BilibiliTvPart;
 import com.yz.bdown.callback.DownloadCallback;
 import com.yz.bdown.model.bilibili.BilibiliTvInfo;
+import com.yz.bdown.model.bilibili.db.MediaLibraryManager;
 import com.yz.bdown.utils.FileUtils;
 import com.yz.bdown.utils.GlideUtils;
+import com.yz.bdown.utils.GrowingFileDataSource;
 import com.yz.bdown.utils.NotificationUtils;
+import com.yz.bdown.utils.StreamCacheUtils;
+
+import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * B站视频搜索Fragment
@@ -53,6 +68,7 @@ public class BilibiliSearchFragment extends Fragment {
     private ImageView coverImage;
     private RecyclerView recyclerView;
     private List<BilibiliTvPart> tvParts = new ArrayList<>();
+    private String currentVideoTitle;
     private BilibiliTvPartAdapter recyclerAdapter;
     private BilibiliTvApi bilibiliTvApi;
     private Handler handler;
@@ -63,6 +79,13 @@ public class BilibiliSearchFragment extends Fragment {
     private TextView videoTitle;
     private TextView episodesTitle;
 
+    // 播放器浮层，边下边播时使用
+    private View playerContainer;
+    private PlayerView playerView;
+    private TextView playerStatusText;
+    private Button closePlayerButton;
+    private ExoPlayer player;
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -99,13 +122,19 @@ public class BilibiliSearchFragment extends Fragment {
         resultCard = view.findViewById(R.id.result_card);
         videoTitle = view.findViewById(R.id.video_title);
         episodesTitle = view.findViewById(R.id.episodes_title);
+
+        playerContainer = view.findViewById(R.id.video_player_container);
+        playerView = view.findViewById(R.id.video_player_view);
+        playerStatusText = view.findViewById(R.id.player_status_text);
+        closePlayerButton = view.findViewById(R.id.close_player_button);
     }
 
     /**
      * 初始化API和Handler
      */
     private void initDependencies() {
-        bilibiliTvApi = new BilibiliTvApi(requireActivity().getSharedPreferences("Bilibili", MODE_PRIVATE));
+        bilibiliTvApi = new BilibiliTvApi(requireActivity().getSharedPreferences("Bilibili", MODE_PRIVATE),
+                MediaLibraryManager.getInstance(requireContext()));
         handler = new Handler(Looper.getMainLooper());
     }
 
@@ -114,6 +143,8 @@ public class BilibiliSearchFragment extends Fragment {
      */
     private void setupListeners() {
         searchBtn.setOnClickListener(this::search);
+        // 关闭播放器，下载在后台继续
+        closePlayerButton.setOnClickListener(v -> closePlayer());
     }
 
     /**
@@ -121,7 +152,7 @@ public class BilibiliSearchFragment extends Fragment {
      */
     private void setupRecyclerView() {
         recyclerAdapter = new BilibiliTvPartAdapter(getActivity(), tvParts);
-        recyclerAdapter.setOnItemClickListener(this::downloadItem);
+        recyclerAdapter.setOnItemClickListener(this::showPartActions);
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         recyclerView.setAdapter(recyclerAdapter);
     }
@@ -195,7 +226,8 @@ public class BilibiliSearchFragment extends Fragment {
         resultCard.setVisibility(View.VISIBLE);
 
         // 设置标题
-        updateVideoTitle(bilibiliTvInfo.getTitle());
+        currentVideoTitle = bilibiliTvInfo.getTitle();
+        updateVideoTitle(currentVideoTitle);
 
         // 加载封面图片
         loadCoverImage(bilibiliTvInfo.getCoverUrl());
@@ -283,6 +315,245 @@ public class BilibiliSearchFragment extends Fragment {
         return "";
     }
 
+    /**
+     * 选择分P的操作：下载、边下边播、在线播放，多P视频还可将已下载的分P合并为一个文件
+     *
+     * @param bTvPart 视频分P信息
+     */
+    private void showPartActions(BilibiliTvPart bTvPart) {
+        String[] items = tvParts.size() > 1
+                ? new String[]{"下载", "边下边播", "在线播放", "合并为一个文件"}
+                : new String[]{"下载", "边下边播", "在线播放"};
+        new AlertDialog.Builder(requireContext())
+                .setTitle(bTvPart.getTitle())
+                .setItems(items, (dialog, which) -> {
+                    if (which == 0) {
+                        downloadItem(bTvPart);
+                    } else if (which == 1) {
+                        playWhileDownloading(bTvPart);
+                    } else if (which == 2) {
+                        playOnline(bTvPart);
+                    } else {
+                        concatAllParts();
+                    }
+                })
+                .show();
+    }
+
+    /**
+     * 将所有已下载的分P按顺序无损拼接为一个文件，章节名为分P标题
+     * 任务在合并线程池中排队，进度与取消和下载共用进度对话框
+     */
+    private void concatAllParts() {
+        View view = getView();
+        List<BilibiliTvPart> parts = new ArrayList<>(tvParts);
+        File downloadDir = FileUtils.getFolder("bilibiliDown");
+
+        // 先检查所有分P是否都已下载，避免排队后才失败
+        for (BilibiliTvPart part : parts) {
+            if (!new File(downloadDir, FileUtils.sanitizeFileName(part.getTitle() + ".mp4")).exists()) {
+                if (view != null) {
+                    Snackbar.make(view, "请先下载所有分P，未下载: " + part.getTitle(), Snackbar.LENGTH_LONG).show();
+                }
+                return;
+            }
+        }
+
+        String title = currentVideoTitle != null ? currentVideoTitle : parts.get(0).getTitle();
+        AlertDialog progressDialog = createDownloadProgressDialog(title);
+        progressDialog.show();
+        TextView dialogTitle = progressDialog.findViewById(R.id.download_title);
+        if (dialogTitle != null) {
+            dialogTitle.setText("正在合并: " + title);
+        }
+
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        setupCancelButton(progressDialog, cancelled, view, "已取消合并");
+        DownloadCallback callback = createDownloadCallback(progressDialog, title, view);
+
+        String fileName = FileUtils.sanitizeFileName(title + ".mp4");
+        CompletableFuture
+                .supplyAsync(() -> bilibiliTvApi.concatBTvParts(parts, downloadDir, fileName, callback, cancelled))
+                .exceptionally(throwable -> {
+                    handler.post(() -> {
+                        progressDialog.dismiss();
+                        if (view != null) {
+                            Snackbar.make(view, "合并失败: " + throwable.getMessage(), LENGTH_SHORT).show();
+                        }
+                        Log.e(TAG, "合并异常", throwable);
+                    });
+                    return null;
+                });
+    }
+
+    /**
+     * 在线播放：直接播放视频与音频流，读到的数据写入缓存，之后下载时复用已缓存的部分
+     *
+     * @param bTvPart 视频分P信息
+     */
+    @OptIn(markerClass = UnstableApi.class)
+    private void playOnline(BilibiliTvPart bTvPart) {
+        View view = getView();
+        progressBar.setVisibility(View.VISIBLE);
+        supplyAsync(() -> bilibiliTvApi.getVideoAndAudioUrl(bTvPart.getBvid(), bTvPart.getCid()))
+                .thenAccept(urlPair -> handler.post(() -> {
+                    progressBar.setVisibility(View.GONE);
+                    if (urlPair == null || isBlank(urlPair.getKey())) {
+                        if (view != null) {
+                            Snackbar.make(view, "获取视频地址失败", LENGTH_SHORT).show();
+                        }
+                        return;
+                    }
+
+                    ProgressiveMediaSource.Factory sourceFactory =
+                            new ProgressiveMediaSource.Factory(StreamCacheUtils.playbackDataSourceFactory(requireContext()));
+                    MediaSource mediaSource = isBlank(urlPair.getValue())
+                            ? sourceFactory.createMediaSource(MediaItem.fromUri(urlPair.getKey()))
+                            : new MergingMediaSource(
+                            sourceFactory.createMediaSource(MediaItem.fromUri(urlPair.getKey())),
+                            sourceFactory.createMediaSource(MediaItem.fromUri(urlPair.getValue())));
+                    showPlayer(mediaSource, "在线播放: " + bTvPart.getTitle());
+                }));
+    }
+
+    /**
+     * 边下边播：视频与音频轨道同时下载，播放器直接读取正在写入的 m4s 文件，
+     * 读到下载边界时等待，下载完成后照常合并为 mp4
+     *
+     * @param bTvPart 视频分P信息
+     */
+    @OptIn(markerClass = UnstableApi.class)
+    private void playWhileDownloading(BilibiliTvPart bTvPart) {
+        View view = getView();
+        String title = bTvPart.getTitle();
+        String fileName = FileUtils.sanitizeFileName(title + ".mp4");
+        File downloadDir = FileUtils.getFolder("bilibiliDown");
+
+        // 先登记轨道文件，播放器打开文件时等待下载开始
+        Pair<File, File> tracks = bilibiliTvApi.prepareStreamingTracks(bTvPart, downloadDir);
+        ProgressiveMediaSource.Factory sourceFactory = new ProgressiveMediaSource.Factory(new GrowingFileDataSource.Factory());
+        MediaSource mediaSource = new MergingMediaSource(
+                sourceFactory.createMediaSource(MediaItem.fromUri(Uri.fromFile(tracks.getKey()))),
+                sourceFactory.createMediaSource(MediaItem.fromUri(Uri.fromFile(tracks.getValue()))));
+        showPlayer(mediaSource, "准备下载...");
+
+        DownloadCallback downloadCallback = createPlayerStatusCallback(title, view);
+        CompletableFuture
+                .supplyAsync(() -> bilibiliTvApi.downloadBTvPart(bTvPart, downloadDir, fileName, downloadCallback, null, true))
+                .exceptionally(throwable -> {
+                    handler.post(() -> {
+                        if (view != null) {
+                            Snackbar.make(view, "下载失败: " + throwable.getMessage(), LENGTH_SHORT).show();
+                        }
+                        Log.e(TAG, "边下边播异常", throwable);
+                    });
+                    return null;
+                });
+    }
+
+    /**
+     * 在播放器浮层中播放
+     *
+     * @param mediaSource 媒体源
+     * @param status      播放器下方显示的状态文字
+     */
+    private void showPlayer(MediaSource mediaSource, String status) {
+        releasePlayer();
+        player = new ExoPlayer.Builder(requireContext()).build();
+        playerView.setPlayer(player);
+        player.setMediaSource(mediaSource);
+        player.prepare();
+        player.play();
+
+        playerStatusText.setText(status);
+        playerStatusText.setVisibility(View.VISIBLE);
+        playerContainer.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * 关闭播放器浮层
+     */
+    private void closePlayer() {
+        releasePlayer();
+        playerContainer.setVisibility(View.GONE);
+    }
+
+    private void releasePlayer() {
+        if (player != null) {
+            playerView.setPlayer(null);
+            player.release();
+            player = null;
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        if (player != null) {
+            player.pause();
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        releasePlayer();
+        super.onDestroyView();
+    }
+
+    /**
+     * 创建边下边播的下载回调，进度显示在播放器下方
+     *
+     * @param title 标题
+     * @param view  视图
+     * @return 下载回调
+     */
+    private DownloadCallback createPlayerStatusCallback(String title, View view) {
+        return new DownloadCallback() {
+            @Override
+            public void onDownloadStart(long totalBytes, String fileName) {
+                handler.post(() -> playerStatusText.setText(fileName));
+            }
+
+            @Override
+            public void onProgressUpdate(long bytesRead, long totalBytes, double speed) {
+                handler.post(() -> {
+                    String size = totalBytes > 0
+                            ? (bytesRead * 100 / totalBytes) + "%  " + formatFileSize(bytesRead) + " / " + formatFileSize(totalBytes)
+                            : formatFileSize(bytesRead);
+                    playerStatusText.setText("正在下载: " + size + "  " + formatSpeed(speed));
+                });
+            }
+
+            @Override
+            public void onDownloadComplete(String fileName, String filePath) {
+                handler.post(() -> {
+                    playerStatusText.setText(title + " 下载完成");
+                    if (view != null) {
+                        Snackbar.make(view, title + " 下载完成!", LENGTH_SHORT).show();
+                    }
+
+                    // 发送通知
+                    NotificationUtils.showDownloadCompleteNotification(
+                            requireContext(),
+                            "下载完成",
+                            title + " 下载完成",
+                            filePath
+                    );
+                });
+            }
+
+            @Override
+            public void onDownloadError(String errorMessage) {
+                handler.post(() -> {
+                    playerStatusText.setText("下载失败: " + errorMessage);
+                    if (view != null) {
+                        Snackbar.make(view, "下载失败: " + errorMessage, Snackbar.LENGTH_LONG).show();
+                    }
+                });
+            }
+        };
+    }
+
     /**
      * 下载视频分P
      *
@@ -298,6 +569,10 @@ public class BilibiliSearchFragment extends Fragment {
         // 显示对话框
         progressDialog.show();
 
+        // 设置取消按钮，下载和合并过程中均可中止
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        setupCancelButton(progressDialog, cancelled, view);
+
         // 创建下载回调
         DownloadCallback downloadCallback = createDownloadCallback(progressDialog, title, view);
 
@@ -306,7 +581,7 @@ public class BilibiliSearchFragment extends Fragment {
         File downloadDir = FileUtils.getFolder("bilibiliDown");
 
         CompletableFuture
-                .supplyAsync(() -> bilibiliTvApi.downloadBTvPart(bTvPart, downloadDir, fileName, downloadCallback))
+                .supplyAsync(() -> bilibiliTvApi.downloadBTvPart(bTvPart, downloadDir, fileName, downloadCallback, cancelled))
                 .exceptionally(throwable -> {
                     handler.post(() -> {
                         progressDialog.dismiss();
@@ -319,6 +594,37 @@ public class BilibiliSearchFragment extends Fragment {
                 });
     }
 
+    /**
+     * 设置下载取消按钮
+     *
+     * @param progressDialog 进度对话框
+     * @param cancelled      取消标记
+     * @param view           视图
+     */
+    private void setupCancelButton(AlertDialog progressDialog, AtomicBoolean cancelled, View view) {
+        setupCancelButton(progressDialog, cancelled, view, "已取消下载");
+    }
+
+    /**
+     * 设置取消按钮
+     *
+     * @param message 取消后的提示
+     */
+    private void setupCancelButton(AlertDialog progressDialog, AtomicBoolean cancelled, View view, String message) {
+        Button cancelButton = progressDialog.findViewById(R.id.download_cancel_button);
+        if (cancelButton == null) {
+            return;
+        }
+
+        cancelButton.setOnClickListener(v -> {
+            cancelled.set(true);
+            progressDialog.dismiss();
+            if (view != null) {
+                Snackbar.make(view, message, LENGTH_SHORT).show();
+            }
+        });
+    }
+
     /**
      * 创建下载进度对话框
      *
@@ -383,6 +689,7 @@ public class BilibiliSearchFragment extends Fragment {
                     TextView downloadSpeed = progressDialog.findViewById(R.id.download_speed);
 
                     if (totalBytes > 0 && downloadProgressBar != null && downloadProgressText != null && downloadSizeInfo != null) {
+                        downloadProgressBar.setIndeterminate(false);
                         int progress = (int) (bytesRead * 100 / totalBytes);
                         downloadProgressBar.setProgress(progress);
                         downloadProgressText.setText(progress + "%");
@@ -0,0 +1,182 @@
+package com.yz.bdown.fragment.bilibili;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.Player;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.ui.PlayerView;
+
+/**
+ * 预览播放器池
+ * 保持一个已创建的播放器用于播放，另一个播放器预先准备下一个可能播放的文件，
+ * 点击时切换 MediaItem 而不是重新创建播放器；内存紧张时先从播放视图上解绑再释放播放器
+ */
+class PreviewPlayerPool implements ComponentCallbacks2 {
+    private static final String TAG = "PreviewPlayerPool";
+
+    private final Context context;
+    private ExoPlayer activePlayer;     // 当前用于播放的播放器
+    private ExoPlayer standbyPlayer;    // 预加载下一个文件的播放器
+    private String activeUri;
+    private String standbyUri;
+    private PlayerView playerView;      // 当前绑定 activePlayer 的播放视图
+
+    // 首帧耗时统计
+    private long playRequestTime;
+    private final Player.Listener firstFrameListener = new Player.Listener() {
+        @Override
+        public void onRenderedFirstFrame() {
+            if (playRequestTime > 0) {
+                Log.i(TAG, "first frame latency=" + (SystemClock.elapsedRealtime() - playRequestTime)
+                        + "ms, uri=" + activeUri);
+                playRequestTime = 0;
+            }
+        }
+    };
+
+    PreviewPlayerPool(Context context) {
+        this.context = context.getApplicationContext();
+        this.context.registerComponentCallbacks(this);
+    }
+
+    /**
+     * 预先创建播放器，首次点击时无需等待播放器初始化
+     */
+    void warmUp() {
+        if (activePlayer == null) {
+            activePlayer = createPlayer();
+        }
+    }
+
+    /**
+     * 播放文件，已预加载时直接切换到预加载的播放器
+     *
+     * @param uri        文件 URI
+     * @param playerView 播放视图
+     */
+    void play(String uri, PlayerView playerView) {
+        playRequestTime = SystemClock.elapsedRealtime();
+
+        if (uri.equals(standbyUri) && standbyPlayer != null) {
+            // 交换播放器，预加载的播放器已完成准备
+            ExoPlayer previous = activePlayer;
+            activePlayer = standbyPlayer;
+            standbyPlayer = previous;
+            standbyUri = null;
+            if (standbyPlayer != null) {
+                standbyPlayer.stop();
+            }
+        } else {
+            warmUp();
+            activePlayer.setMediaItem(MediaItem.fromUri(uri));
+            activePlayer.prepare();
+        }
+
+        activeUri = uri;
+        this.playerView = playerView;
+        playerView.setPlayer(activePlayer);
+        activePlayer.play();
+    }
+
+    /**
+     * 预加载下一个可能播放的文件，只准备不播放
+     *
+     * @param uri 文件 URI，为 null 时不预加载
+     */
+    void preload(String uri) {
+        if (uri == null || uri.equals(activeUri) || uri.equals(standbyUri)) {
+            return;
+        }
+
+        if (standbyPlayer == null) {
+            standbyPlayer = createPlayer();
+        }
+        standbyUri = uri;
+        standbyPlayer.setMediaItem(MediaItem.fromUri(uri));
+        standbyPlayer.setPlayWhenReady(false);
+        standbyPlayer.prepare();
+    }
+
+    /**
+     * 停止播放，保留播放器以便下次复用
+     */
+    void stop() {
+        if (activePlayer != null) {
+            activePlayer.stop();
+        }
+        activeUri = null;
+        playRequestTime = 0;
+    }
+
+    /**
+     * 释放预加载的播放器
+     */
+    void releaseStandby() {
+        if (standbyPlayer != null) {
+            standbyPlayer.release();
+            standbyPlayer = null;
+        }
+        standbyUri = null;
+    }
+
+    /**
+     * 释放所有播放器，之后调用 play 会重新创建
+     */
+    void release() {
+        releaseStandby();
+        // 先解绑播放视图，避免视图继续持有并操作已释放的播放器
+        if (playerView != null) {
+            if (playerView.getPlayer() == activePlayer) {
+                playerView.setPlayer(null);
+            }
+            playerView = null;
+        }
+        if (activePlayer != null) {
+            activePlayer.release();
+            activePlayer = null;
+        }
+        activeUri = null;
+    }
+
+    /**
+     * 释放播放器并注销内存回调，不再使用时调用
+     */
+    void destroy() {
+        release();
+        context.unregisterComponentCallbacks(this);
+    }
+
+    private ExoPlayer createPlayer() {
+        ExoPlayer player = new ExoPlayer.Builder(context).build();
+        player.addListener(firstFrameListener);
+        return player;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            // 界面不可见时全部释放
+            Log.i(TAG, "onTrimMemory level=" + level + ", release all players");
+            release();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // 运行中内存不足，只释放预加载的播放器
+            Log.i(TAG, "onTrimMemory level=" + level + ", release standby player");
+            releaseStandby();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        release();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
@@ -0,0 +1,129 @@
+package com.yz.bdown.fragment.bilibili;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.ui.PlayerView;
+import androidx.media3.ui.TimeBar;
+
+import com.yz.bdown.utils.SeekPreviewUtils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 拖动进度条时显示预览画面
+ * 打开视频时在后台加载雪碧图，拖动时从雪碧图中截取对应的帧绘制到预览视图
+ */
+@OptIn(markerClass = UnstableApi.class)
+class SeekPreviewController implements TimeBar.OnScrubListener {
+
+    private final Context context;
+    private final ImageView previewView;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private String videoPath;               // 当前视频，用于丢弃过期的加载结果
+    private SeekPreviewUtils.Sheet sheet;
+    private Bitmap frameBitmap;             // 复用的单帧位图，拖动时不分配内存
+    private Canvas frameCanvas;
+    private final Rect srcRect = new Rect();
+    private final Rect dstRect = new Rect();
+    private int lastFrameIndex = -1;
+
+    SeekPreviewController(Context context, PlayerView playerView, ImageView previewView) {
+        this.context = context.getApplicationContext();
+        this.previewView = previewView;
+
+        TimeBar timeBar = playerView.findViewById(androidx.media3.ui.R.id.exo_progress);
+        if (timeBar != null) {
+            timeBar.addListener(this);
+        }
+    }
+
+    /**
+     * 加载视频的预览雪碧图，未生成时在后台截取
+     *
+     * @param path         视频路径
+     * @param lastModified 视频修改时间
+     */
+    void load(String path, long lastModified) {
+        clear();
+        videoPath = path;
+        executor.execute(() -> {
+            SeekPreviewUtils.Sheet loaded = SeekPreviewUtils.getSheet(context, path, lastModified);
+            mainHandler.post(() -> {
+                if (loaded != null && path.equals(videoPath)) {
+                    setSheet(loaded);
+                }
+            });
+        });
+    }
+
+    /**
+     * 清除当前预览，关闭播放器时调用
+     */
+    void clear() {
+        videoPath = null;
+        sheet = null;
+        lastFrameIndex = -1;
+        previewView.setVisibility(View.GONE);
+    }
+
+    void release() {
+        clear();
+        executor.shutdownNow();
+    }
+
+    private void setSheet(SeekPreviewUtils.Sheet loaded) {
+        sheet = loaded;
+        lastFrameIndex = -1;
+        if (frameBitmap == null
+                || frameBitmap.getWidth() != loaded.getFrameWidth()
+                || frameBitmap.getHeight() != loaded.getFrameHeight()) {
+            frameBitmap = Bitmap.createBitmap(loaded.getFrameWidth(), loaded.getFrameHeight(), Bitmap.Config.RGB_565);
+            frameCanvas = new Canvas(frameBitmap);
+            dstRect.set(0, 0, loaded.getFrameWidth(), loaded.getFrameHeight());
+            previewView.setImageBitmap(frameBitmap);
+        }
+    }
+
+    private void showPreview(long positionMs) {
+        if (sheet == null) {
+            return;
+        }
+
+        int index = sheet.getFrameIndex(positionMs);
+        if (index != lastFrameIndex) {
+            sheet.getFrameRect(index, srcRect);
+            frameCanvas.drawBitmap(sheet.getBitmap(), srcRect, dstRect, null);
+            previewView.invalidate();
+            lastFrameIndex = index;
+        }
+        previewView.setVisibility(View.VISIBLE);
+    }
+
+    @Override
+    public void onScrubStart(@NonNull TimeBar timeBar, long position) {
+        showPreview(position);
+    }
+
+    @Override
+    public void onScrubMove(@NonNull TimeBar timeBar, long position) {
+        showPreview(position);
+    }
+
+    @Override
+    public void onScrubStop(@NonNull TimeBar timeBar, long position, boolean canceled) {
+        previewView.setVisibility(View.GONE);
+    }
+}
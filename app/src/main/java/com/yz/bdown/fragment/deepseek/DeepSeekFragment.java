@@ -46,12 +46,14 @@ import com.yz.bdown.model.chat.ChatScenarioEnum;
 import com.yz.bdown.model.chat.ChatSession;
 import com.yz.bdown.model.chat.ChatSessionSummary;
 import com.yz.bdown.model.chat.db.ChatSessionManager;
+import com.yz.bdown.utils.ChatCompactor;
+import com.yz.bdown.utils.ChatContextWindow;
+import com.yz.bdown.utils.DeepSeekStreamHandle;
 import com.yz.bdown.utils.DeepSeekUtils;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.noties.markwon.Markwon;
 import io.noties.markwon.core.CorePlugin;
@@ -86,12 +88,13 @@ public class DeepSeekFragment extends Fragment {
     private FloatingActionButton scrollToBottomButton;
 
     // 当前API调用，用于取消请求
-    private AtomicBoolean isCancelled = new AtomicBoolean(false);
+    private DeepSeekStreamHandle currentRequest;
 
     private String currentModel = R1.getModel();
     private ChatScenarioEnum currentScenario = ChatScenarioEnum.DATA_ANALYSIS;
 
     private List<ChatMessage> messageHistory = new ArrayList<>();
+    private ChatCompactor contextCompactor;
     private ChatMessageAdapter chatAdapter;
 
     // Markwon 实例，用于渲染 Markdown
@@ -101,6 +104,10 @@ public class DeepSeekFragment extends Fragment {
     private boolean isRequestInProgress = false;
     private int consecutiveFailures = 0;
     private static final int MAX_FAILURES = 3;
+
+    // 流式输出时两次刷新消息之间的最小间隔，长回答每次刷新都要重新渲染 Markdown
+    private static final long STREAM_UPDATE_INTERVAL_MS = 50;
+
     private int curAssistantMessageIndex = -1;
 
     private ChatSessionManager sessionManager;
@@ -112,6 +119,14 @@ public class DeepSeekFragment extends Fragment {
 
         // 初始化会话管理器
         sessionManager = ChatSessionManager.getInstance(requireContext());
+        // 较早的对话由 V3 在后台摘要，摘要保存在会话数据库中
+        contextCompactor = new ChatCompactor(sessionManager, (prompt, callback) ->
+                DeepSeekUtils.sendChatRequestStream(
+                        getApiKey(),
+                        DeepSeekModelEnum.V3,
+                        prompt,
+                        ChatScenarioEnum.DATA_ANALYSIS.getTemperature(),
+                        callback));
 
         // 初始化 Markwon
         initMarkwon();
@@ -360,6 +375,7 @@ public class DeepSeekFragment extends Fragment {
 
         // 清空当前消息列表
         messageHistory.clear();
+        contextCompactor.reset();
 
         // 加载会话中的消息
         if (currentSession != null) {
@@ -432,6 +448,7 @@ public class DeepSeekFragment extends Fragment {
 
             // 清空消息历史
             messageHistory.clear();
+            contextCompactor.reset();
             chatAdapter.notifyDataSetChanged();
         }
     }
@@ -475,6 +492,7 @@ public class DeepSeekFragment extends Fragment {
             if (selectedSession != null) {
                 // 更新消息列表
                 messageHistory.clear();
+                contextCompactor.reset();
                 messageHistory.addAll(selectedSession.getMessages());
                 chatAdapter.notifyDataSetChanged();
 
@@ -549,11 +567,12 @@ public class DeepSeekFragment extends Fragment {
 
         // 发送API请求
         DeepSeekModelEnum model = DeepSeekModelEnum.R1.getModel().equals(currentModel) ? DeepSeekModelEnum.R1 : DeepSeekModelEnum.V3;
-        DeepSeekUtils.sendChatRequestStream(
+        currentRequest = DeepSeekUtils.sendChatRequestStream(
                 getApiKey(),
                 model,
                 getMessagesToSend(model),
                 currentScenario.getTemperature(),
+                STREAM_UPDATE_INTERVAL_MS,
                 createCallbackHandler()
         );
     }
@@ -607,6 +626,7 @@ public class DeepSeekFragment extends Fragment {
 
     /**
      * 获取要发送的消息列表（已控制上下文长度）
+     * 较早的对话以摘要代替，其后的消息按 token 预算从最新的向前保留，为思维链与回答预留模型的输出长度
      */
     private List<ChatMessage> getMessagesToSend(DeepSeekModelEnum model) {
         // 获取当前会话ID
@@ -615,40 +635,15 @@ public class DeepSeekFragment extends Fragment {
             sessionId = sessionManager.getCurrentSession().getId();
         }
 
-        // 获取截止到当前用户消息的所有消息(不包括当前助手消息)
-        List<ChatMessage> messages = new ArrayList<>();
-
-        // 遍历消息历史，只添加属于当前会话的消息
-        for (int i = 0; i < messageHistory.size() - 1; i++) {
-            ChatMessage message = messageHistory.get(i);
-            // 如果消息没有会话ID或会话ID与当前会话一致，则添加
-            if (message.getSessionId() == null || sessionId == null || message.getSessionId().equals(sessionId)) {
-                messages.add(message);
-            }
-        }
-
-        if (messages.size() <= 1) {
-            return new ArrayList<>(messages); // 如果只有一条消息，无需裁剪
-        }
-
-        int totalLength = 0;
-        List<ChatMessage> messagesToKeep = new ArrayList<>();
-        for (int i = messages.size() - 1; i >= 0; i--) {
-            ChatMessage message = messages.get(i);
-            int messageLength = message.getContent().length();
-            if (totalLength + messageLength <= model.getMaxContextLength()) {
-                messagesToKeep.add(0, message);
-                totalLength += messageLength;
-            } else {
-                break;
-            }
-        }
-
-        if (messagesToKeep.size() < messages.size()) {
-            int removed = messages.size() - messagesToKeep.size();
-            Log.d(TAG, "裁剪历史消息: 移除了 " + removed + " 条较早的消息，以适应上下文长度限制");
-        }
-        return messagesToKeep;
+        // 截止到当前用户消息(不包括当前助手消息)，只保留属于当前会话的消息
+        List<ChatMessage> messages = contextCompactor.build(
+                messageHistory,
+                messageHistory.size() - 1,
+                sessionId,
+                ChatContextWindow.inputBudget(model));
+        Log.d(TAG, "发送上下文: " + messages.size() + " 条消息, 约 " + contextCompactor.getTotalTokens() + " tokens"
+                + (contextCompactor.isSummarizing() ? ", 正在摘要较早的对话" : ""));
+        return messages;
     }
 
     /**
@@ -658,12 +653,7 @@ public class DeepSeekFragment extends Fragment {
         return new DeepSeekStreamCallback() {
             @Override
             public void onMessage(String reasoningContent, String messageContent) {
-                if (reasoningContent != null) {
-                    updateAssistantReasoningContent(reasoningContent);
-                }
-                if (messageContent != null) {
-                    updateAssistantMessageContent(messageContent);
-                }
+                appendAssistantDelta(reasoningContent, messageContent);
             }
 
             @Override
@@ -679,47 +669,34 @@ public class DeepSeekFragment extends Fragment {
     }
 
     /**
-     * 更新助手消息的思考内容
+     * 追加助手消息的流式增量，每帧最多调用一次，思考与回答内容合并为一次界面刷新
      */
-    private void updateAssistantReasoningContent(String newReasoning) {
-        if (curAssistantMessageIndex >= 0 && curAssistantMessageIndex < messageHistory.size()) {
-            ChatMessage message = messageHistory.get(curAssistantMessageIndex);
+    private void appendAssistantDelta(String newReasoning, String newContent) {
+        if (curAssistantMessageIndex < 0 || curAssistantMessageIndex >= messageHistory.size()) {
+            return;
+        }
 
-            // 只更新思考内容，不影响主要内容
+        ChatMessage message = messageHistory.get(curAssistantMessageIndex);
+        if (newReasoning != null) {
             message.appendReasoning(newReasoning);
-
-            // 更新UI
-            mainHandler.post(() -> {
-                chatAdapter.notifyItemChanged(curAssistantMessageIndex);
-            });
         }
-    }
-
-    /**
-     * 更新助手消息内容（流式响应时使用）
-     */
-    private void updateAssistantMessageContent(String newContent) {
-        if (curAssistantMessageIndex >= 0 && curAssistantMessageIndex < messageHistory.size()) {
-            ChatMessage message = messageHistory.get(curAssistantMessageIndex);
+        if (newContent != null) {
+            message.setContent(message.getContent() + newContent);
+        }
 
-            // 追加内容
-            String currentContent = message.getContent();
-            message.setContent(currentContent + newContent);
-
-            // 更新UI，不进行自动滚动
-            mainHandler.post(() -> {
-                chatAdapter.notifyItemChanged(curAssistantMessageIndex);
-
-                // 检查是否应该显示滚动按钮
-                LinearLayoutManager layoutManager = (LinearLayoutManager) chatRecyclerView.getLayoutManager();
-                if (layoutManager != null) {
-                    int lastVisiblePosition = layoutManager.findLastCompletelyVisibleItemPosition();
-                    if (lastVisiblePosition < curAssistantMessageIndex) {
-                        // 如果最后一个消息不可见，显示滚动按钮
-                        scrollToBottomButton.setVisibility(View.VISIBLE);
-                    }
+        // 更新UI，不进行自动滚动
+        chatAdapter.notifyItemChanged(curAssistantMessageIndex);
+
+        // 检查是否应该显示滚动按钮
+        if (newContent != null) {
+            LinearLayoutManager layoutManager = (LinearLayoutManager) chatRecyclerView.getLayoutManager();
+            if (layoutManager != null) {
+                int lastVisiblePosition = layoutManager.findLastCompletelyVisibleItemPosition();
+                if (lastVisiblePosition < curAssistantMessageIndex) {
+                    // 如果最后一个消息不可见，显示滚动按钮
+                    scrollToBottomButton.setVisibility(View.VISIBLE);
                 }
-            });
+            }
         }
     }
 
@@ -727,8 +704,11 @@ public class DeepSeekFragment extends Fragment {
      * 取消请求
      */
     private void cancelRequest() {
-        // 标记已取消
-        isCancelled.set(true);
+        // 中断HTTP调用，未刷新的内容与之后的回调都会丢弃
+        if (currentRequest != null) {
+            currentRequest.cancel();
+            currentRequest = null;
+        }
 
         // 结束请求状态
         isRequestInProgress = false;
@@ -791,6 +771,7 @@ public class DeepSeekFragment extends Fragment {
      * 结束请求状态
      */
     private void finishRequest() {
+        currentRequest = null;
         isRequestInProgress = false;
         updateUIForRequestInProgress(false);
     }
@@ -1011,4 +992,14 @@ public class DeepSeekFragment extends Fragment {
         // 保存当前会话
         saveCurrentSession();
     }
+
+    @Override
+    public void onDestroyView() {
+        // 界面销毁后不再需要回答，中断请求释放连接
+        if (currentRequest != null) {
+            currentRequest.cancel();
+            currentRequest = null;
+        }
+        super.onDestroyView();
+    }
 } 
\ No newline at end of file
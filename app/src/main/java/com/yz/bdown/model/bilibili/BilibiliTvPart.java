@@ -8,6 +8,7 @@ public class BilibiliTvPart {
     private String title;
     private int duration; // 单位(s)
     private long cid;
+    private String cover; // 分P首帧封面
 
     public BilibiliTvPart(String bvid, long cid, String title, int duration) {
         this.bvid = bvid;
@@ -16,6 +17,11 @@ public class BilibiliTvPart {
         this.cid = cid;
     }
 
+    public BilibiliTvPart(String bvid, long cid, String title, int duration, String cover) {
+        this(bvid, cid, title, duration);
+        this.cover = cover;
+    }
+
     public String getBvid() {
         return bvid;
     }
@@ -32,6 +38,10 @@ public class BilibiliTvPart {
         return cid;
     }
 
+    public String getCover() {
+        return cover;
+    }
+
     public String getFormatDuration() {
         return formatToCompact(duration);
     }
@@ -12,12 +12,14 @@ public class FileItem {
     private long fileSizeBytes; // 文件大小（字节数）用于排序
     private long lastModifiedTimestamp; // 文件最后修改时间戳
     private String lastModified; // 格式化的最后修改时间
+    private String sortKey; // 小写文件名，预先计算用于排序与搜索
 
     public FileItem(String fileName, String fileSize, String fileType, String previewUri) {
         this.fileName = fileName;
         this.fileSize = fileSize;
         this.fileType = fileType;
         this.previewUri = previewUri;
+        this.sortKey = fileName.toLowerCase(Locale.ROOT);
     }
 
     public FileItem(String fileName, String fileSize, String fileType, String previewUri,
@@ -28,6 +30,7 @@ public class FileItem {
         this.previewUri = previewUri;
         this.fileSizeBytes = fileSizeBytes;
         this.lastModifiedTimestamp = lastModifiedTimestamp;
+        this.sortKey = fileName.toLowerCase(Locale.ROOT);
 
         // 格式化日期 - 只显示年月日
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
@@ -38,6 +41,10 @@ public class FileItem {
         return fileName;
     }
 
+    public String getSortKey() {
+        return sortKey;
+    }
+
     public String getFileSize() {
         return fileSize;
     }
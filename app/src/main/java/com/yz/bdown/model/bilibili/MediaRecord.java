@@ -0,0 +1,186 @@
+package com.yz.bdown.model.bilibili;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+
+/**
+ * 媒体库索引记录
+ * 对应一个已下载的媒体文件及其元数据
+ */
+public class MediaRecord {
+    private String path;            // 文件绝对路径
+    private String folder;          // 所在文件夹路径
+    private String fileName;        // 文件名
+    private long size;              // 文件大小（字节）
+    private long lastModified;      // 文件最后修改时间戳
+    private long durationMs;        // 时长（毫秒）
+    private int width;              // 视频宽度
+    private int height;             // 视频高度
+    private String videoCodec;      // 视频编码 MIME
+    private String audioCodec;      // 音频编码 MIME
+    private String bvid;            // 来源 BVID
+    private long cid;               // 来源 CID
+    private String coverUrl;        // 远程封面地址
+    private String partialHash;     // 首尾分块哈希，用于重复文件预筛
+    private String fullHash;        // 完整文件哈希
+
+    public MediaRecord() {
+    }
+
+    public MediaRecord(File file) {
+        this.path = file.getAbsolutePath();
+        this.folder = file.getParent();
+        this.fileName = file.getName();
+        this.size = file.length();
+        this.lastModified = file.lastModified();
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getFolder() {
+        return folder;
+    }
+
+    public void setFolder(String folder) {
+        this.folder = folder;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public String getVideoCodec() {
+        return videoCodec;
+    }
+
+    public void setVideoCodec(String videoCodec) {
+        this.videoCodec = videoCodec;
+    }
+
+    public String getAudioCodec() {
+        return audioCodec;
+    }
+
+    public void setAudioCodec(String audioCodec) {
+        this.audioCodec = audioCodec;
+    }
+
+    public String getBvid() {
+        return bvid;
+    }
+
+    public void setBvid(String bvid) {
+        this.bvid = bvid;
+    }
+
+    public long getCid() {
+        return cid;
+    }
+
+    public void setCid(long cid) {
+        this.cid = cid;
+    }
+
+    public String getCoverUrl() {
+        return coverUrl;
+    }
+
+    public void setCoverUrl(String coverUrl) {
+        this.coverUrl = coverUrl;
+    }
+
+    public String getPartialHash() {
+        return partialHash;
+    }
+
+    public void setPartialHash(String partialHash) {
+        this.partialHash = partialHash;
+    }
+
+    public String getFullHash() {
+        return fullHash;
+    }
+
+    public void setFullHash(String fullHash) {
+        this.fullHash = fullHash;
+    }
+
+    /**
+     * 文件是否与索引记录一致（大小和修改时间均未变化）
+     *
+     * @param file 磁盘上的文件
+     * @return 是否一致
+     */
+    public boolean isUpToDate(File file) {
+        return size == file.length() && lastModified == file.lastModified();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "MediaRecord{" +
+                "path='" + path + '\'' +
+                ", size=" + size +
+                ", lastModified=" + lastModified +
+                ", durationMs=" + durationMs +
+                ", width=" + width +
+                ", height=" + height +
+                ", videoCodec='" + videoCodec + '\'' +
+                ", audioCodec='" + audioCodec + '\'' +
+                ", bvid='" + bvid + '\'' +
+                ", cid=" + cid +
+                ", coverUrl='" + coverUrl + '\'' +
+                '}';
+    }
+}
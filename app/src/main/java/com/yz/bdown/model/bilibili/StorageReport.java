@@ -0,0 +1,56 @@
+package com.yz.bdown.model.bilibili;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 存储分析结果
+ * 包含残留的临时文件与重复文件，以及可回收的空间
+ */
+public class StorageReport {
+    private final List<File> orphanFiles = new ArrayList<>();                // 残留的 m4s 临时文件
+    private final List<List<MediaRecord>> duplicateGroups = new ArrayList<>(); // 内容或来源相同的文件分组
+    private long orphanBytes;       // 临时文件占用空间
+    private long duplicateBytes;    // 重复文件占用空间（每组保留一个）
+
+    public void addOrphan(File file) {
+        orphanFiles.add(file);
+        orphanBytes += file.length();
+    }
+
+    /**
+     * 添加一组重复文件，同一来源的重新下载大小可能不同，可回收空间按保留最早下载的一个计算
+     */
+    public void addDuplicateGroup(List<MediaRecord> group) {
+        duplicateGroups.add(group);
+        MediaRecord keep = group.get(0);
+        for (MediaRecord record : group) {
+            duplicateBytes += record.getSize();
+            if (record.getLastModified() < keep.getLastModified()) {
+                keep = record;
+            }
+        }
+        duplicateBytes -= keep.getSize();
+    }
+
+    public List<File> getOrphanFiles() {
+        return orphanFiles;
+    }
+
+    public List<List<MediaRecord>> getDuplicateGroups() {
+        return duplicateGroups;
+    }
+
+    public long getOrphanBytes() {
+        return orphanBytes;
+    }
+
+    public long getDuplicateBytes() {
+        return duplicateBytes;
+    }
+
+    public long getReclaimableBytes() {
+        return orphanBytes + duplicateBytes;
+    }
+}
@@ -0,0 +1,328 @@
+package com.yz.bdown.model.bilibili;
+
+import android.icu.text.Transliterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 标题搜索索引
+ * 对标题、全拼、首字母分别建立单字与二元组倒排表，支持子串、拼音、首字母匹配，
+ * 二元组重合率达到阈值的结果也会返回，用于容忍输错字母
+ * 非线程安全，需在同一线程构建与查询
+ *
+ * @param <T> 索引项数据类型
+ */
+public class TitleSearchIndex<T> {
+
+    // 模糊匹配要求的最低二元组重合率
+    private static final float FUZZY_THRESHOLD = 0.5f;
+
+    // 匹配得分：标题子串 > 拼音子串 > 模糊匹配
+    private static final int SCORE_TITLE = 3000;
+    private static final int SCORE_PINYIN = 2000;
+    private static final int SCORE_PREFIX = 500;
+    private static final int SCORE_FUZZY = 1000;
+
+    /**
+     * 汉字转拼音，非汉字返回 null
+     */
+    public interface PinyinProvider {
+        String toPinyin(char c);
+    }
+
+    private final PinyinProvider pinyinProvider;
+
+    private final Map<String, Integer> idByKey = new HashMap<>();
+    private final List<Entry<T>> entries = new ArrayList<>(); // 下标即ID，已删除为 null
+    private final Map<Character, IntList> unigrams = new HashMap<>();
+    private final Map<Integer, IntList> bigrams = new HashMap<>();
+    private int removedCount;
+
+    // 查询时复用的计数数组，避免每次分配
+    private int[] hitCounts = new int[0];
+    private final IntList touched = new IntList();
+
+    public TitleSearchIndex(PinyinProvider pinyinProvider) {
+        this.pinyinProvider = pinyinProvider;
+    }
+
+    /**
+     * 使用系统 ICU 转写创建索引
+     */
+    public static <T> TitleSearchIndex<T> withIcuPinyin() {
+        Transliterator transliterator = Transliterator.getInstance("Han-Latin; Latin-ASCII; Lower");
+        Map<Character, String> cache = new HashMap<>();
+        return new TitleSearchIndex<>(c -> {
+            if (Character.UnicodeScript.of(c) != Character.UnicodeScript.HAN) {
+                return null;
+            }
+            return cache.computeIfAbsent(c, k -> transliterator.transliterate(String.valueOf(k)).trim());
+        });
+    }
+
+    /**
+     * 新增或替换索引项
+     *
+     * @param key   唯一标识
+     * @param title 标题
+     * @param value 索引项数据
+     */
+    public void put(String key, String title, T value) {
+        remove(key);
+        insert(new Entry<>(key, buildFields(title), value));
+    }
+
+    /**
+     * 删除索引项，倒排表中的ID在查询时跳过，删除过多时重建
+     *
+     * @param key 唯一标识
+     */
+    public void remove(String key) {
+        Integer id = idByKey.remove(key);
+        if (id == null) {
+            return;
+        }
+
+        entries.set(id, null);
+        removedCount++;
+        if (removedCount > 64 && removedCount > entries.size() / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * 清空索引
+     */
+    public void clear() {
+        idByKey.clear();
+        entries.clear();
+        unigrams.clear();
+        bigrams.clear();
+        removedCount = 0;
+    }
+
+    public int size() {
+        return idByKey.size();
+    }
+
+    /**
+     * 查询，结果按匹配程度排序
+     *
+     * @param query 关键字，可为汉字、全拼或首字母
+     * @return 匹配的索引项数据
+     */
+    public List<T> search(String query) {
+        String q = normalize(query);
+        List<T> results = new ArrayList<>();
+        if (q.isEmpty()) {
+            return results;
+        }
+
+        if (hitCounts.length < entries.size()) {
+            hitCounts = new int[entries.size()];
+        }
+        touched.clear();
+
+        int gramCount;
+        if (q.length() == 1) {
+            gramCount = 1;
+            collect(unigrams.get(q.charAt(0)));
+        } else {
+            Set<Integer> queryGrams = new HashSet<>();
+            for (int i = 0; i + 1 < q.length(); i++) {
+                queryGrams.add(bigram(q.charAt(i), q.charAt(i + 1)));
+            }
+            gramCount = queryGrams.size();
+            for (Integer gram : queryGrams) {
+                collect(bigrams.get(gram));
+            }
+        }
+
+        // 计算得分后按得分降序排列，得分与ID打包为 long 排序避免装箱
+        long[] scored = new long[touched.size()];
+        int n = 0;
+        for (int i = 0; i < touched.size(); i++) {
+            int id = touched.get(i);
+            int hits = hitCounts[id];
+            hitCounts[id] = 0;
+
+            Entry<T> entry = entries.get(id);
+            if (entry == null) {
+                continue;
+            }
+            int score = score(entry, q, hits, gramCount);
+            if (score > 0) {
+                scored[n++] = ((long) score << 32) | (Integer.MAX_VALUE - id);
+            }
+        }
+
+        Arrays.sort(scored, 0, n);
+        for (int i = n - 1; i >= 0; i--) {
+            int id = Integer.MAX_VALUE - (int) scored[i];
+            results.add(entries.get(id).value);
+        }
+        return results;
+    }
+
+    private void collect(IntList posting) {
+        if (posting == null) {
+            return;
+        }
+        for (int i = 0; i < posting.size(); i++) {
+            int id = posting.get(i);
+            if (hitCounts[id]++ == 0) {
+                touched.add(id);
+            }
+        }
+    }
+
+    private int score(Entry<T> entry, String q, int hits, int gramCount) {
+        String[] fields = entry.fields;
+        int index = fields[0].indexOf(q);
+        if (index >= 0) {
+            return SCORE_TITLE + (index == 0 ? SCORE_PREFIX : 0) - Math.min(fields[0].length(), SCORE_PREFIX - 1);
+        }
+        for (int i = 1; i < fields.length; i++) {
+            index = fields[i].indexOf(q);
+            if (index >= 0) {
+                return SCORE_PINYIN + (index == 0 ? SCORE_PREFIX : 0) - Math.min(fields[i].length(), SCORE_PREFIX - 1);
+            }
+        }
+
+        float ratio = (float) hits / gramCount;
+        return gramCount > 1 && ratio >= FUZZY_THRESHOLD ? (int) (ratio * SCORE_FUZZY) : 0;
+    }
+
+    /**
+     * 生成检索字段：标题、全拼、首字母
+     */
+    private String[] buildFields(String title) {
+        String normalized = normalize(title);
+        StringBuilder full = new StringBuilder(normalized.length() * 3);
+        StringBuilder initials = new StringBuilder(normalized.length());
+        boolean hasHan = false;
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            String pinyin = pinyinProvider == null ? null : pinyinProvider.toPinyin(c);
+            if (pinyin != null && !pinyin.isEmpty()) {
+                hasHan = true;
+                full.append(pinyin);
+                initials.append(pinyin.charAt(0));
+            } else if (Character.isLetterOrDigit(c)) {
+                full.append(c);
+                initials.append(c);
+            }
+        }
+        return hasHan
+                ? new String[]{normalized, full.toString(), initials.toString()}
+                : new String[]{normalized};
+    }
+
+    private void compact() {
+        List<Entry<T>> live = new ArrayList<>(idByKey.size());
+        for (Entry<T> entry : entries) {
+            if (entry != null) {
+                live.add(entry);
+            }
+        }
+
+        clear();
+        for (Entry<T> entry : live) {
+            insert(entry);
+        }
+    }
+
+    private void insert(Entry<T> entry) {
+        int id = entries.size();
+        entries.add(entry);
+        idByKey.put(entry.key, id);
+
+        Set<Character> unigramSet = new HashSet<>();
+        Set<Integer> bigramSet = new HashSet<>();
+        for (String field : entry.fields) {
+            for (int i = 0; i < field.length(); i++) {
+                unigramSet.add(field.charAt(i));
+                if (i + 1 < field.length()) {
+                    bigramSet.add(bigram(field.charAt(i), field.charAt(i + 1)));
+                }
+            }
+        }
+        for (Character c : unigramSet) {
+            unigrams.computeIfAbsent(c, k -> new IntList()).add(id);
+        }
+        for (Integer gram : bigramSet) {
+            bigrams.computeIfAbsent(gram, k -> new IntList()).add(id);
+        }
+    }
+
+    /**
+     * 转小写并去掉空白与扩展名
+     */
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".mp4")) {
+            lower = lower.substring(0, lower.length() - 4);
+        }
+        StringBuilder sb = new StringBuilder(lower.length());
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int bigram(char a, char b) {
+        return (a << 16) | b;
+    }
+
+    private static class Entry<T> {
+        final String key;
+        final String[] fields;
+        final T value;
+
+        Entry(String key, String[] fields, T value) {
+            this.key = key;
+            this.fields = fields;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 可增长的 int 数组，倒排表使用，避免装箱
+     */
+    private static class IntList {
+        private int[] data = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int get(int index) {
+            return data[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package com.yz.bdown.model.bilibili.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.yz.bdown.model.bilibili.MediaRecord;
+import com.yz.bdown.model.bilibili.TitleSearchIndex;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 媒体库索引数据库
+ */
+public class MediaLibraryDbHelper extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "media_library.db";
+    private static final int DATABASE_VERSION = 6;
+
+    // 分页排序方式，与文件列表的排序方式一致
+    public static final int SORT_NONE = 0;
+    public static final int SORT_NAME = 1;
+    public static final int SORT_DATE = 2;
+    public static final int SORT_SIZE = 3;
+
+    // 按路径批量查询时每条语句的参数数，低于 SQLite 的变量上限
+    private static final int MAX_QUERY_ARGS = 500;
+
+    // 表名
+    private static final String TABLE_MEDIA = "media";
+    private static final String TABLE_SCAN_STATE = "scan_state";
+
+    // 媒体表字段
+    private static final String COL_PATH = "path";
+    private static final String COL_FOLDER = "folder";
+    private static final String COL_FILE_NAME = "file_name";
+    private static final String COL_SIZE = "size";
+    private static final String COL_LAST_MODIFIED = "last_modified";
+    private static final String COL_DURATION = "duration";
+    private static final String COL_WIDTH = "width";
+    private static final String COL_HEIGHT = "height";
+    private static final String COL_VIDEO_CODEC = "video_codec";
+    private static final String COL_AUDIO_CODEC = "audio_codec";
+    private static final String COL_BVID = "bvid";
+    private static final String COL_CID = "cid";
+    private static final String COL_COVER_URL = "cover_url";
+    private static final String COL_PARTIAL_HASH = "partial_hash";
+    private static final String COL_FULL_HASH = "full_hash";
+
+    // 扫描状态表字段
+    private static final String COL_SCAN_FOLDER = "folder";
+    private static final String COL_SCAN_LAST_MODIFIED = "last_modified";
+
+    // 创建媒体表的SQL语句
+    private static final String CREATE_MEDIA_TABLE = "CREATE TABLE " + TABLE_MEDIA + " (" +
+            COL_PATH + " TEXT PRIMARY KEY," +
+            COL_FOLDER + " TEXT," +
+            COL_FILE_NAME + " TEXT," +
+            COL_SIZE + " INTEGER," +
+            COL_LAST_MODIFIED + " INTEGER," +
+            COL_DURATION + " INTEGER," +
+            COL_WIDTH + " INTEGER," +
+            COL_HEIGHT + " INTEGER," +
+            COL_VIDEO_CODEC + " TEXT," +
+            COL_AUDIO_CODEC + " TEXT," +
+            COL_BVID + " TEXT," +
+            COL_CID + " INTEGER," +
+            COL_COVER_URL + " TEXT," +
+            COL_PARTIAL_HASH + " TEXT," +
+            COL_FULL_HASH + " TEXT" +
+            ")";
+
+    private static final String CREATE_MEDIA_FOLDER_INDEX = "CREATE INDEX idx_media_folder ON " +
+            TABLE_MEDIA + "(" + COL_FOLDER + ")";
+
+    // 分页排序使用的索引，末尾带上路径保证排序唯一
+    private static final String CREATE_MEDIA_NAME_INDEX = "CREATE INDEX idx_media_name ON " +
+            TABLE_MEDIA + "(" + COL_FOLDER + ", " + COL_FILE_NAME + " COLLATE NOCASE, " + COL_PATH + ")";
+    private static final String CREATE_MEDIA_DATE_INDEX = "CREATE INDEX idx_media_date ON " +
+            TABLE_MEDIA + "(" + COL_FOLDER + ", " + COL_LAST_MODIFIED + ", " + COL_PATH + ")";
+    private static final String CREATE_MEDIA_SIZE_INDEX = "CREATE INDEX idx_media_size ON " +
+            TABLE_MEDIA + "(" + COL_FOLDER + ", " + COL_SIZE + ", " + COL_PATH + ")";
+
+    // 创建扫描状态表的SQL语句
+    private static final String CREATE_SCAN_STATE_TABLE = "CREATE TABLE " + TABLE_SCAN_STATE + " (" +
+            COL_SCAN_FOLDER + " TEXT PRIMARY KEY," +
+            COL_SCAN_LAST_MODIFIED + " INTEGER" +
+            ")";
+
+    private static MediaLibraryDbHelper instance;
+
+    // 标题搜索索引，键与值都是路径；首次使用时在后台从数据库构建，之后随写入与删除增量更新
+    private TitleSearchIndex<String> titleIndex;
+
+    public static synchronized MediaLibraryDbHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new MediaLibraryDbHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MediaLibraryDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(CREATE_MEDIA_TABLE);
+        db.execSQL(CREATE_MEDIA_FOLDER_INDEX);
+        createSortIndexes(db);
+        db.execSQL(CREATE_SCAN_STATE_TABLE);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // 版本2：增加封面地址
+            db.execSQL("ALTER TABLE " + TABLE_MEDIA + " ADD COLUMN " + COL_COVER_URL + " TEXT");
+        }
+        if (oldVersion < 3) {
+            // 版本3：增加分页排序索引
+            createSortIndexes(db);
+        }
+        if (oldVersion < 4) {
+            // 版本4：增加文件哈希，用于重复文件检测
+            db.execSQL("ALTER TABLE " + TABLE_MEDIA + " ADD COLUMN " + COL_PARTIAL_HASH + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_MEDIA + " ADD COLUMN " + COL_FULL_HASH + " TEXT");
+        }
+        if (oldVersion == 5) {
+            // 版本6：标题搜索改用内存中增量维护的索引，删除版本5的标题二元组倒排表
+            db.execSQL("DROP TABLE IF EXISTS title_gram");
+        }
+    }
+
+    private void createSortIndexes(SQLiteDatabase db) {
+        db.execSQL(CREATE_MEDIA_NAME_INDEX);
+        db.execSQL(CREATE_MEDIA_DATE_INDEX);
+        db.execSQL(CREATE_MEDIA_SIZE_INDEX);
+    }
+
+    /**
+     * 获取文件夹下所有索引记录
+     */
+    public List<MediaRecord> queryByFolder(String folder) {
+        List<MediaRecord> records = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_MEDIA, null, COL_FOLDER + " = ?",
+                new String[]{folder}, null, null, null)) {
+            while (cursor.moveToNext()) {
+                records.add(toRecord(cursor));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 获取文件夹下的记录数
+     */
+    public int count(String folder) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return (int) DatabaseUtils.queryNumEntries(db, TABLE_MEDIA, COL_FOLDER + " = ?", new String[]{folder});
+    }
+
+    /**
+     * 按排序方式分页查询，有上一页最后一条记录时以其作为游标（keyset 分页），翻页代价与页码无关；
+     * 没有游标时（直接跳到未加载过的页）按偏移量查询
+     *
+     * @param folder     文件夹路径
+     * @param sortMethod 排序方式
+     * @param after      上一页最后一条记录，查询第一页或上一页未加载时为 null
+     * @param offset     没有游标时跳过的条数
+     * @param limit      每页条数
+     * @return 当前页记录
+     */
+    public List<MediaRecord> queryPage(String folder, int sortMethod, MediaRecord after, int offset, int limit) {
+        String column;
+        String collate = "";
+        boolean descending;
+        switch (sortMethod) {
+            case SORT_NAME:
+                column = COL_FILE_NAME;
+                collate = " COLLATE NOCASE";
+                descending = false;
+                break;
+            case SORT_DATE:
+                column = COL_LAST_MODIFIED;
+                descending = true;
+                break;
+            case SORT_SIZE:
+                column = COL_SIZE;
+                descending = true;
+                break;
+            default:
+                column = COL_PATH;
+                descending = false;
+                break;
+        }
+
+        String afterValue = after == null ? null : sortValue(after, sortMethod);
+        String direction = descending ? " DESC" : " ASC";
+        String orderBy = COL_PATH.equals(column)
+                ? COL_PATH + direction
+                : column + collate + direction + ", " + COL_PATH + direction;
+
+        StringBuilder selection = new StringBuilder(COL_FOLDER + " = ?");
+        List<String> args = new ArrayList<>();
+        args.add(folder);
+        if (after != null) {
+            String op = descending ? " < ?" : " > ?";
+            if (COL_PATH.equals(column)) {
+                selection.append(" AND ").append(COL_PATH).append(op);
+                args.add(afterValue);
+            } else {
+                // 数值列需要按数值比较，参数绑定为字符串时用 CAST
+                String param = COL_FILE_NAME.equals(column) ? "?" : "CAST(? AS INTEGER)";
+                String cmp = descending ? " < " : " > ";
+                selection.append(" AND (").append(column).append(collate).append(cmp).append(param)
+                        .append(" OR (").append(column).append(collate).append(" = ").append(param)
+                        .append(" AND ").append(COL_PATH).append(op).append("))");
+                args.add(afterValue);
+                args.add(afterValue);
+                args.add(after.getPath());
+            }
+        }
+
+        List<MediaRecord> records = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        String limitClause = after == null && offset > 0 ? offset + "," + limit : String.valueOf(limit);
+        try (Cursor cursor = db.query(TABLE_MEDIA, null, selection.toString(),
+                args.toArray(new String[0]), null, null, orderBy, limitClause)) {
+            while (cursor.moveToNext()) {
+                records.add(toRecord(cursor));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 与 {@link #queryPage} 一致的排序，用于在已加载的页中确定记录的位置
+     * NOCASE 只折叠 ASCII 字母，其余字符与路径按码点比较，与 SQLite 按 UTF-8 字节比较的结果一致
+     *
+     * @param sortMethod 排序方式
+     * @return 比较器
+     */
+    public static Comparator<MediaRecord> pageOrder(int sortMethod) {
+        Comparator<MediaRecord> byPath = (a, b) -> compareText(a.getPath(), b.getPath(), false);
+        switch (sortMethod) {
+            case SORT_NAME:
+                Comparator<MediaRecord> byName = (a, b) -> compareText(a.getFileName(), b.getFileName(), true);
+                return byName.thenComparing(byPath);
+            case SORT_DATE:
+                return Comparator.comparingLong(MediaRecord::getLastModified).thenComparing(byPath).reversed();
+            case SORT_SIZE:
+                return Comparator.comparingLong(MediaRecord::getSize).thenComparing(byPath).reversed();
+            default:
+                return byPath;
+        }
+    }
+
+    private static int compareText(String a, String b, boolean noCase) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+            if (noCase) {
+                ca = ca >= 'A' && ca <= 'Z' ? ca + ('a' - 'A') : ca;
+                cb = cb >= 'A' && cb <= 'Z' ? cb + ('a' - 'A') : cb;
+            }
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+        }
+        return Boolean.compare(i < a.length(), j < b.length());
+    }
+
+    /**
+     * 按标题搜索，在内存索引中查询后按路径读取命中的记录，与媒体库大小无关
+     *
+     * @param folder 文件夹路径
+     * @param query  关键字，可为汉字、全拼或首字母
+     * @param limit  最多返回的条数
+     * @return 按匹配程度排列的记录
+     */
+    public List<MediaRecord> searchTitle(String folder, String query, int limit) {
+        List<String> paths = new ArrayList<>();
+        synchronized (this) {
+            for (String path : getTitleIndex().search(query)) {
+                if (folder.equals(new File(path).getParent())) {
+                    paths.add(path);
+                    if (paths.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        Map<String, MediaRecord> recordMap = new HashMap<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        for (int start = 0; start < paths.size(); start += MAX_QUERY_ARGS) {
+            List<String> chunk = paths.subList(start, Math.min(start + MAX_QUERY_ARGS, paths.size()));
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < chunk.size(); i++) {
+                placeholders.append(i == 0 ? "?" : ",?");
+            }
+            try (Cursor cursor = db.query(TABLE_MEDIA, null, COL_PATH + " IN (" + placeholders + ")",
+                    chunk.toArray(new String[0]), null, null, null)) {
+                while (cursor.moveToNext()) {
+                    MediaRecord record = toRecord(cursor);
+                    recordMap.put(record.getPath(), record);
+                }
+            }
+        }
+
+        List<MediaRecord> records = new ArrayList<>(recordMap.size());
+        for (String path : paths) {
+            MediaRecord record = recordMap.get(path);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 预先构建标题搜索索引，需在后台线程调用，避免首次搜索时等待
+     */
+    public synchronized void prepareTitleIndex() {
+        getTitleIndex();
+    }
+
+    private synchronized TitleSearchIndex<String> getTitleIndex() {
+        if (titleIndex == null) {
+            TitleSearchIndex<String> index = TitleSearchIndex.withIcuPinyin();
+            SQLiteDatabase db = this.getReadableDatabase();
+            try (Cursor cursor = db.query(TABLE_MEDIA, new String[]{COL_PATH, COL_FILE_NAME},
+                    null, null, null, null, null)) {
+                while (cursor.moveToNext()) {
+                    index.put(cursor.getString(0), cursor.getString(1), cursor.getString(0));
+                }
+            }
+            titleIndex = index;
+        }
+        return titleIndex;
+    }
+
+    /**
+     * 索引已构建时同步更新，未构建时构建时会从数据库读取最新内容
+     *
+     * @param path     路径
+     * @param fileName 文件名，删除时为 null
+     */
+    private synchronized void updateTitleIndex(String path, String fileName) {
+        if (titleIndex == null) {
+            return;
+        }
+        if (fileName != null) {
+            titleIndex.put(path, fileName, path);
+        } else {
+            titleIndex.remove(path);
+        }
+    }
+
+    private String sortValue(MediaRecord record, int sortMethod) {
+        switch (sortMethod) {
+            case SORT_NAME:
+                return record.getFileName();
+            case SORT_DATE:
+                return String.valueOf(record.getLastModified());
+            case SORT_SIZE:
+                return String.valueOf(record.getSize());
+            default:
+                return record.getPath();
+        }
+    }
+
+    /**
+     * 查询与其他文件大小相同的记录，大小唯一的文件不可能重复
+     *
+     * @param folder 文件夹路径
+     * @return 按大小排列的候选记录
+     */
+    public List<MediaRecord> querySameSizeRecords(String folder) {
+        List<MediaRecord> records = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        String sql = "SELECT * FROM " + TABLE_MEDIA +
+                " WHERE " + COL_FOLDER + " = ? AND " + COL_SIZE + " IN (" +
+                "SELECT " + COL_SIZE + " FROM " + TABLE_MEDIA + " WHERE " + COL_FOLDER + " = ?" +
+                " GROUP BY " + COL_SIZE + " HAVING COUNT(*) > 1)" +
+                " ORDER BY " + COL_SIZE;
+        try (Cursor cursor = db.rawQuery(sql, new String[]{folder, folder})) {
+            while (cursor.moveToNext()) {
+                records.add(toRecord(cursor));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 查询来源（BVID + CID）相同的下载记录，按来源排序
+     * 重新下载的文件封装时间不同，内容哈希不会相同，按来源判断是否重复
+     */
+    public List<MediaRecord> querySameSourceRecords(String folder) {
+        List<MediaRecord> records = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        String sql = "SELECT m.* FROM " + TABLE_MEDIA + " m JOIN (" +
+                "SELECT " + COL_BVID + ", " + COL_CID + " FROM " + TABLE_MEDIA +
+                " WHERE " + COL_FOLDER + " = ? AND " + COL_BVID + " IS NOT NULL" +
+                " GROUP BY " + COL_BVID + ", " + COL_CID + " HAVING COUNT(*) > 1) d" +
+                " ON m." + COL_BVID + " = d." + COL_BVID + " AND m." + COL_CID + " = d." + COL_CID +
+                " WHERE m." + COL_FOLDER + " = ? ORDER BY m." + COL_BVID + ", m." + COL_CID;
+        try (Cursor cursor = db.rawQuery(sql, new String[]{folder, folder})) {
+            while (cursor.moveToNext()) {
+                records.add(toRecord(cursor));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 保存文件哈希
+     */
+    public void updateHashes(String path, String partialHash, String fullHash) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_PARTIAL_HASH, partialHash);
+        values.put(COL_FULL_HASH, fullHash);
+        db.update(TABLE_MEDIA, values, COL_PATH + " = ?", new String[]{path});
+    }
+
+    /**
+     * 获取文件夹下所有索引记录，以路径为 key
+     */
+    public Map<String, MediaRecord> queryMapByFolder(String folder) {
+        Map<String, MediaRecord> records = new HashMap<>();
+        for (MediaRecord record : queryByFolder(folder)) {
+            records.put(record.getPath(), record);
+        }
+        return records;
+    }
+
+    /**
+     * 获取单条索引记录
+     */
+    public MediaRecord query(String path) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_MEDIA, null, COL_PATH + " = ?",
+                new String[]{path}, null, null, null)) {
+            return cursor.moveToFirst() ? toRecord(cursor) : null;
+        }
+    }
+
+    /**
+     * 插入或更新索引记录
+     */
+    public void upsert(MediaRecord record) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.insertWithOnConflict(TABLE_MEDIA, null, toValues(record), SQLiteDatabase.CONFLICT_REPLACE);
+        updateTitleIndex(record.getPath(), record.getFileName());
+    }
+
+    /**
+     * 批量更新索引：写入变化的记录并删除已不存在的文件
+     */
+    public void applyChanges(List<MediaRecord> changed, List<String> removedPaths) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (MediaRecord record : changed) {
+                db.insertWithOnConflict(TABLE_MEDIA, null, toValues(record), SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            for (String path : removedPaths) {
+                db.delete(TABLE_MEDIA, COL_PATH + " = ?", new String[]{path});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        for (MediaRecord record : changed) {
+            updateTitleIndex(record.getPath(), record.getFileName());
+        }
+        for (String path : removedPaths) {
+            updateTitleIndex(path, null);
+        }
+    }
+
+    /**
+     * 删除索引记录
+     */
+    public boolean delete(String path) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        boolean deleted = db.delete(TABLE_MEDIA, COL_PATH + " = ?", new String[]{path}) > 0;
+        updateTitleIndex(path, null);
+        return deleted;
+    }
+
+    /**
+     * 获取文件夹上次扫描时的修改时间，未扫描过返回 -1
+     */
+    public long getScannedLastModified(String folder) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_SCAN_STATE, new String[]{COL_SCAN_LAST_MODIFIED},
+                COL_SCAN_FOLDER + " = ?", new String[]{folder}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+    }
+
+    /**
+     * 记录文件夹扫描时的修改时间
+     */
+    public void setScannedLastModified(String folder, long lastModified) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_SCAN_FOLDER, folder);
+        values.put(COL_SCAN_LAST_MODIFIED, lastModified);
+        db.insertWithOnConflict(TABLE_SCAN_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private ContentValues toValues(MediaRecord record) {
+        ContentValues values = new ContentValues();
+        values.put(COL_PATH, record.getPath());
+        values.put(COL_FOLDER, record.getFolder());
+        values.put(COL_FILE_NAME, record.getFileName());
+        values.put(COL_SIZE, record.getSize());
+        values.put(COL_LAST_MODIFIED, record.getLastModified());
+        values.put(COL_DURATION, record.getDurationMs());
+        values.put(COL_WIDTH, record.getWidth());
+        values.put(COL_HEIGHT, record.getHeight());
+        values.put(COL_VIDEO_CODEC, record.getVideoCodec());
+        values.put(COL_AUDIO_CODEC, record.getAudioCodec());
+        values.put(COL_BVID, record.getBvid());
+        values.put(COL_CID, record.getCid());
+        values.put(COL_COVER_URL, record.getCoverUrl());
+        values.put(COL_PARTIAL_HASH, record.getPartialHash());
+        values.put(COL_FULL_HASH, record.getFullHash());
+        return values;
+    }
+
+    private MediaRecord toRecord(Cursor cursor) {
+        MediaRecord record = new MediaRecord();
+        record.setPath(cursor.getString(cursor.getColumnIndexOrThrow(COL_PATH)));
+        record.setFolder(cursor.getString(cursor.getColumnIndexOrThrow(COL_FOLDER)));
+        record.setFileName(cursor.getString(cursor.getColumnIndexOrThrow(COL_FILE_NAME)));
+        record.setSize(cursor.getLong(cursor.getColumnIndexOrThrow(COL_SIZE)));
+        record.setLastModified(cursor.getLong(cursor.getColumnIndexOrThrow(COL_LAST_MODIFIED)));
+        record.setDurationMs(cursor.getLong(cursor.getColumnIndexOrThrow(COL_DURATION)));
+        record.setWidth(cursor.getInt(cursor.getColumnIndexOrThrow(COL_WIDTH)));
+        record.setHeight(cursor.getInt(cursor.getColumnIndexOrThrow(COL_HEIGHT)));
+        record.setVideoCodec(cursor.getString(cursor.getColumnIndexOrThrow(COL_VIDEO_CODEC)));
+        record.setAudioCodec(cursor.getString(cursor.getColumnIndexOrThrow(COL_AUDIO_CODEC)));
+        record.setBvid(cursor.getString(cursor.getColumnIndexOrThrow(COL_BVID)));
+        record.setCid(cursor.getLong(cursor.getColumnIndexOrThrow(COL_CID)));
+        record.setCoverUrl(cursor.getString(cursor.getColumnIndexOrThrow(COL_COVER_URL)));
+        record.setPartialHash(cursor.getString(cursor.getColumnIndexOrThrow(COL_PARTIAL_HASH)));
+        record.setFullHash(cursor.getString(cursor.getColumnIndexOrThrow(COL_FULL_HASH)));
+        return record;
+    }
+}
@@ -0,0 +1,414 @@
+package com.yz.bdown.model.bilibili.db;
+
+import static android.media.MediaFormat.KEY_DURATION;
+import static android.media.MediaFormat.KEY_HEIGHT;
+import static android.media.MediaFormat.KEY_MIME;
+import static android.media.MediaFormat.KEY_WIDTH;
+
+import android.content.Context;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.yz.bdown.model.bilibili.MediaRecord;
+import com.yz.bdown.model.bilibili.StorageReport;
+import com.yz.bdown.utils.SeekPreviewUtils;
+import com.yz.bdown.utils.VideoThumbnailUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
+
+/**
+ * 媒体库管理器
+ * 维护下载目录的持久化索引，打开页面时先返回索引内容，再在后台增量扫描
+ * 只有新增或大小/修改时间变化的文件才会重新读取元数据
+ */
+public class MediaLibraryManager {
+    private static final String TAG = "MediaLibraryManager";
+    private static MediaLibraryManager instance;
+
+    private final Context appContext;
+    private final MediaLibraryDbHelper dbHelper;
+    private final StorageAnalyzer storageAnalyzer;
+    // 扫描与数据库读写都在单线程执行，保证顺序
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 拖动预览图需解码整段视频，在单独的线程生成，不阻塞下载完成与索引读写
+    private final ExecutorService previewExecutor = Executors.newSingleThreadExecutor();
+
+    // 文件夹监听，FileObserver 需要持有强引用，否则被回收后不再回调
+    private FileObserver fileObserver;
+
+    // 关注的文件事件：写入完成、移入视为新增或更新；删除、移出视为移除
+    private static final int WATCH_MASK = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO
+            | FileObserver.DELETE | FileObserver.MOVED_FROM | FileObserver.DELETE_SELF;
+
+    /**
+     * 分页加载回调，在主线程回调
+     */
+    public interface OnPageLoadedListener {
+        /**
+         * @param records 当前页记录
+         * @param hasMore 是否还有下一页
+         */
+        void onPageLoaded(List<MediaRecord> records, boolean hasMore);
+    }
+
+    /**
+     * 重新加载回调，在主线程回调
+     */
+    public interface OnWindowLoadedListener {
+        /**
+         * @param count   记录总数
+         * @param records 请求的页
+         */
+        void onWindowLoaded(int count, List<MediaRecord> records);
+    }
+
+    /**
+     * 存储分析回调，在主线程回调
+     */
+    public interface OnStorageAnalyzedListener {
+        void onStorageAnalyzed(StorageReport report);
+    }
+
+    /**
+     * 媒体库变化回调，在主线程回调
+     */
+    public interface OnLibraryChangedListener {
+        /**
+         * @param record 记录
+         * @param added  索引中原本没有该文件；下载流程可能先写入索引，此时为 false
+         */
+        void onMediaUpdated(MediaRecord record, boolean added);
+
+        void onMediaRemoved(String path);
+    }
+
+    private MediaLibraryManager(Context context) {
+        appContext = context;
+        dbHelper = MediaLibraryDbHelper.getInstance(context);
+        storageAnalyzer = new StorageAnalyzer(dbHelper);
+    }
+
+    public static synchronized MediaLibraryManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new MediaLibraryManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * 异步获取记录数并加载一页，重新加载时用于先填充显示位置所在的页
+     *
+     * @param dir        文件夹
+     * @param sortMethod 排序方式
+     * @param offset     跳过的条数
+     * @param pageSize   每页条数
+     * @param listener   加载回调
+     */
+    public void loadWindowAsync(File dir, int sortMethod, int offset, int pageSize, OnWindowLoadedListener listener) {
+        executor.execute(() -> {
+            String folder = dir.getAbsolutePath();
+            int count = dbHelper.count(folder);
+            List<MediaRecord> records = dbHelper.queryPage(folder, sortMethod, null, offset, pageSize);
+            mainHandler.post(() -> listener.onWindowLoaded(count, records));
+        });
+    }
+
+    /**
+     * 异步加载一页媒体记录
+     *
+     * @param dir        文件夹
+     * @param sortMethod 排序方式，见 {@link MediaLibraryDbHelper#SORT_NAME} 等
+     * @param after      上一页最后一条记录，加载第一页或上一页未加载时为 null
+     * @param offset     after 为 null 时跳过的条数
+     * @param pageSize   每页条数
+     * @param listener   加载回调
+     */
+    public void loadPageAsync(File dir, int sortMethod, MediaRecord after, int offset, int pageSize,
+                              OnPageLoadedListener listener) {
+        executor.execute(() -> {
+            // 多查一条用于判断是否还有下一页
+            List<MediaRecord> records = dbHelper.queryPage(dir.getAbsolutePath(), sortMethod, after, offset, pageSize + 1);
+            boolean hasMore = records.size() > pageSize;
+            List<MediaRecord> page = hasMore ? new ArrayList<>(records.subList(0, pageSize)) : records;
+            mainHandler.post(() -> listener.onPageLoaded(page, hasMore));
+        });
+    }
+
+    /**
+     * 异步按标题搜索，在内存中的标题索引查询，只读取命中的记录
+     *
+     * @param dir        文件夹
+     * @param query      关键字，可为汉字、全拼或首字母
+     * @param sortMethod 排序方式，未排序时按匹配程度排列
+     * @param limit      最多返回的条数
+     * @param listener   搜索回调，hasMore 始终为 false
+     */
+    public void searchAsync(File dir, String query, int sortMethod, int limit, OnPageLoadedListener listener) {
+        executor.execute(() -> {
+            List<MediaRecord> records = dbHelper.searchTitle(dir.getAbsolutePath(), query, limit);
+            if (sortMethod != MediaLibraryDbHelper.SORT_NONE) {
+                records.sort(MediaLibraryDbHelper.pageOrder(sortMethod));
+            }
+            mainHandler.post(() -> listener.onPageLoaded(records, false));
+        });
+    }
+
+    /**
+     * 异步增量扫描文件夹，索引有变化时在主线程回调
+     *
+     * @param dir       文件夹
+     * @param onChanged 索引变化回调
+     */
+    public void rescanAsync(File dir, Runnable onChanged) {
+        executor.execute(() -> {
+            if (rescan(dir)) {
+                mainHandler.post(onChanged);
+            }
+            // 扫描后在后台构建标题索引，首次搜索无需等待
+            dbHelper.prepareTitleIndex();
+        });
+    }
+
+    /**
+     * 增量扫描文件夹并更新索引，需在后台线程调用
+     *
+     * @param dir 文件夹
+     * @return 索引是否有变化
+     */
+    public boolean rescan(File dir) {
+        String folder = dir.getAbsolutePath();
+        if (!dir.exists()) {
+            return false;
+        }
+
+        // 目录修改时间未变说明没有增删文件，跳过扫描
+        // 已存在文件被覆盖写入时目录修改时间不变，由下载流程调用 updateFile 更新
+        long dirLastModified = dir.lastModified();
+        if (dirLastModified == dbHelper.getScannedLastModified(folder)) {
+            return false;
+        }
+
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return false;
+        }
+
+        Map<String, MediaRecord> indexed = dbHelper.queryMapByFolder(folder);
+        List<MediaRecord> changed = new ArrayList<>();
+        for (File file : files) {
+            // 只处理MP4文件
+            if (!file.isFile() || !file.getName().endsWith(".mp4")) {
+                continue;
+            }
+
+            MediaRecord record = indexed.remove(file.getAbsolutePath());
+            if (record == null || !record.isUpToDate(file)) {
+                changed.add(probe(file));
+            }
+        }
+
+        // 剩余的记录对应的文件已被删除
+        List<String> removedPaths = new ArrayList<>(indexed.keySet());
+        if (!changed.isEmpty() || !removedPaths.isEmpty()) {
+            dbHelper.applyChanges(changed, removedPaths);
+        }
+        dbHelper.setScannedLastModified(folder, dirLastModified);
+        Log.i(TAG, "rescan " + folder + ", changed=" + changed.size() + ", removed=" + removedPaths.size());
+        return !changed.isEmpty() || !removedPaths.isEmpty();
+    }
+
+    /**
+     * 更新单个文件的索引记录，需在后台线程调用
+     *
+     * @param file 文件
+     * @return 更新后的记录
+     */
+    public MediaRecord updateFile(File file) {
+        MediaRecord record = probe(file);
+        dbHelper.upsert(record);
+        return record;
+    }
+
+    /**
+     * 下载完成后写入索引与缩略图，浏览文件夹时无需再解码媒体文件
+     * 在索引线程上执行并等待完成，与文件监听的写入保持顺序；拖动预览图提交到后台生成，不等待完成
+     *
+     * @param file     合并后的文件
+     * @param bvid     来源 BVID
+     * @param cid      来源 CID
+     * @param coverUrl 远程封面地址
+     * @return 索引记录，失败返回 null
+     */
+    public MediaRecord indexDownload(File file, String bvid, long cid, String coverUrl) {
+        try {
+            MediaRecord record = executor.submit(() -> {
+                MediaRecord indexed = dbHelper.query(file.getAbsolutePath());
+                MediaRecord result = indexed != null && indexed.isUpToDate(file) ? indexed : probe(file);
+                result.setBvid(bvid);
+                result.setCid(cid);
+                result.setCoverUrl(coverUrl);
+                dbHelper.upsert(result);
+                return result;
+            }).get();
+
+            // 按网格尺寸生成缩略图并写入磁盘缓存
+            VideoThumbnailUtils.getThumbnail(appContext, record.getPath(), record.getLastModified(),
+                    VideoThumbnailUtils.getGridWidth(appContext), VideoThumbnailUtils.getGridHeight(appContext));
+            // 预先生成拖动预览雪碧图，首次播放时无需等待截取；同一文件的生成由 SeekPreviewUtils 按文件加锁
+            previewExecutor.execute(() ->
+                    SeekPreviewUtils.getSheet(appContext, record.getPath(), record.getLastModified()));
+            return record;
+        } catch (Exception e) {
+            Log.e(TAG, "indexDownload failed, path=" + file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 异步分析文件夹的残留临时文件与重复文件
+     * 先增量扫描保证索引最新，已计算过的哈希直接复用
+     *
+     * @param dir      文件夹
+     * @param listener 分析结果回调
+     */
+    public void analyzeStorageAsync(File dir, OnStorageAnalyzedListener listener) {
+        executor.execute(() -> {
+            rescan(dir);
+            StorageReport report = storageAnalyzer.analyze(dir);
+            Log.i(TAG, "analyze storage, orphans=" + report.getOrphanFiles().size()
+                    + ", duplicateGroups=" + report.getDuplicateGroups().size()
+                    + ", reclaimable=" + report.getReclaimableBytes());
+            mainHandler.post(() -> listener.onStorageAnalyzed(report));
+        });
+    }
+
+    /**
+     * 异步删除文件并同步移除索引记录
+     *
+     * @param files  要删除的文件
+     * @param onDone 完成回调，参数为实际释放的字节数
+     */
+    public void deleteFilesAsync(List<File> files, LongConsumer onDone) {
+        executor.execute(() -> {
+            long freed = 0;
+            for (File file : files) {
+                long length = file.length();
+                if (file.delete()) {
+                    freed += length;
+                    dbHelper.delete(file.getAbsolutePath());
+                } else {
+                    Log.w(TAG, "delete failed, path=" + file.getAbsolutePath());
+                }
+            }
+            long freedBytes = freed;
+            mainHandler.post(() -> onDone.accept(freedBytes));
+        });
+    }
+
+    /**
+     * 移除单个文件的索引记录
+     *
+     * @param path 文件路径
+     */
+    public void removeFile(String path) {
+        executor.execute(() -> dbHelper.delete(path));
+    }
+
+    /**
+     * 监听文件夹变化并增量更新索引，同一时间只监听一个文件夹
+     *
+     * @param dir      文件夹
+     * @param listener 变化回调
+     */
+    public synchronized void startWatching(File dir, OnLibraryChangedListener listener) {
+        stopWatching();
+        fileObserver = new FileObserver(dir, WATCH_MASK) {
+            @Override
+            public void onEvent(int event, String name) {
+                onFileEvent(dir, event & FileObserver.ALL_EVENTS, name, listener);
+            }
+        };
+        fileObserver.startWatching();
+    }
+
+    /**
+     * 停止监听文件夹
+     */
+    public synchronized void stopWatching() {
+        if (fileObserver != null) {
+            fileObserver.stopWatching();
+            fileObserver = null;
+        }
+    }
+
+    private void onFileEvent(File dir, int event, String name, OnLibraryChangedListener listener) {
+        if (event == FileObserver.DELETE_SELF) {
+            Log.w(TAG, "watched folder deleted: " + dir.getAbsolutePath());
+            return;
+        }
+        // 只处理MP4文件，下载中的 m4s 分片等忽略
+        if (name == null || !name.endsWith(".mp4")) {
+            return;
+        }
+
+        File file = new File(dir, name);
+        executor.execute(() -> {
+            if ((event == FileObserver.CLOSE_WRITE || event == FileObserver.MOVED_TO) && file.isFile()) {
+                // 下载流程可能已写入索引，此时直接通知，不再读取元数据
+                MediaRecord indexed = dbHelper.query(file.getAbsolutePath());
+                MediaRecord record = indexed != null && indexed.isUpToDate(file) ? indexed : updateFile(file);
+                mainHandler.post(() -> listener.onMediaUpdated(record, indexed == null));
+            } else if ((event == FileObserver.DELETE || event == FileObserver.MOVED_FROM) && !file.exists()) {
+                if (dbHelper.delete(file.getAbsolutePath())) {
+                    mainHandler.post(() -> listener.onMediaRemoved(file.getAbsolutePath()));
+                }
+            }
+        });
+    }
+
+    /**
+     * 读取文件的时长、分辨率与编码信息
+     */
+    private MediaRecord probe(File file) {
+        MediaRecord record = new MediaRecord(file);
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(file.getAbsolutePath());
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(KEY_MIME);
+                if (mime == null) {
+                    continue;
+                }
+
+                if (format.containsKey(KEY_DURATION)) {
+                    record.setDurationMs(Math.max(record.getDurationMs(), format.getLong(KEY_DURATION) / 1000));
+                }
+                if (mime.startsWith("video/") && record.getVideoCodec() == null) {
+                    record.setVideoCodec(mime);
+                    record.setWidth(format.containsKey(KEY_WIDTH) ? format.getInteger(KEY_WIDTH) : 0);
+                    record.setHeight(format.containsKey(KEY_HEIGHT) ? format.getInteger(KEY_HEIGHT) : 0);
+                } else if (mime.startsWith("audio/") && record.getAudioCodec() == null) {
+                    record.setAudioCodec(mime);
+                }
+            }
+        } catch (Throwable t) {
+            // 元数据读取失败仍保留文件记录，避免每次扫描重复读取
+            Log.w(TAG, "probe failed, path=" + file.getAbsolutePath(), t);
+        } finally {
+            extractor.release();
+        }
+        return record;
+    }
+}
@@ -0,0 +1,217 @@
+package com.yz.bdown.model.bilibili.db;
+
+import android.util.Log;
+
+import com.yz.bdown.model.bilibili.MediaRecord;
+import com.yz.bdown.model.bilibili.StorageReport;
+import com.yz.bdown.utils.DownloadFrontierUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 存储分析器
+ * 1. 残留临时文件：超过一定时间未修改且不在下载中的 m4s 文件，包括没有对应 MP4 的与已合并进 MP4 的视频轨；
+ *    音频轨在 MP4 存在时保留，导出音频与转文字需要使用
+ * 2. 重复文件：下载时记录的来源（BVID + CID）相同的先归为一组，重新下载的文件封装时间不同，哈希不会相同；
+ *    其余文件按 大小相同 -> 首尾分块哈希相同 -> 完整哈希相同，逐级筛选
+ * 哈希按 大小+修改时间 缓存在索引中，文件未变化时不重复计算
+ */
+class StorageAnalyzer {
+    private static final String TAG = "StorageAnalyzer";
+
+    // 超过该时间未修改的 m4s 视为失败下载的残留
+    private static final long ORPHAN_AGE_MS = 60 * 60 * 1000L;
+    private static final String VIDEO_SUFFIX = "_video.m4s";
+    private static final String AUDIO_SUFFIX = "_audio.m4s";
+    // 预筛哈希读取文件首尾各 64KB
+    private static final int PARTIAL_CHUNK = 64 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final MediaLibraryDbHelper dbHelper;
+
+    StorageAnalyzer(MediaLibraryDbHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * 分析文件夹，需在后台线程调用
+     */
+    StorageReport analyze(File dir) {
+        StorageReport report = new StorageReport();
+        findOrphans(dir, report);
+        findDuplicates(dir.getAbsolutePath(), report);
+        return report;
+    }
+
+    private void findOrphans(File dir, StorageReport report) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(VIDEO_SUFFIX) || name.endsWith(AUDIO_SUFFIX));
+        if (files == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            // 只清理长时间未更新且不在下载中的，避免删除正在下载或刚下载完等待合并的文件
+            if (now - file.lastModified() <= ORPHAN_AGE_MS || DownloadFrontierUtils.isDownloading(file.getAbsolutePath())) {
+                continue;
+            }
+
+            String name = file.getName();
+            String title = name.substring(0, name.length() - VIDEO_SUFFIX.length());
+            if (!new File(dir, title + ".mp4").exists()) {
+                // 下载失败未合并的残留
+                report.addOrphan(file);
+            } else if (!name.endsWith(AUDIO_SUFFIX)) {
+                // 视频轨已合并进 MP4；音频轨仍用于导出音频与转文字，MP4 存在时保留
+                report.addOrphan(file);
+            }
+        }
+    }
+
+    private void findDuplicates(String folder, StorageReport report) {
+        // 同一来源的下载（查询结果已按来源排序）
+        Set<String> grouped = new HashSet<>();
+        List<MediaRecord> sameSource = dbHelper.querySameSourceRecords(folder);
+        int start = 0;
+        while (start < sameSource.size()) {
+            int end = start;
+            MediaRecord first = sameSource.get(start);
+            while (end < sameSource.size() && first.getBvid().equals(sameSource.get(end).getBvid())
+                    && first.getCid() == sameSource.get(end).getCid()) {
+                grouped.add(sameSource.get(end).getPath());
+                end++;
+            }
+            report.addDuplicateGroup(new ArrayList<>(sameSource.subList(start, end)));
+            start = end;
+        }
+
+        List<MediaRecord> candidates = new ArrayList<>();
+        for (MediaRecord record : dbHelper.querySameSizeRecords(folder)) {
+            if (!grouped.contains(record.getPath())) {
+                candidates.add(record);
+            }
+        }
+
+        // 其余文件按大小分组（查询结果已按大小排序），排除已分组的后大小可能唯一，组内不足两个时跳过
+        start = 0;
+        while (start < candidates.size()) {
+            int end = start;
+            long size = candidates.get(start).getSize();
+            while (end < candidates.size() && candidates.get(end).getSize() == size) {
+                end++;
+            }
+            findDuplicatesInSizeGroup(candidates.subList(start, end), report);
+            start = end;
+        }
+    }
+
+    private void findDuplicatesInSizeGroup(List<MediaRecord> sameSize, StorageReport report) {
+        if (sameSize.size() < 2) {
+            return;
+        }
+        Map<String, List<MediaRecord>> byPartial = new HashMap<>();
+        for (MediaRecord record : sameSize) {
+            String partial = record.getPartialHash();
+            if (partial == null) {
+                partial = partialHash(new File(record.getPath()));
+                if (partial == null) {
+                    continue;
+                }
+                record.setPartialHash(partial);
+                dbHelper.updateHashes(record.getPath(), partial, record.getFullHash());
+            }
+            byPartial.computeIfAbsent(partial, k -> new ArrayList<>()).add(record);
+        }
+
+        for (List<MediaRecord> samePartial : byPartial.values()) {
+            if (samePartial.size() < 2) {
+                continue;
+            }
+
+            Map<String, List<MediaRecord>> byFull = new HashMap<>();
+            for (MediaRecord record : samePartial) {
+                String full = record.getFullHash();
+                if (full == null) {
+                    full = fullHash(new File(record.getPath()));
+                    if (full == null) {
+                        continue;
+                    }
+                    record.setFullHash(full);
+                    dbHelper.updateHashes(record.getPath(), record.getPartialHash(), full);
+                }
+                byFull.computeIfAbsent(full, k -> new ArrayList<>()).add(record);
+            }
+
+            for (List<MediaRecord> group : byFull.values()) {
+                if (group.size() > 1) {
+                    report.addDuplicateGroup(group);
+                }
+            }
+        }
+    }
+
+    /**
+     * 计算文件首尾各 64KB 的哈希
+     */
+    private String partialHash(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long length = raf.length();
+            byte[] buffer = new byte[PARTIAL_CHUNK];
+
+            int read = raf.read(buffer, 0, (int) Math.min(PARTIAL_CHUNK, length));
+            if (read > 0) {
+                digest.update(buffer, 0, read);
+            }
+            if (length > PARTIAL_CHUNK * 2L) {
+                raf.seek(length - PARTIAL_CHUNK);
+                read = raf.read(buffer);
+                if (read > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            return toHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Log.w(TAG, "partialHash failed, path=" + file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 计算完整文件哈希
+     */
+    private String fullHash(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return toHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Log.w(TAG, "fullHash failed, path=" + file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -1,5 +1,7 @@
 package com.yz.bdown.model.chat;
 
+import com.yz.bdown.utils.TokenCountUtils;
+
 import java.util.Date;
 
 /**
@@ -9,14 +11,16 @@ import java.util.Date;
 public class ChatMessage {
     public static final String ROLE_USER = "user";
     public static final String ROLE_ASSISTANT = "assistant";
+    public static final String ROLE_SYSTEM = "system";
     private String id;          // 消息唯一标识
-    private String role;        // 消息角色：user 或 assistant
+    private String role;        // 消息角色：user、assistant 或 system
     private String content;     // 消息内容
     private String reasoning;   // 思考/推理内容
     private Date timestamp;     // 消息时间戳
     private String sessionId;   // 所属会话ID
     private boolean inProgress; // 是否正在处理中
     private String firstAnswer;    // 第一个回答预览
+    private int tokenCount = -1;   // 发送内容的 token 数缓存，-1 表示未计算
 
     public ChatMessage(String role, String content) {
         this.role = role;
@@ -48,6 +52,24 @@ public class ChatMessage {
 
     public void setContent(String content) {
         this.content = content;
+        this.tokenCount = -1;
+    }
+
+    /**
+     * 获取发送该消息占用的 token 数（含消息模板开销），首次调用时计算并缓存，内容修改后重新计算
+     */
+    public int getTokenCount() {
+        if (tokenCount < 0) {
+            tokenCount = TokenCountUtils.countMessage(getContent());
+        }
+        return tokenCount;
+    }
+
+    /**
+     * 设置已知的 token 数，从数据库加载时使用，避免重新计算
+     */
+    public void setTokenCount(int tokenCount) {
+        this.tokenCount = tokenCount;
     }
 
     public String getReasoning() {
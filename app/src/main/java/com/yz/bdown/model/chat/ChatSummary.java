@@ -0,0 +1,86 @@
+package com.yz.bdown.model.chat;
+
+import com.yz.bdown.utils.TokenCountUtils;
+
+import java.util.Date;
+
+/**
+ * 对话摘要类
+ * 压缩后的早期对话，覆盖会话中从 startMessageId 到 endMessageId（含）的消息
+ */
+public class ChatSummary {
+    private long id;                // 数据库自增ID
+    private String sessionId;       // 所属会话ID
+    private String startMessageId;  // 覆盖的第一条消息ID
+    private String endMessageId;    // 覆盖的最后一条消息ID
+    private String content;         // 摘要内容
+    private int tokenCount = -1;    // 作为消息发送时的 token 数，-1 表示未计算
+    private Date createTime;        // 创建时间
+
+    public ChatSummary() {
+        this.createTime = new Date();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public String getStartMessageId() {
+        return startMessageId;
+    }
+
+    public void setStartMessageId(String startMessageId) {
+        this.startMessageId = startMessageId;
+    }
+
+    public String getEndMessageId() {
+        return endMessageId;
+    }
+
+    public void setEndMessageId(String endMessageId) {
+        this.endMessageId = endMessageId;
+    }
+
+    public String getContent() {
+        return content != null ? content : "";
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+        this.tokenCount = -1;
+    }
+
+    /**
+     * 获取摘要作为消息发送时的 token 数，首次调用时计算并缓存
+     */
+    public int getTokenCount() {
+        if (tokenCount < 0) {
+            tokenCount = TokenCountUtils.countMessage(getContent());
+        }
+        return tokenCount;
+    }
+
+    public void setTokenCount(int tokenCount) {
+        this.tokenCount = tokenCount;
+    }
+
+    public Date getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(Date createTime) {
+        this.createTime = createTime;
+    }
+}
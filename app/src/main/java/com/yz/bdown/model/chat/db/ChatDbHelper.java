@@ -10,6 +10,7 @@ import android.util.Log;
 import com.yz.bdown.model.chat.ChatMessage;
 import com.yz.bdown.model.chat.ChatSession;
 import com.yz.bdown.model.chat.ChatSessionSummary;
+import com.yz.bdown.model.chat.ChatSummary;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -23,12 +24,13 @@ public class ChatDbHelper extends SQLiteOpenHelper {
 
     private static final String TAG = "ChatDbHelper";
     private static final String DATABASE_NAME = "chat_history.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 3;
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
 
     // 表名
     private static final String TABLE_SESSIONS = "sessions";
     private static final String TABLE_MESSAGES = "messages";
+    private static final String TABLE_SUMMARIES = "summaries";
 
     // 会话表字段
     private static final String COL_SESSION_ID = "id";
@@ -44,6 +46,16 @@ public class ChatDbHelper extends SQLiteOpenHelper {
     private static final String COL_MESSAGE_CONTENT = "content";
     private static final String COL_MESSAGE_REASONING = "reasoning";
     private static final String COL_MESSAGE_TIMESTAMP = "timestamp";
+    private static final String COL_MESSAGE_TOKEN_COUNT = "token_count";
+
+    // 摘要表字段
+    private static final String COL_SUMMARY_ID = "id";
+    private static final String COL_SUMMARY_SESSION_ID = "session_id";
+    private static final String COL_SUMMARY_START_MESSAGE_ID = "start_message_id";
+    private static final String COL_SUMMARY_END_MESSAGE_ID = "end_message_id";
+    private static final String COL_SUMMARY_CONTENT = "content";
+    private static final String COL_SUMMARY_TOKEN_COUNT = "token_count";
+    private static final String COL_SUMMARY_CREATE_TIME = "create_time";
 
     // 创建会话表的SQL语句
     private static final String CREATE_SESSIONS_TABLE = "CREATE TABLE " + TABLE_SESSIONS + " (" +
@@ -62,10 +74,25 @@ public class ChatDbHelper extends SQLiteOpenHelper {
             COL_MESSAGE_CONTENT + " TEXT," +
             COL_MESSAGE_REASONING + " TEXT," +
             COL_MESSAGE_TIMESTAMP + " TEXT," +
+            COL_MESSAGE_TOKEN_COUNT + " INTEGER NOT NULL DEFAULT -1," +
             "FOREIGN KEY(" + COL_MESSAGE_SESSION_ID + ") REFERENCES " +
             TABLE_SESSIONS + "(" + COL_SESSION_ID + ")" +
             ")";
 
+    // 创建摘要表的SQL语句，同一会话的同一消息区间只保存一份摘要
+    private static final String CREATE_SUMMARIES_TABLE = "CREATE TABLE " + TABLE_SUMMARIES + " (" +
+            COL_SUMMARY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+            COL_SUMMARY_SESSION_ID + " TEXT," +
+            COL_SUMMARY_START_MESSAGE_ID + " TEXT," +
+            COL_SUMMARY_END_MESSAGE_ID + " TEXT," +
+            COL_SUMMARY_CONTENT + " TEXT," +
+            COL_SUMMARY_TOKEN_COUNT + " INTEGER NOT NULL DEFAULT -1," +
+            COL_SUMMARY_CREATE_TIME + " TEXT," +
+            "UNIQUE(" + COL_SUMMARY_SESSION_ID + ", " + COL_SUMMARY_START_MESSAGE_ID + ", " + COL_SUMMARY_END_MESSAGE_ID + ")," +
+            "FOREIGN KEY(" + COL_SUMMARY_SESSION_ID + ") REFERENCES " +
+            TABLE_SESSIONS + "(" + COL_SESSION_ID + ")" +
+            ")";
+
     private static ChatDbHelper instance;
 
     public static synchronized ChatDbHelper getInstance(Context context) {
@@ -83,14 +110,21 @@ public class ChatDbHelper extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(CREATE_SESSIONS_TABLE);
         db.execSQL(CREATE_MESSAGES_TABLE);
+        db.execSQL(CREATE_SUMMARIES_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // 这里处理数据库升级逻辑
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_MESSAGES);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SESSIONS);
-        onCreate(db);
+        // 逐版本升级，保留已有的聊天记录
+        if (oldVersion < 2) {
+            // 版本 2：消息表增加 token 数缓存，旧消息为 -1，加载后按需计算
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " +
+                    COL_MESSAGE_TOKEN_COUNT + " INTEGER NOT NULL DEFAULT -1");
+        }
+        if (oldVersion < 3) {
+            // 版本 3：增加早期对话的摘要表
+            db.execSQL(CREATE_SUMMARIES_TABLE);
+        }
     }
 
     /**
@@ -164,6 +198,7 @@ public class ChatDbHelper extends SQLiteOpenHelper {
         values.put(COL_MESSAGE_CONTENT, message.getContent());
         values.put(COL_MESSAGE_REASONING, message.getReasoning());
         values.put(COL_MESSAGE_TIMESTAMP, formatDate(message.getTimestamp()));
+        values.put(COL_MESSAGE_TOKEN_COUNT, message.getTokenCount());
 
         long result = db.insert(TABLE_MESSAGES, null, values);
         if (result == -1) {
@@ -217,6 +252,12 @@ public class ChatDbHelper extends SQLiteOpenHelper {
                 // 处理推理内容
                 String reasoning = cursor.getString(cursor.getColumnIndexOrThrow(COL_MESSAGE_REASONING));
                 message.setReasoning(reasoning != null ? reasoning : "");
+
+                // 已缓存的 token 数，旧数据为 -1 时由 ChatMessage 按需计算
+                int tokenCount = cursor.getInt(cursor.getColumnIndexOrThrow(COL_MESSAGE_TOKEN_COUNT));
+                if (tokenCount >= 0) {
+                    message.setTokenCount(tokenCount);
+                }
                 
                 try {
                     String dateStr = cursor.getString(cursor.getColumnIndexOrThrow(COL_MESSAGE_TIMESTAMP));
@@ -345,8 +386,9 @@ public class ChatDbHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         db.beginTransaction();
         try {
-            // 首先删除所有关联的消息
+            // 首先删除所有关联的消息与摘要
             db.delete(TABLE_MESSAGES, COL_MESSAGE_SESSION_ID + " = ?", new String[]{sessionId});
+            db.delete(TABLE_SUMMARIES, COL_SUMMARY_SESSION_ID + " = ?", new String[]{sessionId});
             // 然后删除会话本身
             int result = db.delete(TABLE_SESSIONS, COL_SESSION_ID + " = ?", new String[]{sessionId});
             db.setTransactionSuccessful();
@@ -356,6 +398,64 @@ public class ChatDbHelper extends SQLiteOpenHelper {
         }
     }
 
+    /**
+     * 保存对话摘要，同一区间已有摘要时替换
+     */
+    public long insertSummary(ChatSummary summary) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_SUMMARY_SESSION_ID, summary.getSessionId());
+        values.put(COL_SUMMARY_START_MESSAGE_ID, summary.getStartMessageId());
+        values.put(COL_SUMMARY_END_MESSAGE_ID, summary.getEndMessageId());
+        values.put(COL_SUMMARY_CONTENT, summary.getContent());
+        values.put(COL_SUMMARY_TOKEN_COUNT, summary.getTokenCount());
+        values.put(COL_SUMMARY_CREATE_TIME, formatDate(summary.getCreateTime()));
+
+        long result = db.insertWithOnConflict(TABLE_SUMMARIES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        if (result == -1) {
+            Log.e(TAG, "Failed to insert summary");
+            return -1;
+        }
+        summary.setId(result);
+        return result;
+    }
+
+    /**
+     * 获取会话最新的摘要，摘要逐步合并，最新的一份覆盖的消息最多
+     */
+    public ChatSummary getLatestSummary(String sessionId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        String query = "SELECT * FROM " + TABLE_SUMMARIES +
+                " WHERE " + COL_SUMMARY_SESSION_ID + " = ?" +
+                " ORDER BY " + COL_SUMMARY_ID + " DESC LIMIT 1";
+        Cursor cursor = db.rawQuery(query, new String[]{sessionId});
+
+        ChatSummary summary = null;
+        if (cursor.moveToFirst()) {
+            summary = new ChatSummary();
+            summary.setId(cursor.getLong(cursor.getColumnIndexOrThrow(COL_SUMMARY_ID)));
+            summary.setSessionId(cursor.getString(cursor.getColumnIndexOrThrow(COL_SUMMARY_SESSION_ID)));
+            summary.setStartMessageId(cursor.getString(cursor.getColumnIndexOrThrow(COL_SUMMARY_START_MESSAGE_ID)));
+            summary.setEndMessageId(cursor.getString(cursor.getColumnIndexOrThrow(COL_SUMMARY_END_MESSAGE_ID)));
+            summary.setContent(cursor.getString(cursor.getColumnIndexOrThrow(COL_SUMMARY_CONTENT)));
+
+            int tokenCount = cursor.getInt(cursor.getColumnIndexOrThrow(COL_SUMMARY_TOKEN_COUNT));
+            if (tokenCount >= 0) {
+                summary.setTokenCount(tokenCount);
+            }
+
+            try {
+                String dateStr = cursor.getString(cursor.getColumnIndexOrThrow(COL_SUMMARY_CREATE_TIME));
+                summary.setCreateTime(DATE_FORMAT.parse(dateStr));
+            } catch (ParseException e) {
+                Log.e(TAG, "Error parsing date", e);
+                summary.setCreateTime(new Date());
+            }
+        }
+        cursor.close();
+        return summary;
+    }
+
     /**
      * 格式化日期为字符串
      */
@@ -7,15 +7,17 @@ import com.yz.bdown.model.chat.ChatHistory;
 import com.yz.bdown.model.chat.ChatMessage;
 import com.yz.bdown.model.chat.ChatSession;
 import com.yz.bdown.model.chat.ChatSessionSummary;
+import com.yz.bdown.model.chat.ChatSummary;
+import com.yz.bdown.utils.ChatCompactor;
 
 import java.util.List;
 import java.util.UUID;
 
 /**
  * 聊天会话管理器
- * 用于提供与UI层交互的接口，管理聊天会话的持久化、加载和更新
+ * 用于提供与UI层交互的接口，管理聊天会话的持久化、加载和更新，以及早期对话摘要的保存
  */
-public class ChatSessionManager {
+public class ChatSessionManager implements ChatCompactor.SummaryStore {
     private static final String TAG = "ChatSessionManager";
     private static ChatSessionManager instance;
     private ChatDbHelper dbHelper;
@@ -148,6 +150,27 @@ public class ChatSessionManager {
         return initialize();
     }
 
+    /**
+     * 获取会话最新的对话摘要
+     * @param sessionId 会话ID
+     * @return 摘要，没有时返回 null
+     */
+    @Override
+    public ChatSummary getLatestSummary(String sessionId) {
+        return dbHelper.getLatestSummary(sessionId);
+    }
+
+    /**
+     * 保存对话摘要
+     * @param summary 摘要
+     */
+    @Override
+    public void saveSummary(ChatSummary summary) {
+        if (dbHelper.insertSummary(summary) == -1) {
+            Log.e(TAG, "Failed to save summary for session: " + summary.getSessionId());
+        }
+    }
+
     /**
      * 删除指定的会话
      * @param sessionId 要删除的会话ID
@@ -1,11 +1,86 @@
 package com.yz.bdown.utils;
 
+import static android.media.MediaFormat.KEY_DURATION;
+import static android.media.MediaFormat.KEY_MIME;
+import static com.arthenica.mobileffmpeg.Config.RETURN_CODE_CANCEL;
+import static com.arthenica.mobileffmpeg.Config.RETURN_CODE_SUCCESS;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.arthenica.mobileffmpeg.Config;
 import com.arthenica.mobileffmpeg.FFmpeg;
+import com.arthenica.mobileffmpeg.Statistics;
+import com.yz.bdown.contents.AudioExportModeEnum;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
 
 public class AudioConverterUtils {
 
+    private static final String TAG = "AudioConverterUtils";
+
+    private static final String MIME_FLAC = "audio/flac";
+
+    // 同时执行的转换数，避免批量转换占满 CPU 影响界面
+    private static final int MAX_CONCURRENT_CONVERSIONS = 2;
+
+    // 排队的转换任务在此执行，每个任务等待其 FFmpeg 异步执行结束
+    private static final ExecutorService queueExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_CONVERSIONS);
+
+    // FFmpeg 异步执行线程，并发数由 queueExecutor 限制
+    private static final ExecutorService ffmpegExecutor = Executors.newCachedThreadPool();
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private static final AtomicLong taskIdGenerator = new AtomicLong();
+    private static final Map<Long, ConvertTask> tasks = new ConcurrentHashMap<>();
+    private static final Map<Long, ConvertTask> executions = new ConcurrentHashMap<>();
+
+    static {
+        Config.enableStatisticsCallback(AudioConverterUtils::onStatistics);
+    }
+
+    /**
+     * 音频转换回调接口，所有方法在主线程回调
+     */
+    public interface ConvertCallback {
+        void onProgress(int progress);
+
+        void onComplete(String outputPath);
+
+        void onError(String errorMessage);
+
+        void onCancel();
+    }
+
     public static boolean convertM4sToMp3(String inputPath, String outputPath) {
-        String[] cmd = {                // FFmpeg 命令行参数
+        return FFmpeg.execute(mp3Command(inputPath, outputPath)) == 0;
+    }
+
+    /**
+     * 以流复制方式提取音轨，不重新编码
+     *
+     * @param inputPath  输入的 m4s 音频文件
+     * @param outputPath 输出文件，扩展名需与 {@link #copyExtension(String)} 一致
+     * @return 是否提取成功
+     */
+    public static boolean extractM4sAudio(String inputPath, String outputPath) {
+        return FFmpeg.execute(copyCommand(inputPath, outputPath)) == 0;
+    }
+
+    private static String[] mp3Command(String inputPath, String outputPath) {
+        return new String[]{            // FFmpeg 命令行参数
                 "-y",                   // 覆盖输出文件
                 "-i", inputPath,        // 输入文件
                 "-vn",                  // 忽略视频流
@@ -14,6 +89,251 @@ public class AudioConverterUtils {
                 "-map_metadata", "0",   // 保留元数据
                 outputPath
         };
-        return FFmpeg.execute(cmd) == 0;
     }
-}
\ No newline at end of file
+
+    private static String[] copyCommand(String inputPath, String outputPath) {
+        return new String[]{            // FFmpeg 命令行参数
+                "-y",                   // 覆盖输出文件
+                "-i", inputPath,        // 输入文件
+                "-vn",                  // 忽略视频流
+                "-c:a", "copy",         // 流复制，不重新编码
+                "-map_metadata", "0",   // 保留元数据
+                outputPath
+        };
+    }
+
+    private static String[] encodeCommand(String inputPath, String outputPath, AudioExportModeEnum mode) {
+        String encoder = mode == AudioExportModeEnum.OPUS ? "libopus" : "aac";
+        return new String[]{            // FFmpeg 命令行参数
+                "-y",                   // 覆盖输出文件
+                "-i", inputPath,        // 输入文件
+                "-vn",                  // 忽略视频流
+                "-c:a", encoder,        // 软件编码器
+                "-b:a", String.valueOf(mode.getBitRate()),
+                "-map_metadata", "0",   // 保留元数据
+                outputPath
+        };
+    }
+
+    private static String[] command(String inputPath, String outputPath, AudioExportModeEnum mode) {
+        switch (mode) {
+            case MP3:
+                return mp3Command(inputPath, outputPath);
+            case AAC:
+            case OPUS:
+                return encodeCommand(inputPath, outputPath, mode);
+            default:
+                return copyCommand(inputPath, outputPath);
+        }
+    }
+
+    private static String outputPath(String inputPath, String outputPathPrefix, AudioExportModeEnum mode) {
+        return outputPathPrefix + (mode.getExtension() != null ? mode.getExtension() : copyExtension(inputPath));
+    }
+
+    /**
+     * 导出音频
+     *
+     * @param inputPath        输入的 m4s 音频文件
+     * @param outputPathPrefix 输出文件路径（不含扩展名）
+     * @param mode             导出方式
+     * @return 输出文件路径，失败返回 null
+     */
+    public static String exportM4sAudio(String inputPath, String outputPathPrefix, AudioExportModeEnum mode) {
+        String outputPath = outputPath(inputPath, outputPathPrefix, mode);
+        if (mode.getCodecMime() != null && transcodeWithMediaCodec(inputPath, outputPath, mode, null, null)) {
+            return outputPath;
+        }
+        return FFmpeg.execute(command(inputPath, outputPath, mode)) == 0 ? outputPath : null;
+    }
+
+    /**
+     * 使用 MediaCodec 转码，设备没有对应编码器时返回 false 以便回退到 FFmpeg
+     */
+    private static boolean transcodeWithMediaCodec(String inputPath,
+                                                   String outputPath,
+                                                   AudioExportModeEnum mode,
+                                                   IntConsumer progressListener,
+                                                   AtomicBoolean cancelled) {
+        if (!MediaCodecTranscodeUtils.isSupported(inputPath, mode.getCodecMime(), mode.getBitRate())) {
+            Log.i(TAG, "no MediaCodec encoder for " + mode + ", fallback to FFmpeg");
+            return false;
+        }
+        return MediaCodecTranscodeUtils.transcode(inputPath, outputPath, mode.getCodecMime(),
+                mode.getBitRate(), progressListener, cancelled);
+    }
+
+    /**
+     * 根据音轨编码确定流复制输出的扩展名：FLAC 输出 .flac，其余（AAC）输出 .m4a
+     *
+     * @param inputPath 输入的 m4s 音频文件
+     * @return 扩展名
+     */
+    public static String copyExtension(String inputPath) {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(inputPath);
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat mediaFormat = extractor.getTrackFormat(i);
+                if (MIME_FLAC.equals(mediaFormat.getString(KEY_MIME))) {
+                    return ".flac";
+                }
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "read audio format failed, inputPath=" + inputPath, t);
+        } finally {
+            extractor.release();
+        }
+        return ".m4a";
+    }
+
+    /**
+     * 异步导出音频，任务进入有界队列执行
+     *
+     * @param inputPath        输入的 m4s 音频文件
+     * @param outputPathPrefix 输出文件路径（不含扩展名）
+     * @param mode             导出方式
+     * @param callback         转换回调
+     * @return 任务ID，用于 {@link #cancel(long)}
+     */
+    public static long exportM4sAudioAsync(String inputPath,
+                                           String outputPathPrefix,
+                                           AudioExportModeEnum mode,
+                                           ConvertCallback callback) {
+        ConvertTask task = new ConvertTask(taskIdGenerator.incrementAndGet(), callback);
+        tasks.put(task.taskId, task);
+        queueExecutor.execute(() -> runTask(task, inputPath, outputPathPrefix, mode));
+        return task.taskId;
+    }
+
+    /**
+     * 取消转换任务，排队中的任务不再执行，执行中的任务通过 executionId 中止 FFmpeg
+     *
+     * @param taskId 任务ID
+     */
+    public static void cancel(long taskId) {
+        ConvertTask task = tasks.get(taskId);
+        if (task == null) {
+            return;
+        }
+
+        task.cancelled.set(true);
+        long executionId = task.executionId;
+        if (executionId != 0) {
+            FFmpeg.cancel(executionId);
+        }
+    }
+
+    private static void runTask(ConvertTask task, String inputPath, String outputPathPrefix, AudioExportModeEnum mode) {
+        try {
+            if (task.cancelled.get()) {
+                mainHandler.post(task.callback::onCancel);
+                return;
+            }
+
+            String outputPath = outputPath(inputPath, outputPathPrefix, mode);
+            if (mode.getCodecMime() != null) {
+                IntConsumer progressListener = progress -> mainHandler.post(() -> task.callback.onProgress(progress));
+                if (transcodeWithMediaCodec(inputPath, outputPath, mode, progressListener, task.cancelled)) {
+                    mainHandler.post(() -> task.callback.onComplete(outputPath));
+                    return;
+                }
+                if (task.cancelled.get()) {
+                    mainHandler.post(task.callback::onCancel);
+                    return;
+                }
+            }
+
+            task.durationMs = getDurationMs(inputPath);
+            String[] cmd = command(inputPath, outputPath, mode);
+
+            CountDownLatch latch = new CountDownLatch(1);
+            task.executionId = FFmpeg.executeAsync(cmd, (executionId, returnCode) -> {
+                executions.remove(executionId);
+                onFinished(task, outputPath, returnCode);
+                latch.countDown();
+            }, ffmpegExecutor);
+            executions.put(task.executionId, task);
+
+            // 提交前已被取消
+            if (task.cancelled.get()) {
+                FFmpeg.cancel(task.executionId);
+            }
+            latch.await();
+        } catch (Throwable t) {
+            Log.e(TAG, "convert failed, inputPath=" + inputPath, t);
+            mainHandler.post(() -> task.callback.onError("音频转换异常: " + t.getMessage()));
+        } finally {
+            tasks.remove(task.taskId);
+            executions.remove(task.executionId);
+        }
+    }
+
+    private static void onFinished(ConvertTask task, String outputPath, int returnCode) {
+        if (returnCode == RETURN_CODE_SUCCESS && !task.cancelled.get()) {
+            mainHandler.post(() -> task.callback.onComplete(outputPath));
+            return;
+        }
+
+        File outputFile = new File(outputPath);
+        if (outputFile.exists() && !outputFile.delete()) {
+            Log.w(TAG, "delete partial output failed, outputPath=" + outputPath);
+        }
+        if (returnCode == RETURN_CODE_CANCEL || task.cancelled.get()) {
+            mainHandler.post(task.callback::onCancel);
+        } else {
+            mainHandler.post(() -> task.callback.onError("FFmpeg 返回码: " + returnCode));
+        }
+    }
+
+    /**
+     * FFmpeg 统计回调，按已处理时长/总时长计算进度
+     */
+    private static void onStatistics(Statistics statistics) {
+        ConvertTask task = executions.get(statistics.getExecutionId());
+        if (task == null || task.durationMs <= 0) {
+            return;
+        }
+
+        int progress = (int) Math.min(100, statistics.getTime() * 100L / task.durationMs);
+        if (progress != task.lastProgress) {
+            task.lastProgress = progress;
+            mainHandler.post(() -> task.callback.onProgress(progress));
+        }
+    }
+
+    private static long getDurationMs(String inputPath) {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(inputPath);
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat mediaFormat = extractor.getTrackFormat(i);
+                if (mediaFormat.containsKey(KEY_DURATION)) {
+                    return mediaFormat.getLong(KEY_DURATION) / 1000;
+                }
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "read duration failed, inputPath=" + inputPath, t);
+        } finally {
+            extractor.release();
+        }
+        return 0;
+    }
+
+    /**
+     * 转换任务状态
+     */
+    private static class ConvertTask {
+        final long taskId;
+        final ConvertCallback callback;
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        volatile long executionId;
+        volatile long durationMs;
+        volatile int lastProgress = -1;
+
+        ConvertTask(long taskId, ConvertCallback callback) {
+            this.taskId = taskId;
+            this.callback = callback;
+        }
+    }
+}
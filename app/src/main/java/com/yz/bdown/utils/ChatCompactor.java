@@ -0,0 +1,308 @@
+package com.yz.bdown.utils;
+
+import com.yz.bdown.callback.DeepSeekStreamCallback;
+import com.yz.bdown.model.chat.ChatMessage;
+import com.yz.bdown.model.chat.ChatSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * 对话上下文压缩
+ * 未摘要的对话原文超过阈值时，在后台把较早的完整轮次与已有摘要合并为新的摘要（滚动摘要），
+ * 摘要按覆盖的消息区间保存到数据库，之后的发送以一条 system 消息代替这些原文，只有其后的消息由 ChatContextWindow 按预算保留
+ * 每个区间只摘要一次，摘要生成期间照常发送原文；发送的上下文不超过摘要上限加压缩阈值，与会话长度无关
+ * 只在主线程使用
+ */
+public class ChatCompactor {
+
+    // 未摘要的原文超过该 token 数时开始压缩
+    static final int COMPACT_THRESHOLD_TOKENS = 16 * 1024;
+    // 压缩后保留原文的最近对话
+    static final int KEEP_RECENT_TOKENS = 8 * 1024;
+    // 单次摘要请求最多合并的原文，更早的积压留到之后的发送继续合并
+    static final int MAX_BATCH_TOKENS = 32 * 1024;
+    // 合并时单条消息最多保留的 token 数，过长的粘贴内容只保留开头
+    static final int MAX_MESSAGE_TOKENS = 8 * 1024;
+    // 摘要长度上限
+    static final int MAX_SUMMARY_TOKENS = 1024;
+    // 摘要请求超过该时间仍未回调时视为失败，之后的发送重新请求
+    static final long SUMMARY_TIMEOUT_MS = 2 * 60 * 1000;
+
+    private static final String SUMMARY_PREFIX = "以下是本次对话较早部分的摘要，请结合摘要继续回答：\n";
+    private static final String SUMMARIZE_INSTRUCTION = "你是对话摘要助手。请把已有摘要与新的对话合并为一份新的摘要，"
+            + "保留用户的目标与偏好、已确认的事实与结论、关键数据、代码与约定、尚未解决的问题，省略寒暄与重复内容。"
+            + "直接输出摘要正文，不超过 600 字。";
+
+    /**
+     * 摘要的持久化
+     */
+    public interface SummaryStore {
+
+        /**
+         * 获取会话最新的摘要，没有时返回 null
+         */
+        ChatSummary getLatestSummary(String sessionId);
+
+        void saveSummary(ChatSummary summary);
+    }
+
+    /**
+     * 发送摘要请求，结果通过 callback 在主线程返回
+     */
+    public interface Summarizer {
+        void summarize(List<ChatMessage> prompt, DeepSeekStreamCallback callback);
+    }
+
+    private final ChatContextWindow window = new ChatContextWindow();
+    private final SummaryStore store;
+    private final Summarizer summarizer;
+    private final LongSupplier clock;       // 单调时钟，毫秒
+
+    private boolean loaded;                 // 是否已加载 sessionId 的摘要
+    private String sessionId;
+    private ChatSummary summary;            // 当前会话最新的摘要
+    private ChatMessage summaryMessage;     // 摘要作为消息发送的形式
+    private List<ChatMessage> summarySource;    // 定位摘要末尾时使用的消息历史
+    private int summaryEnd = -1;            // 摘要覆盖的最后一条消息在 summarySource 中的位置，-1 表示不在其中
+    private Object pendingRequest;          // 进行中的摘要请求，同一时间只有一个
+    private long pendingSince;              // 摘要请求发出的时间
+
+    public ChatCompactor(SummaryStore store, Summarizer summarizer) {
+        this(store, summarizer, () -> System.nanoTime() / 1_000_000);
+    }
+
+    ChatCompactor(SummaryStore store, Summarizer summarizer, LongSupplier clock) {
+        this.store = store;
+        this.summarizer = summarizer;
+        this.clock = clock;
+    }
+
+    /**
+     * 构建要发送的消息列表：摘要（如果有）在前，其后是按预算保留的原文
+     *
+     * @param history   消息历史，只在末尾追加
+     * @param end       只使用 history 中 [0, end) 的消息，用于排除正在生成的回答
+     * @param sessionId 当前会话ID，为 null 时不压缩
+     * @param budget    token 预算，包含摘要
+     * @return 按时间顺序排列的消息
+     */
+    public List<ChatMessage> build(List<ChatMessage> history, int end, String sessionId, int budget) {
+        if (!loaded || !Objects.equals(sessionId, this.sessionId)) {
+            load(sessionId);
+        }
+
+        int start = locateSummaryEnd(history, end) + 1;
+        ChatMessage summaryMessage = start > 0 ? getSummaryMessage() : null;
+        int summaryTokens = summaryMessage != null ? summaryMessage.getTokenCount() : 0;
+
+        List<ChatMessage> messages = window.build(history, start, end, sessionId, budget - summaryTokens);
+        if (window.getTotalTokens() > COMPACT_THRESHOLD_TOKENS) {
+            compact(history, start, end);
+        }
+        if (summaryMessage != null) {
+            messages.add(0, summaryMessage);
+        }
+        return messages;
+    }
+
+    /**
+     * 当前上下文的 token 总数，包含摘要
+     */
+    public int getTotalTokens() {
+        return window.getTotalTokens() + (summaryEnd >= 0 ? getSummaryMessage().getTokenCount() : 0);
+    }
+
+    /**
+     * 是否正在生成摘要，超过 SUMMARY_TIMEOUT_MS 未回调的请求不再等待
+     */
+    public boolean isSummarizing() {
+        return pendingRequest != null && clock.getAsLong() - pendingSince < SUMMARY_TIMEOUT_MS;
+    }
+
+    /**
+     * 清空状态，消息历史被清空或切换会话后调用；进行中的摘要请求完成后仍会保存，但不再用于当前会话
+     */
+    public void reset() {
+        window.reset();
+        loaded = false;
+        sessionId = null;
+        setSummary(null);
+        pendingRequest = null;
+    }
+
+    private void load(String sessionId) {
+        window.reset();
+        this.loaded = true;
+        this.sessionId = sessionId;
+        setSummary(sessionId != null ? store.getLatestSummary(sessionId) : null);
+    }
+
+    private void setSummary(ChatSummary summary) {
+        this.summary = summary;
+        this.summaryMessage = null;
+        this.summarySource = null;
+        this.summaryEnd = -1;
+    }
+
+    private ChatMessage getSummaryMessage() {
+        if (summaryMessage == null) {
+            summaryMessage = new ChatMessage(ChatMessage.ROLE_SYSTEM, SUMMARY_PREFIX + summary.getContent());
+            summaryMessage.setSessionId(summary.getSessionId());
+        }
+        return summaryMessage;
+    }
+
+    /**
+     * 找到摘要覆盖的最后一条消息，结果按消息历史缓存，只在首次或历史变化后从后向前查找一次
+     *
+     * @return 在 history 中的位置，没有摘要或找不到时返回 -1
+     */
+    private int locateSummaryEnd(List<ChatMessage> history, int end) {
+        if (summary == null) {
+            return -1;
+        }
+        if (history == summarySource && summaryEnd < end
+                && (summaryEnd < 0 || Objects.equals(history.get(summaryEnd).getId(), summary.getEndMessageId()))) {
+            return summaryEnd;
+        }
+
+        summarySource = history;
+        summaryEnd = -1;
+        for (int i = end - 1; i >= 0; i--) {
+            if (Objects.equals(history.get(i).getId(), summary.getEndMessageId())) {
+                summaryEnd = i;
+                break;
+            }
+        }
+        return summaryEnd;
+    }
+
+    /**
+     * 从 start 开始选出要合并的完整轮次，在后台请求新的摘要
+     * 合并到剩余原文不超过 KEEP_RECENT_TOKENS 为止，单次不超过 MAX_BATCH_TOKENS，当前提问始终保留原文
+     */
+    private void compact(List<ChatMessage> history, int start, int end) {
+        if (isSummarizing() || sessionId == null || summarizer == null) {
+            return;
+        }
+
+        int remaining = 0;
+        for (int i = start; i < end; i++) {
+            if (inSession(history.get(i))) {
+                remaining += history.get(i).getTokenCount();
+            }
+        }
+
+        int batch = 0;
+        int cut = -1;
+        for (int i = start; i < end - 1; i++) {
+            ChatMessage message = history.get(i);
+            if (!inSession(message)) {
+                continue;
+            }
+            int tokens = Math.min(message.getTokenCount(), MAX_MESSAGE_TOKENS);
+            if (cut >= 0 && batch + tokens > MAX_BATCH_TOKENS) {
+                break;
+            }
+            batch += tokens;
+            remaining -= message.getTokenCount();
+            // 只在一问一答之后切分，保留原文的部分从提问开始；已保存的消息才有ID，可以作为区间端点
+            if (ChatMessage.ROLE_ASSISTANT.equals(message.getRole()) && message.getId() != null
+                    && ChatMessage.ROLE_USER.equals(history.get(i + 1).getRole())) {
+                cut = i;
+                if (remaining <= KEEP_RECENT_TOKENS) {
+                    break;
+                }
+            }
+        }
+        if (cut < 0) {
+            return;
+        }
+
+        // 摘要末尾的消息不在历史中时，不合并这份摘要，从头重新摘要
+        ChatSummary base = start > 0 ? summary : null;
+        String startMessageId = base != null ? base.getStartMessageId() : null;
+        StringBuilder dialog = new StringBuilder();
+        for (int i = start; i <= cut; i++) {
+            ChatMessage message = history.get(i);
+            if (!inSession(message)) {
+                continue;
+            }
+            if (startMessageId == null) {
+                startMessageId = message.getId();
+            }
+            dialog.append(ChatMessage.ROLE_USER.equals(message.getRole()) ? "用户：" : "助手：")
+                    .append(truncate(message.getContent(), MAX_MESSAGE_TOKENS))
+                    .append("\n\n");
+        }
+
+        List<ChatMessage> prompt = new ArrayList<>(2);
+        prompt.add(new ChatMessage(ChatMessage.ROLE_SYSTEM, SUMMARIZE_INSTRUCTION));
+        prompt.add(new ChatMessage(ChatMessage.ROLE_USER, "已有摘要：\n"
+                + (base != null ? base.getContent() : "无")
+                + "\n\n新的对话：\n" + dialog));
+
+        ChatSummary result = new ChatSummary();
+        result.setSessionId(sessionId);
+        result.setStartMessageId(startMessageId);
+        result.setEndMessageId(history.get(cut).getId());
+
+        Object request = new Object();
+        pendingRequest = request;
+        pendingSince = clock.getAsLong();
+        summarizer.summarize(prompt, new DeepSeekStreamCallback() {
+            @Override
+            public void onMessage(String content, String reasoningContent) {
+                // 摘要请求不使用流式输出
+            }
+
+            @Override
+            public void onComplete(String fullContent, String fullReasoningContent) {
+                if (pendingRequest == request) {
+                    pendingRequest = null;
+                }
+                if (fullContent == null || fullContent.trim().isEmpty()) {
+                    return;
+                }
+                result.setContent(truncate(fullContent.trim(), MAX_SUMMARY_TOKENS));
+                store.saveSummary(result);
+                // 请求期间切换了会话或摘要已变化时只保存，不替换当前摘要
+                if (loaded && Objects.equals(sessionId, result.getSessionId())
+                        && (base != null ? sameRange(summary, base) : summaryEnd < 0)) {
+                    setSummary(result);
+                }
+            }
+
+            @Override
+            public void onError(String errorMsg) {
+                // 失败时继续发送原文，下次发送时重试
+                if (pendingRequest == request) {
+                    pendingRequest = null;
+                }
+            }
+        });
+    }
+
+    private static boolean sameRange(ChatSummary a, ChatSummary b) {
+        return a == null ? b == null : b != null && Objects.equals(a.getEndMessageId(), b.getEndMessageId());
+    }
+
+    private boolean inSession(ChatMessage message) {
+        return message.getSessionId() == null || message.getSessionId().equals(sessionId);
+    }
+
+    /**
+     * 按 token 数截断文本，估算值超出时按比例缩短，为省略号留出一个 token，每轮至少缩短一个字符
+     */
+    static String truncate(String text, int maxTokens) {
+        int tokens = TokenCountUtils.count(text);
+        while (tokens > maxTokens) {
+            text = text.substring(0, (int) ((long) text.length() * (maxTokens - 1) / tokens)) + "…";
+            tokens = TokenCountUtils.count(text);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,147 @@
+package com.yz.bdown.utils;
+
+import com.yz.bdown.contents.DeepSeekModelEnum;
+import com.yz.bdown.model.chat.ChatMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 对话上下文窗口
+ * 按 token 预算从最新的消息向前保留历史：每次发送只累加新增消息的 token 数，再从最早的一端移出超出预算的消息，
+ * 每条消息最多进出窗口各一次，计数与裁剪的开销只与新增消息数有关
+ * 起始位置后移（更早的消息已被摘要覆盖）时直接从开头移出；消息历史被替换、清空或切换会话，
+ * 起始位置前移，以及预算变大且之前裁剪过时，从头重建窗口
+ * 只在主线程使用
+ */
+public class ChatContextWindow {
+
+    private static class Entry {
+        final ChatMessage message;
+        final int index;    // 在消息历史中的位置
+        final int tokens;   // 加入窗口时的 token 数，移出时按同一数值扣除
+
+        Entry(ChatMessage message, int index, int tokens) {
+            this.message = message;
+            this.index = index;
+            this.tokens = tokens;
+        }
+    }
+
+    private final ArrayDeque<Entry> window = new ArrayDeque<>();
+    private List<ChatMessage> source;   // 上次构建使用的消息历史
+    private int start;                  // source 中可以使用的第一条消息
+    private int consumed;               // source 中已处理的消息数
+    private ChatMessage lastConsumed;   // source 中最后一条已处理的消息，用于发现历史被修改
+    private String sessionId;
+    private int budget;
+    private boolean trimmed;            // 是否因预算移出过消息
+    private int totalTokens;
+
+    /**
+     * 模型可用于输入的 token 预算：上下文长度减去为思维链与回答预留的长度
+     */
+    public static int inputBudget(DeepSeekModelEnum model) {
+        return model.getMaxContextLength() - model.getMaxReasoningLength() - model.getMaxOutputLength();
+    }
+
+    /**
+     * 构建要发送的消息列表
+     *
+     * @param history   消息历史，只在末尾追加
+     * @param end       只使用 history 中 [0, end) 的消息，用于排除正在生成的回答
+     * @param sessionId 当前会话ID，属于其他会话的消息跳过，为 null 时不过滤
+     * @param budget    token 预算，最新一条消息即使超出预算也会保留
+     * @return 按时间顺序排列的消息
+     */
+    public List<ChatMessage> build(List<ChatMessage> history, int end, String sessionId, int budget) {
+        return build(history, 0, end, sessionId, budget);
+    }
+
+    /**
+     * 构建要发送的消息列表，只使用 history 中 [start, end) 的消息
+     *
+     * @param start 第一条可以使用的消息，之前的消息已由摘要代替
+     */
+    public List<ChatMessage> build(List<ChatMessage> history, int start, int end, String sessionId, int budget) {
+        if (!canExtend(history, start, end, sessionId, budget)) {
+            reset();
+            this.source = history;
+            this.sessionId = sessionId;
+        }
+        this.budget = budget;
+        this.start = start;
+
+        // 起始位置后移时移出已被覆盖的消息，不计入裁剪
+        while (!window.isEmpty() && window.peekFirst().index < start) {
+            totalTokens -= window.removeFirst().tokens;
+        }
+
+        for (int i = Math.max(consumed, start); i < end; i++) {
+            ChatMessage message = history.get(i);
+            if (message.getSessionId() == null || sessionId == null || message.getSessionId().equals(sessionId)) {
+                int tokens = message.getTokenCount();
+                window.addLast(new Entry(message, i, tokens));
+                totalTokens += tokens;
+            }
+        }
+        if (end > consumed) {
+            consumed = end;
+            lastConsumed = history.get(end - 1);
+        }
+
+        while (window.size() > 1 && totalTokens > budget) {
+            removeFirst();
+        }
+        // 提问被移出后，对应的回答单独留在开头没有意义
+        while (window.size() > 1 && !ChatMessage.ROLE_USER.equals(window.peekFirst().message.getRole())) {
+            removeFirst();
+        }
+
+        List<ChatMessage> messages = new ArrayList<>(window.size());
+        for (Entry entry : window) {
+            messages.add(entry.message);
+        }
+        return messages;
+    }
+
+    /**
+     * 当前窗口内消息的 token 总数
+     */
+    public int getTotalTokens() {
+        return totalTokens;
+    }
+
+    /**
+     * 清空窗口，下次构建时从头计算
+     */
+    public void reset() {
+        window.clear();
+        source = null;
+        start = 0;
+        consumed = 0;
+        lastConsumed = null;
+        sessionId = null;
+        trimmed = false;
+        totalTokens = 0;
+    }
+
+    private boolean canExtend(List<ChatMessage> history, int start, int end, String sessionId, int budget) {
+        if (history != source || !Objects.equals(sessionId, this.sessionId) || start < this.start || end < consumed) {
+            return false;
+        }
+        if (consumed > 0 && history.get(consumed - 1) != lastConsumed) {
+            return false;
+        }
+        // 预算变大时，之前移出的消息可能重新放得下
+        return !(trimmed && budget > this.budget);
+    }
+
+    private void removeFirst() {
+        Entry entry = window.removeFirst();
+        totalTokens -= entry.tokens;
+        trimmed = true;
+    }
+}
@@ -0,0 +1,223 @@
+package com.yz.bdown.utils;
+
+import com.yz.bdown.model.chat.ChatMessage;
+
+import java.io.IOException;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * DeepSeek 对话请求体
+ * 发送时把 JSON 直接写入连接的 BufferedSink，不构建 JSONObject 树，也不生成整段 JSON 字符串；
+ * 消息内容逐字符转义并编码到 8KB 的缓冲区，写满后整块写入，内存占用与历史长度无关
+ * 请求体长度在首次需要时计算并缓存，可重复写入，支持 OkHttp 重试
+ */
+class ChatRequestBody extends RequestBody {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String model;
+    private final boolean stream;
+    private final double temperature;
+    // 创建时取出角色与内容的引用，发送在网络线程进行，不受界面修改消息的影响
+    private final String[] roles;
+    private final String[] contents;
+    private long contentLength = -1;
+
+    ChatRequestBody(String model, boolean stream, double temperature, List<ChatMessage> messages) {
+        this.model = model;
+        this.stream = stream;
+        this.temperature = temperature;
+        this.roles = new String[messages.size()];
+        this.contents = new String[messages.size()];
+        for (int i = 0; i < roles.length; i++) {
+            ChatMessage message = messages.get(i);
+            roles[i] = message.getRole();
+            contents[i] = message.getContent();
+        }
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        if (contentLength < 0) {
+            Encoder counter = new Encoder(null);
+            write(counter);
+            contentLength = counter.finish();
+        }
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        Encoder encoder = new Encoder(sink);
+        write(encoder);
+        encoder.finish();
+    }
+
+    /**
+     * 按字段顺序输出 JSON：{"model":..,"stream":..,"temperature":..,"messages":[{"role":..,"content":..},..]}
+     */
+    private void write(Encoder out) throws IOException {
+        out.ascii("{\"model\":");
+        out.string(model);
+        out.ascii(",\"stream\":");
+        out.ascii(stream ? "true" : "false");
+        out.ascii(",\"temperature\":");
+        out.ascii(Double.toString(temperature));
+        out.ascii(",\"messages\":[");
+        for (int i = 0; i < roles.length; i++) {
+            out.ascii(i > 0 ? ",{\"role\":" : "{\"role\":");
+            out.string(roles[i]);
+            out.ascii(",\"content\":");
+            out.string(contents[i]);
+            out.ascii("}");
+        }
+        out.ascii("]}");
+    }
+
+    /**
+     * 转义并以 UTF-8 编码到固定大小的缓冲区，写满后整块写入连接
+     * 计算长度时不传 sink，缓冲区写满只累加字节数，两种用途共用同一套编码逻辑，保证长度与实际写入一致
+     */
+    private static class Encoder {
+        private static final int BUFFER_SIZE = 8 * 1024;
+        // 单个字符编码后最多 6 字节（控制字符的 Unicode 转义），每次写入前留出余量
+        private static final int MAX_CHAR_BYTES = 6;
+
+        private final BufferedSink sink;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private long written;
+
+        Encoder(BufferedSink sink) {
+            this.sink = sink;
+        }
+
+        void ascii(String text) throws IOException {
+            for (int i = 0, length = text.length(); i < length; i++) {
+                ensureCapacity();
+                buffer[position++] = (byte) text.charAt(i);
+            }
+        }
+
+        /**
+         * 输出 JSON 字符串，只有引号、反斜杠与控制字符需要转义
+         * 每轮按缓冲区剩余空间计算可以处理的字符数，循环内不再逐字符检查容量
+         */
+        void string(String value) throws IOException {
+            if (value == null) {
+                ascii("null");
+                return;
+            }
+
+            ensureCapacity();
+            buffer[position++] = '"';
+            int length = value.length();
+            int i = 0;
+            while (i < length) {
+                ensureCapacity();
+                byte[] out = buffer;
+                int pos = position;
+                int end = Math.min(length, i + (BUFFER_SIZE - pos) / MAX_CHAR_BYTES);
+                for (; i < end; i++) {
+                    char c = value.charAt(i);
+                    if (c < 0x80) {
+                        if (c >= 0x20 && c != '"' && c != '\\') {
+                            out[pos++] = (byte) c;
+                        } else {
+                            pos = escape(out, pos, c);
+                        }
+                    } else if (c < 0x800) {
+                        out[pos++] = (byte) (0xc0 | c >> 6);
+                        out[pos++] = (byte) (0x80 | c & 0x3f);
+                    } else if (!Character.isSurrogate(c)) {
+                        out[pos++] = (byte) (0xe0 | c >> 12);
+                        out[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+                        out[pos++] = (byte) (0x80 | c & 0x3f);
+                    } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        // 代理对占两个字符、编码为 4 字节，不会超出为这两个字符预留的空间
+                        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                        out[pos++] = (byte) (0xf0 | codePoint >> 18);
+                        out[pos++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                        out[pos++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                        out[pos++] = (byte) (0x80 | codePoint & 0x3f);
+                    } else {
+                        // 不成对的代理字符与 String.getBytes 一致替换为 ?
+                        out[pos++] = '?';
+                    }
+                }
+                position = pos;
+            }
+            ensureCapacity();
+            buffer[position++] = '"';
+        }
+
+        private static int escape(byte[] out, int pos, char c) {
+            out[pos++] = '\\';
+            switch (c) {
+                case '"':
+                    out[pos++] = '"';
+                    break;
+                case '\\':
+                    out[pos++] = '\\';
+                    break;
+                case '\n':
+                    out[pos++] = 'n';
+                    break;
+                case '\r':
+                    out[pos++] = 'r';
+                    break;
+                case '\t':
+                    out[pos++] = 't';
+                    break;
+                case '\b':
+                    out[pos++] = 'b';
+                    break;
+                case '\f':
+                    out[pos++] = 'f';
+                    break;
+                default:
+                    out[pos++] = 'u';
+                    out[pos++] = '0';
+                    out[pos++] = '0';
+                    out[pos++] = (byte) HEX[c >> 4];
+                    out[pos++] = (byte) HEX[c & 0xf];
+                    break;
+            }
+            return pos;
+        }
+
+        private void ensureCapacity() throws IOException {
+            if (position > BUFFER_SIZE - MAX_CHAR_BYTES) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            if (sink != null) {
+                sink.write(buffer, 0, position);
+            }
+            written += position;
+            position = 0;
+        }
+
+        /**
+         * 写出剩余内容
+         *
+         * @return 总字节数
+         */
+        long finish() throws IOException {
+            drain();
+            return written;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.yz.bdown.utils;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+
+/**
+ * DeepSeek 流式请求句柄，由 {@link DeepSeekUtils#sendChatRequestStream} 返回
+ * 取消时中断 HTTP 调用、停止解析并释放连接，之后不再回调任何结果
+ */
+public class DeepSeekStreamHandle {
+
+    private final FrameCoalescingCallback callback;
+    // 请求已结束（完成、失败、超时或取消），解析器据此立即停止
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+    private volatile Call call;
+    private volatile ScheduledFuture<?> watchdog;
+    private volatile long lastActivityNanos = System.nanoTime();
+
+    DeepSeekStreamHandle(FrameCoalescingCallback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * 取消请求，需在主线程调用
+     * 尚未刷新到界面的增量直接丢弃，onComplete、onError 均不再回调
+     */
+    public void cancel() {
+        stop(true);
+        // 结果可能已投递到主线程队列，始终断开回调
+        callback.cancel();
+    }
+
+    FrameCoalescingCallback getCallback() {
+        return callback;
+    }
+
+    AtomicBoolean getStopped() {
+        return stopped;
+    }
+
+    void attach(Call call) {
+        this.call = call;
+        // 发起调用前已取消
+        if (stopped.get()) {
+            call.cancel();
+        }
+    }
+
+    void setWatchdog(ScheduledFuture<?> watchdog) {
+        this.watchdog = watchdog;
+        if (stopped.get()) {
+            watchdog.cancel(false);
+        }
+    }
+
+    /**
+     * 收到新的内容，重置空闲计时
+     */
+    void onActivity() {
+        lastActivityNanos = System.nanoTime();
+    }
+
+    long getIdleNanos() {
+        return System.nanoTime() - lastActivityNanos;
+    }
+
+    /**
+     * 标记请求结束，只有第一次调用返回 true，用于保证结果只回调一次，同时停止空闲检测
+     *
+     * @param abort 是否中断 HTTP 调用，中断后正在读取响应的线程会因连接关闭而退出；正常完成时不中断，连接可以复用
+     */
+    boolean stop(boolean abort) {
+        if (!stopped.compareAndSet(false, true)) {
+            return false;
+        }
+        Call current = call;
+        if (abort && current != null) {
+            current.cancel();
+        }
+        ScheduledFuture<?> future = watchdog;
+        if (future != null) {
+            future.cancel(false);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,281 @@
+package com.yz.bdown.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.alibaba.fastjson2.JSONException;
+import com.alibaba.fastjson2.JSONReader;
+import com.alibaba.fastjson2.util.Fnv;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okio.BufferedSource;
+
+/**
+ * DeepSeek 流式响应解析器
+ * 按 SSE 规范逐行读取：支持 event: 字段、多行 data: 拼接与注释行，遇到空行分发事件
+ * 行内容直接读入复用的字节缓冲，JSON 由 JSONReader 按字段名哈希只读取 choices[0].delta 中的文本，
+ * 不生成行字符串，也不构建 JSONObject
+ * 非线程安全，一个响应流对应一个实例
+ */
+public class DeepSeekStreamParser {
+
+    /**
+     * 解析结果回调，在调用 {@link #parse(Listener)} 的线程上执行
+     */
+    public interface Listener {
+
+        /**
+         * 收到增量内容
+         *
+         * @param reasoningContent 推理内容（可能为null）
+         * @param content          回答内容（可能为null）
+         */
+        void onDelta(String reasoningContent, String content);
+
+        /**
+         * 收到 event: error 事件
+         *
+         * @param data 事件数据
+         */
+        void onError(String data);
+
+        /**
+         * 事件数据不是合法的 JSON，跳过该事件
+         *
+         * @param data 事件数据
+         */
+        void onMalformed(String data);
+    }
+
+    private static final long HASH_CHOICES = Fnv.hashCode64("choices");
+    private static final long HASH_DELTA = Fnv.hashCode64("delta");
+    private static final long HASH_CONTENT = Fnv.hashCode64("content");
+    private static final long HASH_REASONING_CONTENT = Fnv.hashCode64("reasoning_content");
+
+    private static final byte[] FIELD_DATA = "data".getBytes(UTF_8);
+    private static final byte[] FIELD_EVENT = "event".getBytes(UTF_8);
+    private static final byte[] EVENT_MESSAGE = "message".getBytes(UTF_8);
+    private static final byte[] EVENT_ERROR = "error".getBytes(UTF_8);
+    private static final byte[] DONE = "[DONE]".getBytes(UTF_8);
+
+    // 事件类型
+    private static final int EVENT_TYPE_MESSAGE = 0;
+    private static final int EVENT_TYPE_ERROR = 1;
+    private static final int EVENT_TYPE_OTHER = 2;
+
+    private final BufferedSource source;
+
+    private byte[] line = new byte[1024];   // 当前行，复用
+    private byte[] data = new byte[1024];   // 当前事件的 data，多行以 \n 拼接
+    private int dataLength;
+    private boolean hasData;
+    private int eventType = EVENT_TYPE_MESSAGE;
+
+    public DeepSeekStreamParser(BufferedSource source) {
+        this.source = source;
+    }
+
+    /**
+     * 读取并分发事件，直到收到 [DONE] 或流结束
+     * 流结束时最后一个没有以空行结尾的事件按 SSE 规范丢弃
+     *
+     * @param listener 解析结果回调
+     * @return 是否收到 [DONE]
+     */
+    public boolean parse(Listener listener) throws IOException {
+        return parse(listener, new AtomicBoolean(false));
+    }
+
+    /**
+     * 同 {@link #parse(Listener)}，每读取一行前检查停止标记，已读入缓冲但尚未分发的事件直接丢弃
+     *
+     * @param stopped 停止标记，置为 true 后立即返回 false
+     */
+    public boolean parse(Listener listener, AtomicBoolean stopped) throws IOException {
+        while (!stopped.get()) {
+            int length = readLine();
+            if (length < 0) {
+                return false;
+            }
+
+            if (length == 0) {
+                if (dispatch(listener)) {
+                    return true;
+                }
+            } else if (line[0] != ':') {
+                // 以冒号开头的是注释（如 keep-alive），其余按 字段: 值 处理
+                processField(length);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取一行到 line，去掉行尾的 \r
+     *
+     * @return 行长度，流已结束返回 -1
+     */
+    private int readLine() throws IOException {
+        long newline = source.indexOf((byte) '\n');
+        if (newline == -1) {
+            return -1;
+        }
+
+        int length = (int) newline;
+        if (line.length < length) {
+            line = new byte[Math.max(length, line.length * 2)];
+        }
+        int read = 0;
+        while (read < length) {
+            int count = source.read(line, read, length - read);
+            if (count == -1) {
+                throw new EOFException();
+            }
+            read += count;
+        }
+        source.skip(1);
+        return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+    }
+
+    private void processField(int length) {
+        int colon = indexOf(line, length, (byte) ':');
+        int nameLength = colon < 0 ? length : colon;
+        int valueStart = colon < 0 ? length : colon + 1;
+        if (valueStart < length && line[valueStart] == ' ') {
+            valueStart++;
+        }
+        int valueLength = length - valueStart;
+
+        if (matches(line, 0, nameLength, FIELD_DATA)) {
+            int required = dataLength + valueLength + 1;
+            if (data.length < required) {
+                data = Arrays.copyOf(data, Math.max(required, data.length * 2));
+            }
+            if (hasData) {
+                data[dataLength++] = '\n';
+            }
+            System.arraycopy(line, valueStart, data, dataLength, valueLength);
+            dataLength += valueLength;
+            hasData = true;
+        } else if (matches(line, 0, nameLength, FIELD_EVENT)) {
+            if (valueLength == 0 || matches(line, valueStart, valueLength, EVENT_MESSAGE)) {
+                eventType = EVENT_TYPE_MESSAGE;
+            } else if (matches(line, valueStart, valueLength, EVENT_ERROR)) {
+                eventType = EVENT_TYPE_ERROR;
+            } else {
+                eventType = EVENT_TYPE_OTHER;
+            }
+        }
+        // id:、retry: 等字段不需要处理
+    }
+
+    /**
+     * 分发当前事件并重置状态
+     *
+     * @return 是否为 [DONE]
+     */
+    private boolean dispatch(Listener listener) {
+        try {
+            if (!hasData) {
+                return false;
+            }
+            if (matches(data, 0, dataLength, DONE)) {
+                return true;
+            }
+
+            if (eventType == EVENT_TYPE_ERROR) {
+                listener.onError(new String(data, 0, dataLength, UTF_8));
+            } else if (eventType == EVENT_TYPE_MESSAGE) {
+                parseDelta(listener);
+            }
+            return false;
+        } finally {
+            dataLength = 0;
+            hasData = false;
+            eventType = EVENT_TYPE_MESSAGE;
+        }
+    }
+
+    /**
+     * 只读取 choices[0].delta 的 reasoning_content 与 content，其余字段直接跳过
+     */
+    private void parseDelta(Listener listener) {
+        String reasoningContent = null, content = null;
+        try (JSONReader reader = JSONReader.of(data, 0, dataLength)) {
+            if (!reader.nextIfObjectStart()) {
+                listener.onMalformed(new String(data, 0, dataLength, UTF_8));
+                return;
+            }
+            while (!reader.nextIfObjectEnd()) {
+                if (reader.readFieldNameHashCode() != HASH_CHOICES || reader.nextIfNull()) {
+                    reader.skipValue();
+                    continue;
+                }
+                if (!reader.nextIfArrayStart()) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                boolean first = true;
+                while (!reader.nextIfArrayEnd()) {
+                    if (!first || !reader.nextIfObjectStart()) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    first = false;
+                    while (!reader.nextIfObjectEnd()) {
+                        if (reader.readFieldNameHashCode() != HASH_DELTA || reader.nextIfNull()) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        if (!reader.nextIfObjectStart()) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        while (!reader.nextIfObjectEnd()) {
+                            long name = reader.readFieldNameHashCode();
+                            if (name == HASH_CONTENT) {
+                                content = reader.readString();
+                            } else if (name == HASH_REASONING_CONTENT) {
+                                reasoningContent = reader.readString();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (JSONException e) {
+            listener.onMalformed(new String(data, 0, dataLength, UTF_8));
+            return;
+        }
+
+        if (reasoningContent != null || content != null) {
+            listener.onDelta(reasoningContent, content);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte b) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] bytes, int offset, int length, byte[] expected) {
+        if (length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
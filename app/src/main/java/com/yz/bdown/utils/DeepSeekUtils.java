@@ -2,13 +2,11 @@ package com.yz.bdown.utils;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static java.util.concurrent.TimeUnit.SECONDS;
-import static okhttp3.RequestBody.create;
 
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
-import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import com.yz.bdown.callback.DeepSeekStreamCallback;
 import com.yz.bdown.contents.DeepSeekModelEnum;
@@ -18,15 +16,15 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import okhttp3.Call;
 import okhttp3.Callback;
-import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
-import okio.BufferedSource;
 
 /**
  * DeepSeek API 工具类
@@ -36,7 +34,6 @@ public class DeepSeekUtils {
 
     private static final String TAG = "DeepSeekUtils";
     private static final String API_URL = "https://api.deepseek.com/chat/completions";
-    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
 
     // 增加超时时间以支持流式输出
     private static final OkHttpClient CLIENT = new OkHttpClient.Builder()
@@ -45,102 +42,149 @@ public class DeepSeekUtils {
             .writeTimeout(120, SECONDS)
             .build();
 
+    // 流式增量默认每帧最多刷新一次界面
+    private static final long DEFAULT_UPDATE_INTERVAL_MS = 0;
+
+    // 超过该时间未收到新内容时中断流式请求，keep-alive 注释不计入
+    private static final long STREAM_IDLE_TIMEOUT_SECONDS = 60;
+
     private static final Handler mainHandler = new Handler(Looper.getMainLooper());
 
-    public static void sendChatRequestStream(String apiKey,
-                                             DeepSeekModelEnum model,
-                                             List<ChatMessage> messageHistory,
-                                             DeepSeekStreamCallback streamCallback) {
-        sendChatRequestStream(apiKey, model, messageHistory, 1.0, streamCallback);
+    // 检测流式请求是否空闲超时，所有请求共用一个守护线程
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "DeepSeekWatchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static DeepSeekStreamHandle sendChatRequestStream(String apiKey,
+                                                             DeepSeekModelEnum model,
+                                                             List<ChatMessage> messageHistory,
+                                                             DeepSeekStreamCallback streamCallback) {
+        return sendChatRequestStream(apiKey, model, messageHistory, 1.0, streamCallback);
+    }
+
+    public static DeepSeekStreamHandle sendChatRequestStream(String apiKey,
+                                                             DeepSeekModelEnum model,
+                                                             List<ChatMessage> messageHistory,
+                                                             double temperature,
+                                                             DeepSeekStreamCallback streamCallback) {
+        return sendChatRequestStream(apiKey, model, messageHistory, temperature, DEFAULT_UPDATE_INTERVAL_MS, streamCallback);
     }
 
-    public static void sendChatRequestStream(String apiKey,
-                                             DeepSeekModelEnum model,
-                                             List<ChatMessage> messageHistory,
-                                             double temperature,
-                                             DeepSeekStreamCallback streamCallback) {
+    /**
+     * 发送流式请求，需在主线程调用
+     * 增量内容按显示帧合并后回调，每帧最多一次，且两次回调之间不少于 minUpdateIntervalMs
+     *
+     * @param minUpdateIntervalMs 两次 onMessage 之间的最小间隔，0 表示只受帧率限制
+     * @return 请求句柄，可用于取消请求
+     */
+    public static DeepSeekStreamHandle sendChatRequestStream(String apiKey,
+                                                             DeepSeekModelEnum model,
+                                                             List<ChatMessage> messageHistory,
+                                                             double temperature,
+                                                             long minUpdateIntervalMs,
+                                                             DeepSeekStreamCallback callback) {
+        DeepSeekStreamHandle handle = new DeepSeekStreamHandle(new FrameCoalescingCallback(callback, minUpdateIntervalMs));
         try {
             Request request = new Request.Builder()
                     .url(API_URL)
                     .addHeader("Content-Type", "application/json")
                     .addHeader("Authorization", "Bearer " + apiKey)
-                    .post(create(buildReqBody(model, messageHistory, temperature), JSON))
+                    .post(new ChatRequestBody(model.getModel(), model.isStream(), temperature, messageHistory))
                     .build();
-            CLIENT.newCall(request).enqueue(new Callback() {
+            Call call = CLIENT.newCall(request);
+            handle.attach(call);
+            if (model.isStream()) {
+                handle.setWatchdog(WATCHDOG.scheduleWithFixedDelay(() -> checkIdle(handle), 1, 1, SECONDS));
+            }
+            call.enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
+                    if (handle.getStopped().get()) {
+                        // 已取消或超时，连接中断导致的失败不再回调
+                        return;
+                    }
                     Log.e(TAG, "发送请求错误", e);
-                    mainHandler.post(() -> streamCallback.onError("请求失败: " + e.getMessage()));
+                    postError(handle, "请求失败: " + e.getMessage());
                 }
 
                 @Override
                 public void onResponse(Call call, Response response) {
                     try {
-                        onSuccess(model.isStream(), streamCallback, response);
+                        onSuccess(model.isStream(), handle, response);
                     } catch (Throwable t) {
+                        if (handle.getStopped().get()) {
+                            return;
+                        }
                         Log.e(TAG, "发送请求错误", t);
-                        mainHandler.post(() -> streamCallback.onError("处理响应错误: " + t.getMessage()));
+                        postError(handle, "处理响应错误: " + t.getMessage());
                     }
                 }
             });
         } catch (Throwable t) {
             Log.e(TAG, "发送请求错误", t);
-            mainHandler.post(() -> streamCallback.onError("创建请求错误: " + t.getMessage()));
+            postError(handle, "创建请求错误: " + t.getMessage());
         }
+        return handle;
     }
 
-    private static String buildReqBody(DeepSeekModelEnum model, List<ChatMessage> messageHistory) {
-        return buildReqBody(model, messageHistory, 1.0);
+    /**
+     * 空闲超时检测，在 WATCHDOG 线程执行
+     */
+    private static void checkIdle(DeepSeekStreamHandle handle) {
+        if (handle.getIdleNanos() >= SECONDS.toNanos(STREAM_IDLE_TIMEOUT_SECONDS)) {
+            Log.w(TAG, "流式响应超过 " + STREAM_IDLE_TIMEOUT_SECONDS + " 秒未收到新内容，中断请求");
+            postError(handle, "响应超时: " + STREAM_IDLE_TIMEOUT_SECONDS + " 秒内未收到新内容");
+        }
     }
 
-    private static String buildReqBody(DeepSeekModelEnum model, List<ChatMessage> messageHistory, double temperature) {
-        JSONObject jsonBody = new JSONObject();
-        jsonBody.put("model", model.getModel());
-        jsonBody.put("stream", model.isStream());
-        jsonBody.put("temperature", temperature);
-
-        JSONArray messagesArray = new JSONArray();
-        messageHistory.forEach(m -> messagesArray.add(toMessage(m.getRole(), m.getContent())));
-        jsonBody.put("messages", messagesArray);
-        return jsonBody.toString();
+    /**
+     * 回调错误并结束请求，请求已结束时忽略
+     */
+    private static void postError(DeepSeekStreamHandle handle, String errMsg) {
+        if (handle.stop(true)) {
+            DeepSeekStreamCallback callback = handle.getCallback();
+            mainHandler.post(() -> callback.onError(errMsg));
+        }
     }
 
-    private static JSONObject toMessage(String role, String content) {
-        JSONObject msgObj = new JSONObject();
-        msgObj.put("role", role);
-        msgObj.put("content", content);
-        return msgObj;
+    /**
+     * 回调完成并结束请求，请求已结束时忽略
+     */
+    private static void postComplete(DeepSeekStreamHandle handle, String content, String reasoning) {
+        if (handle.stop(false)) {
+            DeepSeekStreamCallback callback = handle.getCallback();
+            mainHandler.post(() -> callback.onComplete(content, reasoning));
+        }
     }
 
-    private static void onSuccess(boolean stream, DeepSeekStreamCallback streamCallback, Response response) throws Throwable {
+    private static void onSuccess(boolean stream, DeepSeekStreamHandle handle, Response response) throws Throwable {
         if (!response.isSuccessful()) {
+            // 非流式请求（如摘要）同样需要回调，否则调用方会一直等待
             String errorBody = response.body() != null ? response.body().string() : "无响应内容";
-            if (stream) {
-                mainHandler.post(() -> streamCallback.onError("请求失败 (" + response.code() + "): " + errorBody));
-            }
+            postError(handle, "请求失败 (" + response.code() + "): " + errorBody);
             return;
         }
 
         ResponseBody responseBody = response.body();
         if (responseBody == null) {
-            if (stream) {
-                mainHandler.post(() -> streamCallback.onError("响应体为空"));
-            }
+            postError(handle, "响应体为空");
             return;
         }
 
         if (stream) {
-            processStreamResponse(responseBody, streamCallback);
+            processStreamResponse(responseBody, handle);
         } else {
-            processNormalResponse(responseBody, streamCallback);
+            processNormalResponse(responseBody, handle);
         }
     }
 
-    private static void processNormalResponse(ResponseBody responseBody, DeepSeekStreamCallback callback) {
+    private static void processNormalResponse(ResponseBody responseBody, DeepSeekStreamHandle handle) {
         try (responseBody) {
             String responseStr = responseBody.string();
             if (StringUtils.isBlank(responseStr)) {
-                mainHandler.post(() -> callback.onError("响应内容为空"));
+                postError(handle, "响应内容为空");
                 return;
             }
 
@@ -150,72 +194,74 @@ public class DeepSeekUtils {
                     .getJSONObject("message")
                     .getString("content");
             if (isNotBlank(content)) {
-                mainHandler.post(() -> callback.onComplete(content, null));
+                postComplete(handle, content, null);
             } else {
-                mainHandler.post(() -> callback.onError("解析响应内容失败，内容为空"));
+                postError(handle, "解析响应内容失败，内容为空");
             }
         } catch (Exception e) {
             Log.e(TAG, "处理普通响应错误", e);
-            mainHandler.post(() -> callback.onError("处理响应错误: " + e.getMessage()));
+            postError(handle, "处理响应错误: " + e.getMessage());
         }
     }
 
     /**
-     * 处理流式响应
+     * 处理流式响应，由 DeepSeekStreamParser 直接从响应流中读取增量内容
+     * 请求取消或超时后解析器立即停止，连接已被中断，读取线程随之退出
      */
-    private static void processStreamResponse(ResponseBody responseBody, DeepSeekStreamCallback callback) {
+    private static void processStreamResponse(ResponseBody responseBody, DeepSeekStreamHandle handle) {
         final StringBuilder think = new StringBuilder(), result = new StringBuilder();
+        DeepSeekStreamCallback callback = handle.getCallback();
         try (responseBody) {
-            String line;
-            BufferedSource source = responseBody.source();
-            while ((line = source.readUtf8Line()) != null) {
-                if (!line.startsWith("data: ")) {
-                    continue;
+            boolean done = new DeepSeekStreamParser(responseBody.source()).parse(new DeepSeekStreamParser.Listener() {
+                @Override
+                public void onDelta(String reasoningContent, String content) {
+                    handle.onActivity();
+                    processStreamData(reasoningContent, content, think, result, callback);
+                }
+
+                @Override
+                public void onError(String data) {
+                    Log.e(TAG, "流式响应返回错误事件: " + data);
+                    postError(handle, "响应错误: " + data);
                 }
 
-                String data = line.substring(6);
-                if ("[DONE]".equals(data)) {
-                    mainHandler.post(() -> callback.onComplete(
-                            result.toString(),
-                            think.toString()
-                    ));
-                    return;
+                @Override
+                public void onMalformed(String data) {
+                    Log.e(TAG, "解析流式数据错误, data=" + data);
                 }
-                processStreamData(data, think, result, callback);
+            }, handle.getStopped());
+            if (done) {
+                postComplete(handle, result.toString(), think.toString());
+            } else {
+                postError(handle, "响应意外结束");
             }
         } catch (IOException e) {
-            Log.e(TAG, "读取流式响应错误", e);
-            if (callback != null) {
-                mainHandler.post(() -> callback.onError("读取响应错误: " + e.getMessage()));
+            if (handle.getStopped().get()) {
+                return;
             }
+            Log.e(TAG, "读取流式响应错误", e);
+            postError(handle, "读取响应错误: " + e.getMessage());
         }
     }
 
     /**
-     * 处理流式数据
+     * 处理流式数据，在网络线程直接交给 FrameCoalescingCallback 缓冲，不再逐个分片投递到主线程
      */
-    private static void processStreamData(String data,
+    private static void processStreamData(String reasoning,
+                                          String content,
                                           StringBuilder reasoningContent,
                                           StringBuilder resultContent,
                                           DeepSeekStreamCallback callback) {
-        try {
-            JSONObject delta = JSONObject.parseObject(data)
-                    .getJSONArray("choices")
-                    .getJSONObject(0)
-                    .getJSONObject("delta");
-            String reasoning = delta.getString("reasoning_content");
-            if (isNotBlank(reasoning)) {
-                reasoningContent.append(reasoning);
-                mainHandler.post(() -> callback.onMessage(reasoning, null));
-            }
-
-            String content = delta.getString("content");
-            if (isNotBlank(content)) {
-                resultContent.append(content);
-                mainHandler.post(() -> callback.onMessage(null, content));
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "解析流式数据错误", e);
+        String reasoningDelta = isNotBlank(reasoning) ? reasoning : null;
+        String contentDelta = isNotBlank(content) ? content : null;
+        if (reasoningDelta != null) {
+            reasoningContent.append(reasoningDelta);
+        }
+        if (contentDelta != null) {
+            resultContent.append(contentDelta);
+        }
+        if (reasoningDelta != null || contentDelta != null) {
+            callback.onMessage(reasoningDelta, contentDelta);
         }
     }
 }
\ No newline at end of file
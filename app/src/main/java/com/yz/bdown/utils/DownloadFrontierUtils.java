@@ -0,0 +1,135 @@
+package com.yz.bdown.utils;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 下载进度边界工具类
+ * 记录正在下载的文件已写入的字节数，供边下边播时读取方在下载边界处等待
+ */
+public class DownloadFrontierUtils {
+
+    // awaitStart 返回值：文件不在下载中，直接按普通文件读取
+    public static final long NOT_DOWNLOADING = -2;
+    // awaitStart 返回值：下载尚未开始
+    public static final long PENDING = -3;
+
+    private static final Map<String, Frontier> frontiers = new ConcurrentHashMap<>();
+
+    /**
+     * 登记即将下载的文件，读取方打开文件时会等待下载开始而不是读到旧文件
+     *
+     * @param file 输出文件
+     */
+    public static void expect(File file) {
+        frontiers.computeIfAbsent(file.getAbsolutePath(), k -> new Frontier());
+    }
+
+    /**
+     * 下载开始，需在输出文件已创建（截断）之后调用
+     *
+     * @param file       输出文件
+     * @param totalBytes 文件总大小，未知时为 -1
+     */
+    public static void begin(File file, long totalBytes) {
+        Frontier frontier = frontiers.computeIfAbsent(file.getAbsolutePath(), k -> new Frontier());
+        synchronized (frontier) {
+            frontier.totalBytes = totalBytes;
+            frontier.written = 0;
+            frontier.finished = false;
+            frontier.started = true;
+            frontier.notifyAll();
+        }
+    }
+
+    /**
+     * 更新已写入的字节数
+     */
+    public static void advance(File file, long written) {
+        Frontier frontier = frontiers.get(file.getAbsolutePath());
+        if (frontier == null) {
+            return;
+        }
+        synchronized (frontier) {
+            frontier.written = written;
+            frontier.notifyAll();
+        }
+    }
+
+    /**
+     * 下载结束（成功、失败或取消），等待中的读取方不再阻塞
+     */
+    public static void finish(File file) {
+        Frontier frontier = frontiers.remove(file.getAbsolutePath());
+        if (frontier == null) {
+            return;
+        }
+        synchronized (frontier) {
+            frontier.finished = true;
+            frontier.notifyAll();
+        }
+    }
+
+    /**
+     * 文件是否已登记下载且尚未结束
+     *
+     * @param path 文件路径
+     * @return 是否在下载中
+     */
+    public static boolean isDownloading(String path) {
+        return frontiers.containsKey(path);
+    }
+
+    /**
+     * 等待下载开始
+     *
+     * @param path      文件路径
+     * @param maxWaitMs 单次最长等待时间，超时后返回以便调用方检查是否已关闭
+     * @return 文件总大小（未知时为 -1）；{@link #NOT_DOWNLOADING} 表示文件不在下载中，
+     * {@link #PENDING} 表示仍在等待下载开始
+     */
+    public static long awaitStart(String path, long maxWaitMs) throws InterruptedException {
+        Frontier frontier = frontiers.get(path);
+        if (frontier == null) {
+            return NOT_DOWNLOADING;
+        }
+        synchronized (frontier) {
+            if (!frontier.started && !frontier.finished) {
+                frontier.wait(maxWaitMs);
+            }
+            if (frontier.finished) {
+                return NOT_DOWNLOADING;
+            }
+            return frontier.started ? frontier.totalBytes : PENDING;
+        }
+    }
+
+    /**
+     * 等待文件写入超过指定位置
+     *
+     * @param path      文件路径
+     * @param position  读取位置
+     * @param maxWaitMs 单次最长等待时间，超时后返回以便调用方检查是否已关闭
+     * @return 当前已写入的字节数；下载已结束返回 -1，调用方直接按文件长度读取
+     */
+    public static long awaitBytes(String path, long position, long maxWaitMs) throws InterruptedException {
+        Frontier frontier = frontiers.get(path);
+        if (frontier == null) {
+            return -1;
+        }
+        synchronized (frontier) {
+            if (!frontier.finished && frontier.written <= position) {
+                frontier.wait(maxWaitMs);
+            }
+            return frontier.finished ? -1 : frontier.written;
+        }
+    }
+
+    private static class Frontier {
+        long totalBytes = -1;
+        long written;
+        boolean started;
+        boolean finished;
+    }
+}
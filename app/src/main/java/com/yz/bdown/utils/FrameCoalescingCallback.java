@@ -0,0 +1,115 @@
+package com.yz.bdown.utils;
+
+import android.os.Looper;
+import android.view.Choreographer;
+
+import com.yz.bdown.callback.DeepSeekStreamCallback;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按显示帧合并流式增量的回调
+ * onMessage 可在网络线程直接调用，增量先写入 {@link StreamDeltaBuffer}，
+ * 由 Choreographer 在下一帧开始时一次性交给目标回调，每帧最多更新一次界面，且两次更新之间不少于最小间隔
+ * onComplete、onError 需在主线程调用，转发前先交付尚未刷新的增量
+ */
+public class FrameCoalescingCallback implements DeepSeekStreamCallback, Choreographer.FrameCallback {
+
+    private final DeepSeekStreamCallback target;
+    private final StreamDeltaBuffer buffer;
+    private final Choreographer choreographer;
+    private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    /**
+     * 需在主线程创建，Choreographer 与创建线程的 Looper 绑定
+     *
+     * @param target        在主线程接收合并后增量的回调
+     * @param minIntervalMs 两次界面更新之间的最小间隔，0 表示每帧最多一次
+     */
+    public FrameCoalescingCallback(DeepSeekStreamCallback target, long minIntervalMs) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("FrameCoalescingCallback must be created on the main thread");
+        }
+        this.target = target;
+        this.buffer = new StreamDeltaBuffer(minIntervalMs);
+        this.choreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * 缓冲增量，缓冲区由空变为非空时安排下一帧刷新
+     * 参数顺序与 {@link DeepSeekUtils} 的调用一致：先推理内容，后回答内容
+     */
+    @Override
+    public void onMessage(String reasoningContent, String content) {
+        if (cancelled.get()) {
+            return;
+        }
+        if (buffer.append(reasoningContent, content) && frameScheduled.compareAndSet(false, true)) {
+            // postFrameCallback 可跨线程调用，内部会切换到主线程的 Looper
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void onComplete(String fullContent, String fullReasoningContent) {
+        if (cancelled.get()) {
+            return;
+        }
+        flush();
+        target.onComplete(fullContent, fullReasoningContent);
+    }
+
+    @Override
+    public void onError(String errMsg) {
+        if (cancelled.get()) {
+            return;
+        }
+        flush();
+        target.onError(errMsg);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (cancelled.get()) {
+            return;
+        }
+        long nowMs = frameTimeNanos / 1_000_000;
+        long delayMs = buffer.delayUntilDue(nowMs);
+        if (delayMs > 0) {
+            // 未到最小间隔，等到间隔结束后的那一帧再刷新
+            choreographer.postFrameCallbackDelayed(this, delayMs);
+            return;
+        }
+
+        // 先清除标记再取出，取出之后到达的增量会重新安排一帧
+        frameScheduled.set(false);
+        deliver(buffer.drain(nowMs));
+    }
+
+    /**
+     * 取消后丢弃缓冲的增量，不再回调目标
+     */
+    public void cancel() {
+        cancelled.set(true);
+        choreographer.removeFrameCallback(this);
+        buffer.drain(0);
+    }
+
+    /**
+     * 立即交付缓冲的增量，在主线程调用
+     */
+    private void flush() {
+        choreographer.removeFrameCallback(this);
+        frameScheduled.set(false);
+        deliver(buffer.drain(System.nanoTime() / 1_000_000));
+    }
+
+    private void deliver(Pair<String, String> delta) {
+        if (delta != null) {
+            target.onMessage(delta.getLeft(), delta.getRight());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.yz.bdown.utils;
+
+import static androidx.media3.common.C.LENGTH_UNSET;
+import static androidx.media3.common.C.RESULT_END_OF_INPUT;
+
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.BaseDataSource;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 读取正在下载的文件
+ * 读到下载边界时阻塞等待新数据，而不是当作文件结束；下载结束后按普通文件读取
+ */
+@OptIn(markerClass = UnstableApi.class)
+public class GrowingFileDataSource extends BaseDataSource {
+    private static final String TAG = "GrowingFileDataSource";
+
+    // 单次等待时间，超时后检查是否已关闭
+    private static final long WAIT_SLICE_MS = 100;
+
+    private Uri uri;
+    private String path;
+    private RandomAccessFile file;
+    private long position;
+    private long bytesRemaining;
+    private volatile boolean opened;
+
+    public GrowingFileDataSource() {
+        super(false);
+    }
+
+    @Override
+    public long open(@NonNull DataSpec dataSpec) throws IOException {
+        uri = dataSpec.uri;
+        path = uri.getPath();
+        transferInitializing(dataSpec);
+
+        // 下载尚未开始时等待，避免读到上一次残留的文件
+        long totalBytes;
+        try {
+            do {
+                totalBytes = DownloadFrontierUtils.awaitStart(path, WAIT_SLICE_MS);
+            } while (totalBytes == DownloadFrontierUtils.PENDING);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("open interrupted, path=" + path);
+        }
+
+        if (totalBytes != DownloadFrontierUtils.NOT_DOWNLOADING) {
+            Log.i(TAG, "open growing file, path=" + path + ", totalBytes=" + totalBytes);
+        }
+        file = new RandomAccessFile(path, "r");
+        position = dataSpec.position;
+        file.seek(position);
+
+        if (dataSpec.length != LENGTH_UNSET) {
+            bytesRemaining = dataSpec.length;
+        } else if (totalBytes == DownloadFrontierUtils.NOT_DOWNLOADING) {
+            bytesRemaining = file.length() - position;
+        } else if (totalBytes > 0) {
+            bytesRemaining = totalBytes - position;
+        } else {
+            bytesRemaining = LENGTH_UNSET;
+        }
+
+        opened = true;
+        transferStarted(dataSpec);
+        return bytesRemaining;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (bytesRemaining == 0) {
+            return RESULT_END_OF_INPUT;
+        }
+
+        int toRead = bytesRemaining == LENGTH_UNSET ? length : (int) Math.min(length, bytesRemaining);
+        try {
+            while (true) {
+                long written = DownloadFrontierUtils.awaitBytes(path, position, WAIT_SLICE_MS);
+                if (written < 0) {
+                    // 下载已结束，剩余部分直接读取
+                    break;
+                }
+                if (written > position) {
+                    toRead = (int) Math.min(toRead, written - position);
+                    break;
+                }
+                if (!opened) {
+                    throw new InterruptedIOException("closed while waiting, path=" + path);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("read interrupted, path=" + path);
+        }
+
+        int bytesRead = file.read(buffer, offset, toRead);
+        if (bytesRead == -1) {
+            return RESULT_END_OF_INPUT;
+        }
+
+        position += bytesRead;
+        if (bytesRemaining != LENGTH_UNSET) {
+            bytesRemaining -= bytesRead;
+        }
+        bytesTransferred(bytesRead);
+        return bytesRead;
+    }
+
+    @Override
+    public Uri getUri() {
+        return uri;
+    }
+
+    @Override
+    public void close() throws IOException {
+        uri = null;
+        try {
+            if (file != null) {
+                file.close();
+            }
+        } finally {
+            file = null;
+            if (opened) {
+                opened = false;
+                transferEnded();
+            }
+        }
+    }
+
+    /**
+     * 数据源工厂，用于创建 ProgressiveMediaSource
+     */
+    public static class Factory implements DataSource.Factory {
+        @NonNull
+        @Override
+        public DataSource createDataSource() {
+            return new GrowingFileDataSource();
+        }
+    }
+}
@@ -3,13 +3,22 @@ package com.yz.bdown.utils;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static java.util.concurrent.TimeUnit.MINUTES;
 
+import android.net.Uri;
 import android.util.Log;
 
+import androidx.annotation.OptIn;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+
 import com.yz.bdown.callback.DownloadCallback;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -45,6 +54,19 @@ public class M4sDownloadUtils {
      * @return 是否下载成功
      */
     public static boolean downloadM4sFile(String url, File outputFile, DownloadCallback callback) {
+        return downloadM4sFile(url, outputFile, callback, null);
+    }
+
+    /**
+     * 下载M4S文件（带进度回调和取消）
+     *
+     * @param url        下载地址
+     * @param outputFile 输出文件
+     * @param callback   进度回调
+     * @param cancelled  取消标记，置为 true 后中止下载（可为null）
+     * @return 是否下载成功
+     */
+    public static boolean downloadM4sFile(String url, File outputFile, DownloadCallback callback, AtomicBoolean cancelled) {
         if (isBlank(url) || outputFile == null) {
             Log.e(TAG, "invalid params");
             if (callback != null) {
@@ -53,6 +75,20 @@ public class M4sDownloadUtils {
             return false;
         }
 
+        // 在线播放时已缓存的部分直接复用，未缓存的部分仍从网络获取
+        DataSource cachedReader = StreamCacheUtils.openCachedReader(url);
+        if (cachedReader != null) {
+            if (downloadWithCache(cachedReader, url, outputFile, callback, cancelled)) {
+                DownloadFrontierUtils.finish(outputFile);
+                return true;
+            }
+            if (cancelled != null && cancelled.get()) {
+                DownloadFrontierUtils.finish(outputFile);
+                return false;
+            }
+            Log.w(TAG, "download with cache failed, fallback to http, outputFile=" + outputFile);
+        }
+
         Request request = new Request.Builder()
                 .url(url)
                 .header("Referer", "https://www.bilibili.com")
@@ -82,33 +118,8 @@ public class M4sDownloadUtils {
                 callback.onDownloadStart(totalBytes, outputFile.getName());
             }
 
-            try (InputStream inputStream = body.byteStream();
-                 FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-
-                byte[] buffer = new byte[4096];
-                int bytesRead;
-                long totalBytesRead = 0;
-                long startTime = System.currentTimeMillis();
-                long lastProgressUpdate = 0;
-
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
-                    totalBytesRead += bytesRead;
-
-                    if (callback != null) {
-                        long currentTime = System.currentTimeMillis();
-                        // 每300毫秒更新一次进度，避免过于频繁的UI更新
-                        if (currentTime - lastProgressUpdate > 300) {
-                            double elapsedTimeInSeconds = (currentTime - startTime) / 1000.0;
-                            double speedKBps = totalBytesRead / 1024.0 / Math.max(elapsedTimeInSeconds, 0.1);
-
-                            callback.onProgressUpdate(totalBytesRead, totalBytes, speedKBps);
-                            lastProgressUpdate = currentTime;
-                        }
-                    }
-                }
-
-                return true;
+            try (InputStream inputStream = body.byteStream()) {
+                return copy(inputStream::read, outputFile, totalBytes, callback, cancelled) >= 0;
             }
         } catch (Throwable t) {
             String errorMsg = "下载失败: " + t.getMessage();
@@ -117,6 +128,95 @@ public class M4sDownloadUtils {
                 callback.onDownloadError(errorMsg);
             }
             return false;
+        } finally {
+            DownloadFrontierUtils.finish(outputFile);
+        }
+    }
+
+    /**
+     * 通过在线播放缓存下载，失败时不回调错误，由调用方改用网络下载，
+     * 下载边界保持登记，改用网络下载后边下边播的读取方继续等待
+     */
+    @OptIn(markerClass = UnstableApi.class)
+    private static boolean downloadWithCache(DataSource dataSource,
+                                             String url,
+                                             File outputFile,
+                                             DownloadCallback callback,
+                                             AtomicBoolean cancelled) {
+        try {
+            long totalBytes = dataSource.open(new DataSpec(Uri.parse(url)));
+            if (totalBytes == C.LENGTH_UNSET) {
+                totalBytes = -1;
+            }
+            if (callback != null) {
+                callback.onDownloadStart(totalBytes, outputFile.getName());
+            }
+
+            long totalBytesRead = copy(buffer -> dataSource.read(buffer, 0, buffer.length),
+                    outputFile, totalBytes, callback, cancelled);
+            return totalBytesRead >= 0 && (totalBytes < 0 || totalBytesRead == totalBytes);
+        } catch (Throwable t) {
+            Log.w(TAG, "download with cache err, outputFile=" + outputFile, t);
+            return false;
+        } finally {
+            try {
+                dataSource.close();
+            } catch (Exception e) {
+                Log.w(TAG, "close cached reader failed", e);
+            }
+        }
+    }
+
+    private interface Source {
+        /**
+         * @return 读取的字节数，读完时返回 -1
+         */
+        int read(byte[] buffer) throws IOException;
+    }
+
+    /**
+     * 截断输出文件后逐块写入，同步下载边界并每300毫秒回调一次进度
+     *
+     * @param totalBytes 总字节数，未知时为 -1
+     * @return 写入的字节数，取消时返回 -1
+     */
+    private static long copy(Source source,
+                             File outputFile,
+                             long totalBytes,
+                             DownloadCallback callback,
+                             AtomicBoolean cancelled) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
+            // 文件已截断，边下边播的读取方从此处开始跟随写入进度
+            DownloadFrontierUtils.begin(outputFile, totalBytes);
+
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            long totalBytesRead = 0;
+            long startTime = System.currentTimeMillis();
+            long lastProgressUpdate = 0;
+
+            while ((bytesRead = source.read(buffer)) != -1) {
+                if (cancelled != null && cancelled.get()) {
+                    Log.i(TAG, "download cancelled, outputFile=" + outputFile);
+                    return -1;
+                }
+                outputStream.write(buffer, 0, bytesRead);
+                totalBytesRead += bytesRead;
+                DownloadFrontierUtils.advance(outputFile, totalBytesRead);
+
+                if (callback != null) {
+                    long currentTime = System.currentTimeMillis();
+                    // 每300毫秒更新一次进度，避免过于频繁的UI更新
+                    if (currentTime - lastProgressUpdate > 300) {
+                        double elapsedTimeInSeconds = (currentTime - startTime) / 1000.0;
+                        double speedKBps = totalBytesRead / 1024.0 / Math.max(elapsedTimeInSeconds, 0.1);
+
+                        callback.onProgressUpdate(totalBytesRead, totalBytes, speedKBps);
+                        lastProgressUpdate = currentTime;
+                    }
+                }
+            }
+            return totalBytesRead;
         }
     }
-}
\ No newline at end of file
+}
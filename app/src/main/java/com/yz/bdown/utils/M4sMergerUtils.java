@@ -1,6 +1,7 @@
 package com.yz.bdown.utils;
 
 import static android.media.MediaExtractor.SAMPLE_FLAG_SYNC;
+import static android.media.MediaFormat.KEY_MAX_INPUT_SIZE;
 import static android.media.MediaFormat.KEY_MIME;
 import static android.media.MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4;
 
@@ -10,18 +11,46 @@ import android.media.MediaFormat;
 import android.media.MediaMuxer;
 import android.util.Log;
 
+import com.yz.bdown.callback.DownloadCallback;
+
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class M4sMergerUtils {
 
     private static final String TAG = "M4sMergerUtils";
 
+    // 合并进度回调的最小间隔(ms)，与下载进度保持一致
+    private static final long PROGRESS_INTERVAL_MS = 300;
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
     public static boolean mergeVideoAndAudio(String videoPath, String audioPath, String outputPath) {
+        return mergeVideoAndAudio(videoPath, audioPath, outputPath, null, null);
+    }
+
+    /**
+     * 合并视频和音频（带进度回调和取消）
+     *
+     * @param videoPath  视频 m4s 路径
+     * @param audioPath  音频 m4s 路径
+     * @param outputPath 输出 mp4 路径
+     * @param callback   进度回调，bytesRead/totalBytes 为已写入/总的样本字节数（可为null）
+     * @param cancelled  取消标记，置为 true 后中止合并并删除未完成的输出文件（可为null）
+     * @return 是否合并成功
+     */
+    public static boolean mergeVideoAndAudio(String videoPath,
+                                             String audioPath,
+                                             String outputPath,
+                                             DownloadCallback callback,
+                                             AtomicBoolean cancelled) {
         MediaExtractor videoExtractor = new MediaExtractor();
         MediaExtractor audioExtractor = new MediaExtractor();
         MediaMuxer muxer = null;
+        boolean success = false;
         try {
             // 提取数据
             Pair<MediaFormat, Integer> videoPair = extractTrackData(videoExtractor, videoPath, "video/");
@@ -41,20 +70,37 @@ public class M4sMergerUtils {
             int muxerAudioTrackIndex = muxer.addTrack(audioPair.getKey());
 
             // 开始混合
+            MergeProgress progress = new MergeProgress(callback,
+                    new File(videoPath).length() + new File(audioPath).length());
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(
+                    maxInputSize(videoPair.getKey()), maxInputSize(audioPair.getKey())));
             muxer.start();
-            muxerTrackData(videoExtractor, muxer, muxerVideoTrackIndex);
-            muxerTrackData(audioExtractor, muxer, muxerAudioTrackIndex);
+            if (!muxerTrackData(videoExtractor, muxer, muxerVideoTrackIndex, buffer, progress, cancelled)
+                    || !muxerTrackData(audioExtractor, muxer, muxerAudioTrackIndex, buffer, progress, cancelled)) {
+                Log.i(TAG, "merge cancelled, outputPath=" + outputPath);
+                return false;
+            }
             muxer.stop();
+            progress.finish();
+            success = true;
             return true;
         } catch (Throwable t) {
             Log.e(TAG, "Error merging video and audio", t);
             return false;
         } finally {
             if (muxer != null) {
-                muxer.release();
+                try {
+                    muxer.release();
+                } catch (Throwable t) {
+                    // 取消时 muxer 未正常 stop，release 可能抛出异常
+                    Log.w(TAG, "release muxer failed", t);
+                }
             }
             videoExtractor.release();
             audioExtractor.release();
+            if (!success) {
+                deletePartialOutput(outputPath);
+            }
         }
     }
 
@@ -80,32 +126,55 @@ public class M4sMergerUtils {
         return Pair.of(mediaFormat, mediaTrackIndex);
     }
 
-    private static void muxerTrackData(MediaExtractor mediaExtractor,
-                                       MediaMuxer muxer,
-                                       int muxerTrackIndex) {
-        boolean mediaDone = false;
-        while (!mediaDone) {
-            int mediaBufferSize = bufferSize(mediaExtractor);
-            byte[] buffer = new byte[mediaBufferSize];
-            MediaCodec.BufferInfo info = mediaBufferInfo(mediaExtractor);
-            int sampleSize = mediaExtractor.readSampleData(ByteBuffer.wrap(buffer), 0);
-            if (sampleSize < 0) {
-                mediaDone = true;
-            } else {
-                info.size = sampleSize;
-                muxer.writeSampleData(muxerTrackIndex, ByteBuffer.wrap(buffer), info);
-                mediaExtractor.advance();
+    /**
+     * 将轨道样本写入 muxer，复用同一个缓冲区
+     *
+     * @return 是否写入完成，被取消时返回 false
+     */
+    private static boolean muxerTrackData(MediaExtractor mediaExtractor,
+                                          MediaMuxer muxer,
+                                          int muxerTrackIndex,
+                                          ByteBuffer buffer,
+                                          MergeProgress progress,
+                                          AtomicBoolean cancelled) {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        while (true) {
+            if (cancelled != null && cancelled.get()) {
+                return false;
+            }
+
+            long sampleSize = mediaExtractor.getSampleSize();
+            if (sampleSize > buffer.capacity()) {
+                // 极少数样本超出 KEY_MAX_INPUT_SIZE，单独分配
+                buffer = ByteBuffer.allocateDirect((int) sampleSize);
+            }
+
+            buffer.clear();
+            int readSize = mediaExtractor.readSampleData(buffer, 0);
+            if (readSize < 0) {
+                return true;
             }
+
+            fillBufferInfo(mediaExtractor, info, readSize);
+            muxer.writeSampleData(muxerTrackIndex, buffer, info);
+            progress.onSampleWritten(readSize);
+            mediaExtractor.advance();
         }
     }
 
-    private static int bufferSize(MediaExtractor mediaExtractor) {
-        int bufferSize = (int) mediaExtractor.getSampleSize();
-        return bufferSize <= 0 ? 1024 * 1024 : bufferSize;
+    private static int maxInputSize(MediaFormat mediaFormat) {
+        if (mediaFormat.containsKey(KEY_MAX_INPUT_SIZE)) {
+            int maxInputSize = mediaFormat.getInteger(KEY_MAX_INPUT_SIZE);
+            if (maxInputSize > 0) {
+                return maxInputSize;
+            }
+        }
+        return DEFAULT_BUFFER_SIZE;
     }
 
-    private static MediaCodec.BufferInfo mediaBufferInfo(MediaExtractor mediaExtractor) {
-        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private static void fillBufferInfo(MediaExtractor mediaExtractor, MediaCodec.BufferInfo info, int size) {
+        info.offset = 0;
+        info.size = size;
         info.presentationTimeUs = mediaExtractor.getSampleTime();
         int sampleFlags = mediaExtractor.getSampleFlags();
         if ((sampleFlags & SAMPLE_FLAG_SYNC) != 0) {
@@ -113,6 +182,56 @@ public class M4sMergerUtils {
         } else {
             info.flags = 0;
         }
-        return info;
     }
-}
\ No newline at end of file
+
+    private static void deletePartialOutput(String outputPath) {
+        File outputFile = new File(outputPath);
+        if (outputFile.exists() && !outputFile.delete()) {
+            Log.w(TAG, "delete partial output failed, outputPath=" + outputPath);
+        }
+    }
+
+    /**
+     * 合并进度统计，按固定间隔节流回调
+     */
+    private static class MergeProgress {
+
+        private final DownloadCallback callback;
+        private final long totalBytes;
+        private final long startTime = System.currentTimeMillis();
+        private long bytesWritten;
+        private long lastProgressUpdate;
+
+        MergeProgress(DownloadCallback callback, long totalBytes) {
+            this.callback = callback;
+            this.totalBytes = totalBytes;
+        }
+
+        void onSampleWritten(int sampleSize) {
+            bytesWritten += sampleSize;
+            if (callback == null) {
+                return;
+            }
+
+            long currentTime = System.currentTimeMillis();
+            if (currentTime - lastProgressUpdate > PROGRESS_INTERVAL_MS) {
+                notifyProgress(currentTime);
+                lastProgressUpdate = currentTime;
+            }
+        }
+
+        void finish() {
+            bytesWritten = Math.max(bytesWritten, totalBytes);
+            if (callback != null) {
+                notifyProgress(System.currentTimeMillis());
+            }
+        }
+
+        private void notifyProgress(long currentTime) {
+            double elapsedTimeInSeconds = (currentTime - startTime) / 1000.0;
+            double speedKBps = bytesWritten / 1024.0 / Math.max(elapsedTimeInSeconds, 0.1);
+            // m4s 容器头部不计入样本字节，进度上限按总大小截断
+            callback.onProgressUpdate(Math.min(bytesWritten, totalBytes), totalBytes, speedKBps);
+        }
+    }
+}
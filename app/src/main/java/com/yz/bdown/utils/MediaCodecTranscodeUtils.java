@@ -0,0 +1,319 @@
+package com.yz.bdown.utils;
+
+import static android.media.MediaCodec.BUFFER_FLAG_CODEC_CONFIG;
+import static android.media.MediaCodec.BUFFER_FLAG_END_OF_STREAM;
+import static android.media.MediaCodec.CONFIGURE_FLAG_ENCODE;
+import static android.media.MediaCodec.INFO_OUTPUT_FORMAT_CHANGED;
+import static android.media.MediaFormat.KEY_AAC_PROFILE;
+import static android.media.MediaFormat.KEY_BIT_RATE;
+import static android.media.MediaFormat.KEY_CHANNEL_COUNT;
+import static android.media.MediaFormat.KEY_DURATION;
+import static android.media.MediaFormat.KEY_MIME;
+import static android.media.MediaFormat.KEY_SAMPLE_RATE;
+import static android.media.MediaFormat.MIMETYPE_AUDIO_AAC;
+import static android.media.MediaFormat.MIMETYPE_AUDIO_OPUS;
+import static android.media.MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4;
+import static android.media.MediaMuxer.OutputFormat.MUXER_OUTPUT_OGG;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecInfo.CodecProfileLevel;
+import android.media.MediaCodecList;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * 基于 MediaCodec 的音频转码工具类
+ * 解码器输出的 PCM 直接写入编码器输入缓冲区，不经过 Java 堆数组
+ */
+public class MediaCodecTranscodeUtils {
+
+    private static final String TAG = "MediaCodecTranscodeUtils";
+
+    private static final long TIMEOUT_US = 10_000;
+
+    /**
+     * 设备是否有可用于该输入的编码器
+     *
+     * @param inputPath   输入音频文件
+     * @param encoderMime 目标编码，{@link MediaFormat#MIMETYPE_AUDIO_AAC} 或 {@link MediaFormat#MIMETYPE_AUDIO_OPUS}
+     * @param bitRate     目标码率
+     * @return 是否支持
+     */
+    public static boolean isSupported(String inputPath, String encoderMime, int bitRate) {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(inputPath);
+            int trackIndex = findAudioTrack(extractor);
+            if (trackIndex < 0) {
+                return false;
+            }
+            MediaFormat inputFormat = extractor.getTrackFormat(trackIndex);
+            return findEncoder(encoderFormat(encoderMime, inputFormat, bitRate)) != null;
+        } catch (Throwable t) {
+            Log.w(TAG, "isSupported failed, inputPath=" + inputPath, t);
+            return false;
+        } finally {
+            extractor.release();
+        }
+    }
+
+    /**
+     * 解码 → 编码转码
+     *
+     * @param inputPath        输入音频文件
+     * @param outputPath       输出文件，AAC 输出 MP4 容器，Opus 输出 OGG 容器
+     * @param encoderMime      目标编码
+     * @param bitRate          目标码率
+     * @param progressListener 进度回调(0-100)，在调用线程回调（可为null）
+     * @param cancelled        取消标记（可为null）
+     * @return 是否转码成功，失败或取消时删除输出文件
+     */
+    public static boolean transcode(String inputPath,
+                                    String outputPath,
+                                    String encoderMime,
+                                    int bitRate,
+                                    IntConsumer progressListener,
+                                    AtomicBoolean cancelled) {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec decoder = null;
+        MediaCodec encoder = null;
+        MediaMuxer muxer = null;
+        boolean success = false;
+        try {
+            extractor.setDataSource(inputPath);
+            int trackIndex = findAudioTrack(extractor);
+            if (trackIndex < 0) {
+                Log.w(TAG, "No audio track found, inputPath=" + inputPath);
+                return false;
+            }
+            extractor.selectTrack(trackIndex);
+            MediaFormat inputFormat = extractor.getTrackFormat(trackIndex);
+            long durationUs = inputFormat.containsKey(KEY_DURATION) ? inputFormat.getLong(KEY_DURATION) : 0;
+
+            decoder = MediaCodec.createDecoderByType(inputFormat.getString(KEY_MIME));
+            decoder.configure(inputFormat, null, null, 0);
+            decoder.start();
+
+            muxer = new MediaMuxer(outputPath,
+                    MIMETYPE_AUDIO_OPUS.equals(encoderMime) ? MUXER_OUTPUT_OGG : MUXER_OUTPUT_MPEG_4);
+
+            MediaCodec.BufferInfo decodeInfo = new MediaCodec.BufferInfo();
+            MediaCodec.BufferInfo encodeInfo = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean decodeDone = false;
+            boolean encodeDone = false;
+            int pendingIndex = -1;  // 尚未完全送入编码器的解码输出缓冲区
+            int pendingOffset = 0;
+            int bytesPerSecond = 0;
+            int muxerTrackIndex = -1;
+            int lastProgress = -1;
+
+            while (!encodeDone) {
+                if (cancelled != null && cancelled.get()) {
+                    Log.i(TAG, "transcode cancelled, outputPath=" + outputPath);
+                    return false;
+                }
+
+                // 1. 压缩数据送入解码器
+                if (!inputDone) {
+                    int inputIndex = decoder.dequeueInputBuffer(TIMEOUT_US);
+                    if (inputIndex >= 0) {
+                        ByteBuffer inputBuffer = decoder.getInputBuffer(inputIndex);
+                        int sampleSize = extractor.readSampleData(inputBuffer, 0);
+                        if (sampleSize < 0) {
+                            decoder.queueInputBuffer(inputIndex, 0, 0, 0, BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            decoder.queueInputBuffer(inputIndex, 0, sampleSize, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                // 2. 解码输出的 PCM 直接拷贝进编码器输入缓冲区
+                if (!decodeDone) {
+                    if (pendingIndex < 0) {
+                        int outputIndex = decoder.dequeueOutputBuffer(decodeInfo, TIMEOUT_US);
+                        if (outputIndex == INFO_OUTPUT_FORMAT_CHANGED && encoder == null) {
+                            // 按解码器实际输出（如 HE-AAC 的采样率）配置编码器
+                            MediaFormat pcmFormat = decoder.getOutputFormat();
+                            encoder = createEncoder(encoderFormat(encoderMime, pcmFormat, bitRate));
+                            if (encoder == null) {
+                                return false;
+                            }
+                            bytesPerSecond = pcmFormat.getInteger(KEY_SAMPLE_RATE) * pcmFormat.getInteger(KEY_CHANNEL_COUNT) * 2;
+                        } else if (outputIndex >= 0) {
+                            pendingIndex = outputIndex;
+                            pendingOffset = 0;
+                        }
+                    }
+
+                    if (pendingIndex >= 0 && encoder == null) {
+                        encoder = createEncoder(encoderFormat(encoderMime, inputFormat, bitRate));
+                        if (encoder == null) {
+                            return false;
+                        }
+                        bytesPerSecond = inputFormat.getInteger(KEY_SAMPLE_RATE) * inputFormat.getInteger(KEY_CHANNEL_COUNT) * 2;
+                    }
+
+                    if (pendingIndex >= 0) {
+                        int encoderInputIndex = encoder.dequeueInputBuffer(TIMEOUT_US);
+                        if (encoderInputIndex >= 0) {
+                            ByteBuffer pcm = decoder.getOutputBuffer(pendingIndex);
+                            ByteBuffer encoderInput = encoder.getInputBuffer(encoderInputIndex);
+                            int chunk = Math.min(decodeInfo.size - pendingOffset, encoderInput.capacity());
+                            pcm.limit(decodeInfo.offset + pendingOffset + chunk);
+                            pcm.position(decodeInfo.offset + pendingOffset);
+                            encoderInput.clear();
+                            encoderInput.put(pcm);
+
+                            long presentationTimeUs = decodeInfo.presentationTimeUs
+                                    + pendingOffset * 1_000_000L / Math.max(bytesPerSecond, 1);
+                            pendingOffset += chunk;
+                            boolean lastChunk = pendingOffset >= decodeInfo.size;
+                            boolean endOfStream = lastChunk && (decodeInfo.flags & BUFFER_FLAG_END_OF_STREAM) != 0;
+                            encoder.queueInputBuffer(encoderInputIndex, 0, chunk, presentationTimeUs,
+                                    endOfStream ? BUFFER_FLAG_END_OF_STREAM : 0);
+
+                            if (lastChunk) {
+                                decoder.releaseOutputBuffer(pendingIndex, false);
+                                pendingIndex = -1;
+                                decodeDone = endOfStream;
+                            }
+                        }
+                    }
+                }
+
+                // 3. 编码输出写入 muxer
+                if (encoder != null) {
+                    int outputIndex = encoder.dequeueOutputBuffer(encodeInfo, TIMEOUT_US);
+                    if (outputIndex == INFO_OUTPUT_FORMAT_CHANGED) {
+                        muxerTrackIndex = muxer.addTrack(encoder.getOutputFormat());
+                        muxer.start();
+                    } else if (outputIndex >= 0) {
+                        ByteBuffer encoded = encoder.getOutputBuffer(outputIndex);
+                        if ((encodeInfo.flags & BUFFER_FLAG_CODEC_CONFIG) == 0
+                                && encodeInfo.size > 0 && muxerTrackIndex >= 0) {
+                            encoded.position(encodeInfo.offset);
+                            encoded.limit(encodeInfo.offset + encodeInfo.size);
+                            muxer.writeSampleData(muxerTrackIndex, encoded, encodeInfo);
+
+                            int progress = durationUs > 0
+                                    ? (int) Math.min(100, encodeInfo.presentationTimeUs * 100 / durationUs) : 0;
+                            if (progressListener != null && progress != lastProgress) {
+                                lastProgress = progress;
+                                progressListener.accept(progress);
+                            }
+                        }
+                        encoder.releaseOutputBuffer(outputIndex, false);
+                        encodeDone = (encodeInfo.flags & BUFFER_FLAG_END_OF_STREAM) != 0;
+                    }
+                }
+            }
+
+            muxer.stop();
+            success = true;
+            return true;
+        } catch (Throwable t) {
+            Log.e(TAG, "transcode failed, inputPath=" + inputPath, t);
+            return false;
+        } finally {
+            release(decoder);
+            release(encoder);
+            if (muxer != null) {
+                try {
+                    muxer.release();
+                } catch (Throwable t) {
+                    Log.w(TAG, "release muxer failed", t);
+                }
+            }
+            extractor.release();
+            if (!success) {
+                File outputFile = new File(outputPath);
+                if (outputFile.exists() && !outputFile.delete()) {
+                    Log.w(TAG, "delete partial output failed, outputPath=" + outputPath);
+                }
+            }
+        }
+    }
+
+    private static int findAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static MediaFormat encoderFormat(String encoderMime, MediaFormat pcmFormat, int bitRate) {
+        MediaFormat format = MediaFormat.createAudioFormat(encoderMime,
+                pcmFormat.getInteger(KEY_SAMPLE_RATE), pcmFormat.getInteger(KEY_CHANNEL_COUNT));
+        format.setInteger(KEY_BIT_RATE, bitRate);
+        if (MIMETYPE_AUDIO_AAC.equals(encoderMime)) {
+            format.setInteger(KEY_AAC_PROFILE, CodecProfileLevel.AACObjectLC);
+        }
+        return format;
+    }
+
+    /**
+     * 查找支持该格式的编码器，优先硬件编码器，其次平台自带编码器
+     */
+    private static String findEncoder(MediaFormat format) {
+        String mime = format.getString(KEY_MIME);
+        String fallback = null;
+        for (MediaCodecInfo codecInfo : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (!codecInfo.isEncoder()) {
+                continue;
+            }
+            for (String type : codecInfo.getSupportedTypes()) {
+                if (!type.equalsIgnoreCase(mime)
+                        || !codecInfo.getCapabilitiesForType(type).isFormatSupported(format)) {
+                    continue;
+                }
+                if (codecInfo.isHardwareAccelerated()) {
+                    return codecInfo.getName();
+                }
+                if (fallback == null) {
+                    fallback = codecInfo.getName();
+                }
+            }
+        }
+        return fallback;
+    }
+
+    private static MediaCodec createEncoder(MediaFormat format) throws Exception {
+        String encoderName = findEncoder(format);
+        if (encoderName == null) {
+            Log.w(TAG, "No encoder for format=" + format);
+            return null;
+        }
+
+        MediaCodec encoder = MediaCodec.createByCodecName(encoderName);
+        encoder.configure(format, null, null, CONFIGURE_FLAG_ENCODE);
+        encoder.start();
+        Log.d(TAG, "using encoder " + encoderName);
+        return encoder;
+    }
+
+    private static void release(MediaCodec codec) {
+        if (codec == null) {
+            return;
+        }
+        try {
+            codec.stop();
+        } catch (Throwable t) {
+            Log.w(TAG, "stop codec failed", t);
+        }
+        codec.release();
+    }
+}
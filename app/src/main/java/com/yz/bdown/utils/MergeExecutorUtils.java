@@ -0,0 +1,216 @@
+package com.yz.bdown.utils;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import android.util.Log;
+
+import com.yz.bdown.callback.DownloadCallback;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 音视频合并线程池
+ * 所有合并任务在此排队执行，并发数按设备核数和实测存储写入速度确定，避免多个合并争抢存储带宽
+ */
+public class MergeExecutorUtils {
+
+    private static final String TAG = "MergeExecutorUtils";
+
+    // 存储测速文件大小
+    private static final int PROBE_SIZE = 8 * 1024 * 1024;
+
+    // 单个合并任务大致能吃满的写入带宽(MB/s)，超过此值才增加并发
+    private static final double MB_PER_MERGE = 120.0;
+
+    private static final AtomicInteger threadIndex = new AtomicInteger();
+
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1, 1, 30, SECONDS, new LinkedBlockingQueue<>(),
+            r -> {
+                Thread thread = new Thread(r, "merge-" + threadIndex.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+
+    private static final AtomicBoolean tuned = new AtomicBoolean(false);
+
+    // 合并耗时统计
+    private static final AtomicLong completedCount = new AtomicLong();
+    private static final AtomicLong totalDurationMs = new AtomicLong();
+    private static volatile long lastDurationMs;
+
+    /**
+     * 提交合并任务并等待完成，调用线程阻塞直到轮到该任务并执行完毕
+     *
+     * @param videoPath  视频 m4s 路径
+     * @param audioPath  音频 m4s 路径
+     * @param outputPath 输出 mp4 路径
+     * @param callback   进度回调（可为null）
+     * @param cancelled  取消标记（可为null）
+     * @return 是否合并成功
+     */
+    public static boolean merge(String videoPath,
+                                String audioPath,
+                                String outputPath,
+                                DownloadCallback callback,
+                                AtomicBoolean cancelled) {
+        return await(submit(videoPath, audioPath, outputPath, callback, cancelled), outputPath, cancelled);
+    }
+
+    /**
+     * 提交分P拼接任务并等待完成，与音视频合并共用线程池排队
+     *
+     * @param parts      待拼接的分P，key 为文件路径，value 为章节标题
+     * @param outputPath 输出 mp4 路径
+     * @param callback   进度回调（可为null）
+     * @param cancelled  取消标记（可为null）
+     * @return 是否拼接成功
+     */
+    public static boolean concat(List<Pair<String, String>> parts,
+                                 String outputPath,
+                                 DownloadCallback callback,
+                                 AtomicBoolean cancelled) {
+        Log.d(TAG, "submit concat, queueDepth=" + getQueueDepth() + ", outputPath=" + outputPath);
+        Future<Boolean> future = executor.submit(() -> run(outputPath, cancelled,
+                () -> Mp4ConcatUtils.concat(parts, outputPath, callback, cancelled)));
+        return await(future, outputPath, cancelled);
+    }
+
+    private static boolean await(Future<Boolean> future, String outputPath, AtomicBoolean cancelled) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (cancelled != null) {
+                cancelled.set(true);
+            }
+            return false;
+        } catch (Throwable t) {
+            Log.e(TAG, "merge failed, outputPath=" + outputPath, t);
+            return false;
+        }
+    }
+
+    /**
+     * 提交合并任务
+     *
+     * @return 合并结果
+     */
+    public static Future<Boolean> submit(String videoPath,
+                                         String audioPath,
+                                         String outputPath,
+                                         DownloadCallback callback,
+                                         AtomicBoolean cancelled) {
+        Log.d(TAG, "submit merge, queueDepth=" + getQueueDepth() + ", outputPath=" + outputPath);
+        return executor.submit(() -> run(outputPath, cancelled,
+                () -> M4sMergerUtils.mergeVideoAndAudio(videoPath, audioPath, outputPath, callback, cancelled)));
+    }
+
+    /**
+     * 在线程池中执行任务，统计耗时
+     */
+    private static boolean run(String outputPath, AtomicBoolean cancelled, Callable<Boolean> task) throws Exception {
+        tuneParallelism(new File(outputPath).getParentFile());
+        if (cancelled != null && cancelled.get()) {
+            return false;
+        }
+
+        long startTime = System.currentTimeMillis();
+        boolean result = task.call();
+        long duration = System.currentTimeMillis() - startTime;
+
+        lastDurationMs = duration;
+        totalDurationMs.addAndGet(duration);
+        completedCount.incrementAndGet();
+        Log.i(TAG, "merge finished, result=" + result + ", duration=" + duration + "ms"
+                + ", avg=" + getAverageDurationMs() + "ms, queueDepth=" + getQueueDepth());
+        return result;
+    }
+
+    /**
+     * @return 排队等待的合并任务数
+     */
+    public static int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return 正在执行的合并任务数
+     */
+    public static int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return 最近一次合并耗时(ms)
+     */
+    public static long getLastDurationMs() {
+        return lastDurationMs;
+    }
+
+    /**
+     * @return 平均合并耗时(ms)
+     */
+    public static long getAverageDurationMs() {
+        long count = completedCount.get();
+        return count == 0 ? 0 : totalDurationMs.get() / count;
+    }
+
+    /**
+     * 首次执行时测量存储写入速度并调整并发数
+     */
+    private static void tuneParallelism(File dir) {
+        if (!tuned.compareAndSet(false, true)) {
+            return;
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double writeMBps = measureWriteSpeed(dir);
+        int byStorage = (int) Math.max(1, writeMBps / MB_PER_MERGE);
+        int parallelism = Math.max(1, Math.min(byStorage, cores / 2));
+
+        // 先调整最大值再调整核心数，避免 IllegalArgumentException
+        executor.setMaximumPoolSize(parallelism);
+        executor.setCorePoolSize(parallelism);
+        Log.i(TAG, "merge parallelism=" + parallelism + ", cores=" + cores + ", write=" + writeMBps + "MB/s");
+    }
+
+    /**
+     * 写入测速文件并 fsync，返回写入速度(MB/s)，测量失败时返回 0
+     */
+    private static double measureWriteSpeed(File dir) {
+        if (dir == null || !dir.isDirectory()) {
+            return 0;
+        }
+
+        File probe = new File(dir, ".merge_probe");
+        byte[] buffer = new byte[256 * 1024];
+        try (FileOutputStream outputStream = new FileOutputStream(probe)) {
+            long startTime = System.nanoTime();
+            for (int written = 0; written < PROBE_SIZE; written += buffer.length) {
+                outputStream.write(buffer);
+            }
+            outputStream.getFD().sync();
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            return PROBE_SIZE / 1024.0 / 1024.0 / Math.max(seconds, 1e-3);
+        } catch (Throwable t) {
+            Log.w(TAG, "measure write speed failed", t);
+            return 0;
+        } finally {
+            if (!probe.delete()) {
+                Log.w(TAG, "delete probe failed");
+            }
+        }
+    }
+}
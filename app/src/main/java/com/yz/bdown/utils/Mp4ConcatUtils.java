@@ -0,0 +1,267 @@
+package com.yz.bdown.utils;
+
+import static android.media.MediaFormat.KEY_CHANNEL_COUNT;
+import static android.media.MediaFormat.KEY_DURATION;
+import static android.media.MediaFormat.KEY_HEIGHT;
+import static android.media.MediaFormat.KEY_MIME;
+import static android.media.MediaFormat.KEY_SAMPLE_RATE;
+import static android.media.MediaFormat.KEY_WIDTH;
+import static com.arthenica.mobileffmpeg.Config.RETURN_CODE_CANCEL;
+import static com.arthenica.mobileffmpeg.Config.RETURN_CODE_SUCCESS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.commons.collections4.CollectionUtils.isEmpty;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import com.arthenica.mobileffmpeg.Config;
+import com.arthenica.mobileffmpeg.FFmpeg;
+import com.arthenica.mobileffmpeg.Statistics;
+import com.yz.bdown.callback.DownloadCallback;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MP4 无损拼接工具类
+ * 将多个编码参数一致的分P文件以流复制方式合并为一个文件，并按分P标题生成章节
+ */
+public class Mp4ConcatUtils {
+
+    private static final String TAG = "Mp4ConcatUtils";
+
+    // 拼接进度回调的间隔(ms)，与合并进度保持一致
+    private static final long PROGRESS_INTERVAL_MS = 300;
+
+    // FFmpeg 异步执行线程，调用方在合并线程池中等待其结束
+    private static final ExecutorService ffmpegExecutor = Executors.newCachedThreadPool();
+
+    public static boolean concat(List<Pair<String, String>> parts, String outputPath) {
+        return concat(parts, outputPath, null, null);
+    }
+
+    /**
+     * 拼接多个 MP4 文件（带进度回调和取消），调用线程阻塞直到拼接结束
+     *
+     * @param parts      待拼接的分P，key 为文件路径，value 为章节标题
+     * @param outputPath 输出文件路径
+     * @param callback   进度回调，bytesRead/totalBytes 为已写入的输出字节数/所有分P的总字节数（可为null）
+     * @param cancelled  取消标记，置为 true 后中止 FFmpeg 并删除未完成的输出文件（可为null）
+     * @return 是否拼接成功
+     */
+    public static boolean concat(List<Pair<String, String>> parts,
+                                 String outputPath,
+                                 DownloadCallback callback,
+                                 AtomicBoolean cancelled) {
+        if (isEmpty(parts) || outputPath == null) {
+            Log.w(TAG, "invalid params");
+            return false;
+        }
+
+        long[] durationsUs = new long[parts.size()];
+        if (!checkCompatible(parts, durationsUs)) {
+            return false;
+        }
+
+        File listFile = new File(outputPath + ".concat.txt");
+        File chapterFile = new File(outputPath + ".chapters.txt");
+        try {
+            writeConcatList(parts, listFile);
+            writeChapters(parts, durationsUs, chapterFile);
+
+            String[] cmd = {                        // FFmpeg 命令行参数
+                    "-y",                           // 覆盖输出文件
+                    "-f", "concat",                 // concat 分离器，自动重排时间戳
+                    "-safe", "0",                   // 允许绝对路径
+                    "-i", listFile.getPath(),       // 分P列表
+                    "-i", chapterFile.getPath(),    // 章节元数据
+                    "-map", "0",                    // 保留所有音视频流
+                    "-map_metadata", "1",           // 使用章节文件中的元数据
+                    "-map_chapters", "1",           // 使用章节文件中的章节
+                    "-c", "copy",                   // 流复制，不重新编码
+                    "-movflags", "+faststart",      // moov 前置，便于边下边播
+                    outputPath
+            };
+            int rc = execute(cmd, totalSize(parts), callback, cancelled);
+            if (rc != RETURN_CODE_SUCCESS) {
+                Log.w(TAG, "concat failed or cancelled, rc=" + rc + ", outputPath=" + outputPath);
+                deleteQuietly(new File(outputPath));
+                return false;
+            }
+            return true;
+        } catch (Throwable t) {
+            Log.e(TAG, "Error concatenating parts", t);
+            deleteQuietly(new File(outputPath));
+            return false;
+        } finally {
+            deleteQuietly(listFile);
+            deleteQuietly(chapterFile);
+        }
+    }
+
+    /**
+     * 异步执行 FFmpeg 并等待结束，等待期间定时上报进度、检查取消标记
+     *
+     * @return FFmpeg 返回码
+     */
+    private static int execute(String[] cmd, long totalBytes, DownloadCallback callback, AtomicBoolean cancelled) {
+        AtomicInteger returnCode = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        long executionId = FFmpeg.executeAsync(cmd, (id, rc) -> {
+            returnCode.set(rc);
+            latch.countDown();
+        }, ffmpegExecutor);
+
+        long lastSize = 0;
+        try {
+            while (!latch.await(PROGRESS_INTERVAL_MS, MILLISECONDS)) {
+                if (cancelled != null && cancelled.get()) {
+                    FFmpeg.cancel(executionId);
+                    continue;
+                }
+                Statistics statistics = Config.getLastReceivedStatistics(executionId);
+                if (callback != null && statistics != null) {
+                    long size = Math.min(statistics.getSize(), totalBytes);
+                    double speed = (size - lastSize) / 1024.0 / (PROGRESS_INTERVAL_MS / 1000.0);
+                    lastSize = size;
+                    callback.onProgressUpdate(size, totalBytes, speed);
+                }
+            }
+        } catch (InterruptedException e) {
+            // 等待线程被中断时一并中止 FFmpeg，避免继续写入已放弃的输出文件
+            FFmpeg.cancel(executionId);
+            Thread.currentThread().interrupt();
+            return RETURN_CODE_CANCEL;
+        }
+        return returnCode.get();
+    }
+
+    private static long totalSize(List<Pair<String, String>> parts) {
+        long total = 0;
+        for (Pair<String, String> part : parts) {
+            total += new File(part.getKey()).length();
+        }
+        return total;
+    }
+
+    /**
+     * 检查所有分P的编码参数是否一致，同时读取每个分P的时长
+     */
+    private static boolean checkCompatible(List<Pair<String, String>> parts, long[] durationsUs) {
+        MediaFormat[] reference = null;
+        for (int i = 0; i < parts.size(); i++) {
+            String path = parts.get(i).getKey();
+            MediaExtractor extractor = new MediaExtractor();
+            try {
+                extractor.setDataSource(path);
+                MediaFormat video = findTrack(extractor, "video/");
+                MediaFormat audio = findTrack(extractor, "audio/");
+                if (video == null || audio == null) {
+                    Log.w(TAG, "missing track, path=" + path);
+                    return false;
+                }
+
+                durationsUs[i] = Math.max(getLong(video, KEY_DURATION), getLong(audio, KEY_DURATION));
+                if (reference == null) {
+                    reference = new MediaFormat[]{video, audio};
+                } else if (!sameVideo(reference[0], video) || !sameAudio(reference[1], audio)) {
+                    Log.w(TAG, "incompatible codec parameters, path=" + path);
+                    return false;
+                }
+            } catch (Throwable t) {
+                Log.e(TAG, "read track format failed, path=" + path, t);
+                return false;
+            } finally {
+                extractor.release();
+            }
+        }
+        return true;
+    }
+
+    private static MediaFormat findTrack(MediaExtractor extractor, String minePrefix) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat mediaFormat = extractor.getTrackFormat(i);
+            String mime = mediaFormat.getString(KEY_MIME);
+            if (mime != null && mime.startsWith(minePrefix)) {
+                return mediaFormat;
+            }
+        }
+        return null;
+    }
+
+    private static boolean sameVideo(MediaFormat a, MediaFormat b) {
+        return Objects.equals(a.getString(KEY_MIME), b.getString(KEY_MIME))
+                && getInt(a, KEY_WIDTH) == getInt(b, KEY_WIDTH)
+                && getInt(a, KEY_HEIGHT) == getInt(b, KEY_HEIGHT);
+    }
+
+    private static boolean sameAudio(MediaFormat a, MediaFormat b) {
+        return Objects.equals(a.getString(KEY_MIME), b.getString(KEY_MIME))
+                && getInt(a, KEY_SAMPLE_RATE) == getInt(b, KEY_SAMPLE_RATE)
+                && getInt(a, KEY_CHANNEL_COUNT) == getInt(b, KEY_CHANNEL_COUNT);
+    }
+
+    private static int getInt(MediaFormat mediaFormat, String key) {
+        return mediaFormat.containsKey(key) ? mediaFormat.getInteger(key) : 0;
+    }
+
+    private static long getLong(MediaFormat mediaFormat, String key) {
+        return mediaFormat.containsKey(key) ? mediaFormat.getLong(key) : 0;
+    }
+
+    /**
+     * 写入 concat 分离器的文件列表
+     */
+    private static void writeConcatList(List<Pair<String, String>> parts, File listFile) throws Exception {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(listFile), StandardCharsets.UTF_8)) {
+            for (Pair<String, String> part : parts) {
+                writer.write("file '" + part.getKey().replace("'", "'\\''") + "'\n");
+            }
+        }
+    }
+
+    /**
+     * 写入 FFMETADATA 格式的章节文件，章节起止时间按分P时长累加
+     */
+    private static void writeChapters(List<Pair<String, String>> parts, long[] durationsUs, File chapterFile) throws Exception {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(chapterFile), StandardCharsets.UTF_8)) {
+            writer.write(";FFMETADATA1\n");
+            long startUs = 0;
+            for (int i = 0; i < parts.size(); i++) {
+                long endUs = startUs + durationsUs[i];
+                writer.write("[CHAPTER]\n");
+                writer.write("TIMEBASE=1/1000000\n");
+                writer.write("START=" + startUs + "\n");
+                writer.write("END=" + endUs + "\n");
+                writer.write("title=" + escapeMetadata(parts.get(i).getValue()) + "\n");
+                startUs = endUs;
+            }
+        }
+    }
+
+    private static String escapeMetadata(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replaceAll("([=;#\\\\\\n])", "\\\\$1");
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "delete file failed, file=" + file);
+        }
+    }
+}
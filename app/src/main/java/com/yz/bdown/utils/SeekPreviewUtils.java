@@ -0,0 +1,457 @@
+package com.yz.bdown.utils;
+
+import static android.media.MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible;
+import static android.media.MediaExtractor.SEEK_TO_PREVIOUS_SYNC;
+import static android.media.MediaFormat.KEY_COLOR_FORMAT;
+import static android.media.MediaFormat.KEY_DURATION;
+import static android.media.MediaFormat.KEY_HEIGHT;
+import static android.media.MediaFormat.KEY_MIME;
+import static android.media.MediaFormat.KEY_ROTATION;
+import static android.media.MediaFormat.KEY_WIDTH;
+import static android.media.MediaMetadataRetriever.OPTION_PREVIOUS_SYNC;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 拖动进度条预览图工具类
+ * 按固定间隔截取低分辨率画面拼成一张雪碧图，保存在缩略图缓存目录中
+ * 截取时只解码关键帧，按时间顺序跳到每个间隔前的关键帧，同一个解码器依次解码，开销接近顺序读一遍文件
+ * 带旋转角度的视频按显示方向截取
+ */
+public class SeekPreviewUtils {
+    private static final String TAG = "SeekPreviewUtils";
+
+    // 截取间隔：至少 5 秒一帧，长视频增大间隔使帧数不超过上限
+    private static final long MIN_INTERVAL_MS = 5000;
+    private static final int MAX_FRAMES = 120;
+    private static final int COLUMNS = 10;
+    private static final int FRAME_WIDTH = 160;
+    private static final int JPEG_QUALITY = 70;
+    private static final long CODEC_TIMEOUT_US = 10_000;
+    // 单帧解码最多等待的次数，超过后放弃该帧
+    private static final int MAX_DRAIN_TRIES = 100;
+    // 雪碧图格式版本，截取方式变化后使旧的磁盘缓存失效
+    private static final int SHEET_VERSION = 2;
+
+    // 雪碧图较大，内存中只保留最近使用的两张
+    private static final LruCache<String, Sheet> memoryCache = new LruCache<>(2);
+    // 按缓存键加锁，同一视频只截取一次，不同视频可以并行截取
+    private static final Map<String, Object> decodeLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 预览雪碧图
+     */
+    public static class Sheet {
+        private final Bitmap bitmap;
+        private final long intervalMs;
+        private final int frameCount;
+        private final int frameWidth;
+        private final int frameHeight;
+
+        Sheet(Bitmap bitmap, long intervalMs, int frameCount) {
+            this.bitmap = bitmap;
+            this.intervalMs = intervalMs;
+            this.frameCount = frameCount;
+            this.frameWidth = bitmap.getWidth() / COLUMNS;
+            this.frameHeight = bitmap.getHeight() / rows(frameCount);
+        }
+
+        public Bitmap getBitmap() {
+            return bitmap;
+        }
+
+        public int getFrameWidth() {
+            return frameWidth;
+        }
+
+        public int getFrameHeight() {
+            return frameHeight;
+        }
+
+        /**
+         * 播放位置对应的帧序号
+         */
+        public int getFrameIndex(long positionMs) {
+            return (int) Math.max(0, Math.min(frameCount - 1, positionMs / intervalMs));
+        }
+
+        /**
+         * 帧在雪碧图中的区域
+         */
+        public void getFrameRect(int index, Rect out) {
+            int left = (index % COLUMNS) * frameWidth;
+            int top = (index / COLUMNS) * frameHeight;
+            out.set(left, top, left + frameWidth, top + frameHeight);
+        }
+    }
+
+    /**
+     * 获取预览雪碧图，依次查找内存缓存、磁盘缓存，最后从视频截取，需在后台线程调用
+     *
+     * @param context      上下文
+     * @param videoPath    视频路径
+     * @param lastModified 视频修改时间，文件被覆盖后缓存自动失效
+     * @return 雪碧图，失败返回 null
+     */
+    public static Sheet getSheet(Context context, String videoPath, long lastModified) {
+        String key = cacheKey(videoPath, lastModified);
+        Sheet sheet = memoryCache.get(key);
+        if (sheet != null) {
+            return sheet;
+        }
+
+        Object lock = decodeLocks.computeIfAbsent(key, k -> new Object());
+        try {
+            synchronized (lock) {
+                sheet = memoryCache.get(key);
+                if (sheet != null) {
+                    return sheet;
+                }
+
+                VideoInfo info = readVideoInfo(videoPath);
+                if (info == null) {
+                    return null;
+                }
+
+                File diskFile = new File(VideoThumbnailUtils.getDiskCacheDir(context),
+                        VideoThumbnailUtils.diskFileName(key) + "_sprite.jpg");
+                Bitmap bitmap = null;
+                if (diskFile.exists()) {
+                    BitmapFactory.Options options = new BitmapFactory.Options();
+                    options.inPreferredConfig = Bitmap.Config.RGB_565;
+                    bitmap = BitmapFactory.decodeFile(diskFile.getAbsolutePath(), options);
+                }
+                if (bitmap == null) {
+                    long start = System.currentTimeMillis();
+                    bitmap = extractSheet(videoPath, info);
+                    if (bitmap == null) {
+                        return null;
+                    }
+                    Log.i(TAG, "extract sprite sheet, frames=" + info.frameCount + ", cost="
+                            + (System.currentTimeMillis() - start) + "ms, path=" + videoPath);
+                    writeDiskCache(diskFile, bitmap);
+                }
+
+                sheet = new Sheet(bitmap, info.intervalMs, info.frameCount);
+                memoryCache.put(key, sheet);
+                return sheet;
+            }
+        } finally {
+            decodeLocks.remove(key);
+        }
+    }
+
+    /**
+     * 截取雪碧图，MediaCodec 不可用时退回 MediaMetadataRetriever 逐帧截取
+     */
+    private static Bitmap extractSheet(String videoPath, VideoInfo info) {
+        Bitmap sheet = Bitmap.createBitmap(COLUMNS * info.frameWidth, rows(info.frameCount) * info.frameHeight,
+                Bitmap.Config.RGB_565);
+        if (decodeKeyFrames(videoPath, info, sheet)) {
+            return sheet;
+        }
+        Log.w(TAG, "decode key frames failed, fallback to retriever, path=" + videoPath);
+        return retrieveFrames(videoPath, info, sheet) ? sheet : null;
+    }
+
+    /**
+     * 按时间顺序跳到每个间隔前的关键帧，只把关键帧送入解码器，解码后缩放写入雪碧图
+     */
+    private static boolean decodeKeyFrames(String videoPath, VideoInfo info, Bitmap sheet) {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(videoPath);
+            extractor.selectTrack(info.trackIndex);
+            MediaFormat format = extractor.getTrackFormat(info.trackIndex);
+            format.setInteger(KEY_COLOR_FORMAT, COLOR_FormatYUV420Flexible);
+            codec = MediaCodec.createDecoderByType(format.getString(KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            int[] pixels = new int[info.frameWidth * info.frameHeight];
+            MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+            long lastKeyFrameUs = -1;
+            boolean hasFrame = false;
+            boolean anyFrame = false;
+            for (int i = 0; i < info.frameCount; i++) {
+                extractor.seekTo(i * info.intervalMs * 1000, SEEK_TO_PREVIOUS_SYNC);
+                long sampleTimeUs = extractor.getSampleTime();
+                if (sampleTimeUs < 0) {
+                    break;
+                }
+
+                // 与上一帧落在同一个关键帧时直接复用上一帧的像素
+                if (sampleTimeUs != lastKeyFrameUs) {
+                    hasFrame = decodeFrame(extractor, codec, bufferInfo, info, pixels);
+                    codec.flush();
+                    lastKeyFrameUs = sampleTimeUs;
+                }
+                if (hasFrame) {
+                    sheet.setPixels(pixels, 0, info.frameWidth, (i % COLUMNS) * info.frameWidth,
+                            (i / COLUMNS) * info.frameHeight, info.frameWidth, info.frameHeight);
+                    anyFrame = true;
+                }
+            }
+            return anyFrame;
+        } catch (Throwable t) {
+            Log.w(TAG, "decode key frames err, path=" + videoPath, t);
+            return false;
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (Exception e) {
+                    Log.w(TAG, "stop codec failed", e);
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    /**
+     * 送入当前关键帧并发送结束标记，取出解码结果
+     */
+    private static boolean decodeFrame(MediaExtractor extractor,
+                                       MediaCodec codec,
+                                       MediaCodec.BufferInfo bufferInfo,
+                                       VideoInfo info,
+                                       int[] pixels) {
+        boolean sampleQueued = false;
+        boolean inputDone = false;
+        for (int tries = 0; tries < MAX_DRAIN_TRIES; tries++) {
+            if (!inputDone) {
+                int inputIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                if (inputIndex >= 0) {
+                    if (!sampleQueued) {
+                        ByteBuffer inputBuffer = codec.getInputBuffer(inputIndex);
+                        int size = extractor.readSampleData(inputBuffer, 0);
+                        codec.queueInputBuffer(inputIndex, 0, Math.max(size, 0), extractor.getSampleTime(), 0);
+                        sampleQueued = true;
+                    } else {
+                        codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    }
+                }
+            }
+
+            int outputIndex = codec.dequeueOutputBuffer(bufferInfo, CODEC_TIMEOUT_US);
+            if (outputIndex < 0) {
+                continue;
+            }
+            try {
+                if (bufferInfo.size > 0) {
+                    Image image = codec.getOutputImage(outputIndex);
+                    if (image == null) {
+                        throw new IllegalStateException("decoder does not support flexible YUV output");
+                    }
+                    scaleToRgb(image, info.frameWidth, info.frameHeight, info.rotation, pixels);
+                    return true;
+                }
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return false;
+                }
+            } finally {
+                codec.releaseOutputBuffer(outputIndex, false);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * YUV420 图像按最近邻缩放并转换为 RGB，同时按旋转角度转为显示方向
+     *
+     * @param width    输出宽度，已按旋转角度交换
+     * @param height   输出高度
+     * @param rotation 顺时针旋转角度，0/90/180/270
+     */
+    private static void scaleToRgb(Image image, int width, int height, int rotation, int[] pixels) {
+        Rect crop = image.getCropRect();
+        Image.Plane[] planes = image.getPlanes();
+        ByteBuffer yBuffer = planes[0].getBuffer();
+        ByteBuffer uBuffer = planes[1].getBuffer();
+        ByteBuffer vBuffer = planes[2].getBuffer();
+        int yRowStride = planes[0].getRowStride();
+        int yPixelStride = planes[0].getPixelStride();
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+
+        int cropWidth = crop.width();
+        int cropHeight = crop.height();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // 输出像素反向旋转到解码画面中的位置
+                int sx, sy;
+                switch (rotation) {
+                    case 90:
+                        sx = y * cropWidth / height;
+                        sy = (width - 1 - x) * cropHeight / width;
+                        break;
+                    case 180:
+                        sx = (width - 1 - x) * cropWidth / width;
+                        sy = (height - 1 - y) * cropHeight / height;
+                        break;
+                    case 270:
+                        sx = (height - 1 - y) * cropWidth / height;
+                        sy = x * cropHeight / width;
+                        break;
+                    default:
+                        sx = x * cropWidth / width;
+                        sy = y * cropHeight / height;
+                        break;
+                }
+                sx += crop.left;
+                sy += crop.top;
+                int lum = yBuffer.get(sy * yRowStride + sx * yPixelStride) & 0xff;
+                int uvIndex = (sy >> 1) * uvRowStride + (sx >> 1) * uvPixelStride;
+                int u = (uBuffer.get(uvIndex) & 0xff) - 128;
+                int v = (vBuffer.get(uvIndex) & 0xff) - 128;
+
+                // BT.601 有限范围
+                int c = Math.max(lum - 16, 0) * 1192;
+                int r = clamp((c + 1634 * v) >> 10);
+                int g = clamp((c - 833 * v - 400 * u) >> 10);
+                int b = clamp((c + 2066 * u) >> 10);
+                pixels[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+
+    /**
+     * 逐帧截取关键帧，速度较慢，仅在设备解码器不支持时使用
+     */
+    private static boolean retrieveFrames(String videoPath, VideoInfo info, Bitmap sheet) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(videoPath);
+            Canvas canvas = new Canvas(sheet);
+            Rect dst = new Rect();
+            boolean hasFrame = false;
+            for (int i = 0; i < info.frameCount; i++) {
+                Bitmap frame = retriever.getScaledFrameAtTime(i * info.intervalMs * 1000, OPTION_PREVIOUS_SYNC,
+                        info.frameWidth, info.frameHeight);
+                if (frame == null) {
+                    continue;
+                }
+                int left = (i % COLUMNS) * info.frameWidth;
+                int top = (i / COLUMNS) * info.frameHeight;
+                dst.set(left, top, left + info.frameWidth, top + info.frameHeight);
+                canvas.drawBitmap(frame, null, dst, null);
+                frame.recycle();
+                hasFrame = true;
+            }
+            return hasFrame;
+        } catch (Exception e) {
+            Log.e(TAG, "retrieve frames failed, path=" + videoPath, e);
+            return false;
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception e) {
+                Log.w(TAG, "release retriever failed", e);
+            }
+        }
+    }
+
+    /**
+     * 读取视频轨道信息并计算截取间隔与帧尺寸
+     */
+    private static VideoInfo readVideoInfo(String videoPath) {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(videoPath);
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(KEY_MIME);
+                if (mime == null || !mime.startsWith("video/") || !format.containsKey(KEY_DURATION)) {
+                    continue;
+                }
+
+                long durationMs = format.getLong(KEY_DURATION) / 1000;
+                int width = format.getInteger(KEY_WIDTH);
+                int height = format.getInteger(KEY_HEIGHT);
+                if (durationMs <= 0 || width <= 0 || height <= 0) {
+                    return null;
+                }
+
+                VideoInfo info = new VideoInfo();
+                info.trackIndex = i;
+                // 竖屏拍摄的视频以横向画面存储并带旋转角度，帧尺寸按显示方向计算
+                int rotation = format.containsKey(KEY_ROTATION) ? format.getInteger(KEY_ROTATION) : 0;
+                info.rotation = (rotation % 360 + 360) % 360;
+                if (info.rotation == 90 || info.rotation == 270) {
+                    int swap = width;
+                    width = height;
+                    height = swap;
+                }
+                // 间隔取整秒，帧数不超过上限
+                long interval = Math.max(MIN_INTERVAL_MS, (durationMs + MAX_FRAMES - 1) / MAX_FRAMES);
+                info.intervalMs = (interval + 999) / 1000 * 1000;
+                info.frameCount = (int) Math.min(MAX_FRAMES, durationMs / info.intervalMs + 1);
+                info.frameWidth = FRAME_WIDTH;
+                info.frameHeight = Math.max(2, FRAME_WIDTH * height / width / 2 * 2);
+                return info;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "read video info failed, path=" + videoPath, e);
+        } finally {
+            extractor.release();
+        }
+        return null;
+    }
+
+    private static void writeDiskCache(File diskFile, Bitmap bitmap) {
+        try (FileOutputStream fos = new FileOutputStream(diskFile)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, fos);
+        } catch (Exception e) {
+            Log.w(TAG, "写入预览图缓存失败: " + diskFile.getName(), e);
+            diskFile.delete();
+        }
+    }
+
+    private static int rows(int frameCount) {
+        return (frameCount + COLUMNS - 1) / COLUMNS;
+    }
+
+    /**
+     * 内存缓存键，磁盘文件名取其哈希
+     */
+    private static String cacheKey(String videoPath, long lastModified) {
+        return videoPath + "@" + lastModified + "@sprite" + SHEET_VERSION;
+    }
+
+    /**
+     * 视频轨道信息与截取参数
+     */
+    private static class VideoInfo {
+        int trackIndex;
+        long intervalMs;
+        int frameCount;
+        int frameWidth;
+        int frameHeight;
+        int rotation; // 顺时针旋转角度
+    }
+}
@@ -0,0 +1,120 @@
+package com.yz.bdown.utils;
+
+import static com.yz.bdown.contents.BilibiliConstants.REFERER;
+import static com.yz.bdown.contents.BilibiliConstants.USER_AGENT;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.OptIn;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.database.StandaloneDatabaseProvider;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DefaultHttpDataSource;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.CacheKeyFactory;
+import androidx.media3.datasource.cache.LeastRecentlyUsedCacheEvictor;
+import androidx.media3.datasource.cache.SimpleCache;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * 在线播放缓存工具类
+ * 在线播放时把读到的音视频数据写入大小受限的 SimpleCache，之后下载同一条流时优先读取已缓存的部分
+ */
+@OptIn(markerClass = UnstableApi.class)
+public class StreamCacheUtils {
+    private static final String TAG = "StreamCacheUtils";
+
+    private static final String CACHE_FOLDER = "stream_cache";
+    private static final long MAX_CACHE_BYTES = 200L * 1024 * 1024;
+
+    // 播放地址带有过期时间与签名参数且镜像域名不固定，缓存键只取路径，地址刷新后仍能命中
+    private static final CacheKeyFactory CACHE_KEY_FACTORY = dataSpec -> cacheKey(dataSpec.uri);
+
+    private static volatile SimpleCache cache;
+    private static volatile Context appContext; // 用于在下载线程上按需打开缓存
+
+    /**
+     * 记录应用上下文，应用启动时调用；缓存在首次使用时才打开，不在主线程读取磁盘
+     */
+    public static void init(Context context) {
+        appContext = context.getApplicationContext();
+    }
+
+    /**
+     * 获取缓存实例，同一目录只能创建一个 SimpleCache
+     */
+    public static SimpleCache getCache(Context context) {
+        if (cache == null) {
+            synchronized (StreamCacheUtils.class) {
+                if (cache == null) {
+                    Context appContext = context.getApplicationContext();
+                    cache = new SimpleCache(new File(appContext.getCacheDir(), CACHE_FOLDER),
+                            new LeastRecentlyUsedCacheEvictor(MAX_CACHE_BYTES),
+                            new StandaloneDatabaseProvider(appContext));
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * 在线播放使用的数据源工厂：读缓存，未命中时请求网络并写入缓存
+     */
+    public static DataSource.Factory playbackDataSourceFactory(Context context) {
+        return new CacheDataSource.Factory()
+                .setCache(getCache(context))
+                .setCacheKeyFactory(CACHE_KEY_FACTORY)
+                .setUpstreamDataSourceFactory(httpDataSourceFactory())
+                .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR);
+    }
+
+    /**
+     * 下载时使用的数据源：只读缓存，未缓存的部分请求网络但不写入缓存，避免整段下载挤掉其他预览
+     *
+     * @param url 下载地址
+     * @return 数据源，未调用 init 或没有该地址的缓存时返回 null
+     */
+    public static DataSource openCachedReader(String url) {
+        SimpleCache current = cache;
+        try {
+            // 本次进程还未在线播放过时打开缓存，复用之前进程缓存的数据
+            if (current == null) {
+                Context context = appContext;
+                if (context == null) {
+                    return null;
+                }
+                current = getCache(context);
+            }
+            if (current.getCachedSpans(cacheKey(Uri.parse(url))).isEmpty()) {
+                return null;
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "open stream cache failed, url=" + url, t);
+            return null;
+        }
+
+        return new CacheDataSource.Factory()
+                .setCache(current)
+                .setCacheKeyFactory(CACHE_KEY_FACTORY)
+                .setUpstreamDataSourceFactory(httpDataSourceFactory())
+                .setCacheWriteDataSinkFactory(null)
+                .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR)
+                .createDataSource();
+    }
+
+    private static DataSource.Factory httpDataSourceFactory() {
+        return new DefaultHttpDataSource.Factory()
+                .setUserAgent(USER_AGENT)
+                .setDefaultRequestProperties(Map.of("Referer", REFERER))
+                .setAllowCrossProtocolRedirects(true);
+    }
+
+    private static String cacheKey(Uri uri) {
+        String path = uri.getPath();
+        return path != null ? path : uri.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package com.yz.bdown.utils;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * 流式增量缓冲区
+ * 网络线程不断追加推理与回答的增量，界面线程按最小间隔一次性取出，合并为一次界面更新
+ * 线程安全，不依赖 Android，便于在 JVM 上测试
+ */
+public class StreamDeltaBuffer {
+
+    private final StringBuilder reasoning = new StringBuilder();
+    private final StringBuilder content = new StringBuilder();
+    private final long minIntervalMs;
+    private long lastDrainMs = Long.MIN_VALUE / 2;
+
+    /**
+     * @param minIntervalMs 两次取出之间的最小间隔，0 表示只受帧率限制
+     */
+    public StreamDeltaBuffer(long minIntervalMs) {
+        this.minIntervalMs = Math.max(0, minIntervalMs);
+    }
+
+    /**
+     * 追加增量，可在任意线程调用
+     *
+     * @param reasoningDelta 推理增量（可能为null）
+     * @param contentDelta   回答增量（可能为null）
+     * @return 追加前缓冲区是否为空，为空时调用方需要安排一次取出
+     */
+    public synchronized boolean append(String reasoningDelta, String contentDelta) {
+        boolean wasEmpty = isEmptyLocked();
+        if (reasoningDelta != null) {
+            reasoning.append(reasoningDelta);
+        }
+        if (contentDelta != null) {
+            content.append(contentDelta);
+        }
+        return wasEmpty && !isEmptyLocked();
+    }
+
+    public synchronized boolean isEmpty() {
+        return isEmptyLocked();
+    }
+
+    /**
+     * 距离下次允许取出还需等待的时间
+     *
+     * @param nowMs 当前时间
+     * @return 等待毫秒数，0 表示现在即可取出
+     */
+    public synchronized long delayUntilDue(long nowMs) {
+        return Math.max(0, lastDrainMs + minIntervalMs - nowMs);
+    }
+
+    /**
+     * 取出并清空缓冲的增量
+     *
+     * @param nowMs 当前时间，用于计算下次取出的间隔
+     * @return 左为推理增量、右为回答增量，没有内容的一侧为 null；缓冲区为空时返回 null
+     */
+    public synchronized Pair<String, String> drain(long nowMs) {
+        if (isEmptyLocked()) {
+            return null;
+        }
+        lastDrainMs = nowMs;
+        String reasoningDelta = reasoning.length() > 0 ? reasoning.toString() : null;
+        String contentDelta = content.length() > 0 ? content.toString() : null;
+        reasoning.setLength(0);
+        content.setLength(0);
+        return Pair.of(reasoningDelta, contentDelta);
+    }
+
+    private boolean isEmptyLocked() {
+        return reasoning.length() == 0 && content.length() == 0;
+    }
+}
@@ -0,0 +1,102 @@
+package com.yz.bdown.utils;
+
+/**
+ * 本地 token 计数工具类
+ * 按 DeepSeek 分词器的预切分规则（英文单词、数字每 3 位、空白、标点、汉字）切分文本，
+ * 汉字按官方给出的换算比例计 0.6 token；英文单词 6 个字母以内计 1 token，
+ * 更长的单词按（字母数 - 2）× 0.25 token 计，即平均每个字母不超过 0.25 token
+ * 不依赖词表，结果为略偏大的估算，用于控制上下文长度
+ */
+public class TokenCountUtils {
+
+    // 每条消息在对话模板中的额外开销（角色标记与分隔符）
+    public static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    // 以下以 0.1 token 为单位
+    private static final int TOKEN = 10;                // 标点、符号、换行等单独成词的字符
+    private static final int CJK_CHAR = 6;              // 汉字
+    private static final int WORD_LETTER = 25;          // 单词每个字母 0.25 token（不计前 2 个字母），见 countWord
+    private static final int SUPPLEMENTARY_CHAR = 20;   // emoji 等增补平面字符，按字节回退通常拆成 2 个 token
+
+    /**
+     * 计算一条消息的 token 数，包含消息模板开销
+     */
+    public static int countMessage(String content) {
+        return MESSAGE_OVERHEAD_TOKENS + count(content);
+    }
+
+    /**
+     * 估算文本的 token 数
+     *
+     * @param text 文本，null 视为空
+     * @return token 数
+     */
+    public static int count(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+
+        long tenths = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            int start = i;
+            if (isAsciiLetter(c)) {
+                while (i < length && isAsciiLetter(text.charAt(i))) {
+                    i++;
+                }
+                tenths += countWord(i - start);
+            } else if (c >= '0' && c <= '9') {
+                // 数字每 3 位一个 token
+                while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                    i++;
+                }
+                tenths += (i - start + 2) / 3 * TOKEN;
+            } else if (c == ' ') {
+                // 单个空格并入后面的单词，连续空格（如代码缩进）合成一个 token
+                while (i < length && text.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i - start > 1) {
+                    tenths += TOKEN;
+                }
+            } else if (c == '\n' || c == '\r' || c == '\t') {
+                while (i < length && isLineWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                tenths += TOKEN;
+            } else if (isCjk(c)) {
+                tenths += CJK_CHAR;
+                i++;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                tenths += SUPPLEMENTARY_CHAR;
+                i += 2;
+            } else {
+                // ASCII 标点、全角标点、其他文字按每个字符一个 token 计
+                tenths += TOKEN;
+                i++;
+            }
+        }
+        return (int) ((tenths + 9) / 10);
+    }
+
+    /**
+     * 6 个字母以内的常见单词与标识符片段是一个 token，更长的单词每多一个字母约增加 0.25 token
+     */
+    private static int countWord(int letters) {
+        return Math.max(TOKEN, (letters - 2) * WORD_LETTER / 10);
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isLineWhitespace(char c) {
+        return c == '\n' || c == '\r' || c == '\t' || c == ' ';
+    }
+
+    private static boolean isCjk(char c) {
+        return (c >= 0x4E00 && c <= 0x9FFF) || (c >= 0x3400 && c <= 0x4DBF) || (c >= 0xF900 && c <= 0xFAFF);
+    }
+}
@@ -0,0 +1,229 @@
+package com.yz.bdown.utils;
+
+import static android.media.MediaMetadataRetriever.OPTION_CLOSEST_SYNC;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 视频缩略图工具类
+ * 两级缓存：内存中按字节数限制大小的 LRU，磁盘上按 路径+修改时间+尺寸 保存的小尺寸 JPEG
+ * 内存缓存直接以 路径@修改时间@尺寸 为键，绑定列表项时不做哈希；只在后台读写磁盘时把键哈希为文件名
+ * 缩略图通过 getScaledFrameAtTime 按网格大小直接解码，不生成原尺寸帧
+ */
+public class VideoThumbnailUtils {
+    private static final String TAG = "VideoThumbnailUtils";
+
+    private static final String DISK_CACHE_FOLDER = "thumbnails";
+    private static final long MAX_DISK_CACHE_BYTES = 50L * 1024 * 1024;
+    private static final int JPEG_QUALITY = 80;
+    // 文件列表为两列网格，缩略图高度 120dp
+    private static final int GRID_COLUMNS = 2;
+    private static final int GRID_HEIGHT_DP = 120;
+    // 每写入多少个文件检查一次磁盘缓存大小
+    private static final int TRIM_INTERVAL = 20;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // 内存缓存使用最大堆的 1/16，按位图实际占用字节计算
+    private static final LruCache<String, Bitmap> memoryCache =
+            new LruCache<String, Bitmap>((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16)) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getAllocationByteCount();
+                }
+            };
+
+    // 同一缩略图同时只解码一次
+    private static final Map<String, Object> decodeLocks = new ConcurrentHashMap<>();
+    private static final AtomicInteger writeCount = new AtomicInteger();
+
+    /**
+     * 从内存缓存获取缩略图，可在主线程调用
+     *
+     * @return 缩略图，未缓存返回 null
+     */
+    public static Bitmap getCached(String videoPath, long lastModified, int width, int height) {
+        return memoryCache.get(cacheKey(videoPath, lastModified, width, height));
+    }
+
+    /**
+     * 获取缩略图，依次查找内存缓存、磁盘缓存，最后从视频解码，需在后台线程调用
+     *
+     * @param context      上下文
+     * @param videoPath    视频路径
+     * @param lastModified 视频修改时间，文件被覆盖后缓存自动失效
+     * @param width        目标宽度
+     * @param height       目标高度
+     * @return 缩略图，失败返回 null
+     */
+    public static Bitmap getThumbnail(Context context, String videoPath, long lastModified, int width, int height) {
+        String key = cacheKey(videoPath, lastModified, width, height);
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        Object lock = decodeLocks.computeIfAbsent(key, k -> new Object());
+        try {
+            synchronized (lock) {
+                bitmap = memoryCache.get(key);
+                if (bitmap != null) {
+                    return bitmap;
+                }
+
+                File diskFile = new File(getDiskCacheDir(context), diskFileName(key) + ".jpg");
+                if (diskFile.exists()) {
+                    bitmap = BitmapFactory.decodeFile(diskFile.getAbsolutePath());
+                }
+                if (bitmap == null) {
+                    bitmap = decodeFrame(videoPath, width, height);
+                    if (bitmap != null) {
+                        writeDiskCache(context, diskFile, bitmap);
+                    }
+                }
+                if (bitmap != null) {
+                    memoryCache.put(key, bitmap);
+                }
+                return bitmap;
+            }
+        } finally {
+            decodeLocks.remove(key);
+        }
+    }
+
+    /**
+     * 文件列表网格单元的缩略图宽度（像素）
+     */
+    public static int getGridWidth(Context context) {
+        return context.getResources().getDisplayMetrics().widthPixels / GRID_COLUMNS;
+    }
+
+    /**
+     * 文件列表网格单元的缩略图高度（像素）
+     */
+    public static int getGridHeight(Context context) {
+        return (int) (GRID_HEIGHT_DP * context.getResources().getDisplayMetrics().density);
+    }
+
+    /**
+     * 清空内存缓存，磁盘缓存保留
+     */
+    public static void clearMemoryCache() {
+        memoryCache.evictAll();
+    }
+
+    /**
+     * 按目标尺寸解码视频帧，保持宽高比缩放到目标尺寸以内
+     */
+    private static Bitmap decodeFrame(String videoPath, int width, int height) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(videoPath);
+            return retriever.getScaledFrameAtTime(0, OPTION_CLOSEST_SYNC, width, height);
+        } catch (Exception e) {
+            Log.e(TAG, "解码视频帧失败: " + videoPath, e);
+            return null;
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception e) {
+                Log.w(TAG, "release retriever failed", e);
+            }
+        }
+    }
+
+    private static void writeDiskCache(Context context, File diskFile, Bitmap bitmap) {
+        try (FileOutputStream fos = new FileOutputStream(diskFile)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, fos);
+        } catch (Exception e) {
+            Log.w(TAG, "写入缩略图缓存失败: " + diskFile.getName(), e);
+            diskFile.delete();
+            return;
+        }
+
+        if (writeCount.incrementAndGet() % TRIM_INTERVAL == 0) {
+            trimDiskCache(getDiskCacheDir(context));
+        }
+    }
+
+    /**
+     * 磁盘缓存超过上限时删除最久未修改的文件
+     */
+    private static void trimDiskCache(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_DISK_CACHE_BYTES) {
+            return;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= MAX_DISK_CACHE_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    /**
+     * 缩略图磁盘缓存目录，拖动预览雪碧图也保存在此目录
+     */
+    static File getDiskCacheDir(Context context) {
+        File dir = new File(context.getCacheDir(), DISK_CACHE_FOLDER);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "创建缩略图缓存目录失败: " + dir.getAbsolutePath());
+        }
+        return dir;
+    }
+
+    /**
+     * 内存缓存键，主线程绑定列表项时调用，只做字符串拼接
+     */
+    private static String cacheKey(String videoPath, long lastModified, int width, int height) {
+        return videoPath + "@" + lastModified + "@" + width + "x" + height;
+    }
+
+    /**
+     * 磁盘缓存文件名：缓存键的 SHA-1，只在后台线程调用
+     */
+    static String diskFileName(String key) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            return String.valueOf(key.hashCode());
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
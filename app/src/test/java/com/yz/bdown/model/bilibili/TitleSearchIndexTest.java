@@ -0,0 +1,139 @@
+package com.yz.bdown.model.bilibili;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 标题搜索索引测试
+ * 拼音由固定的对照表提供，不依赖系统 ICU
+ */
+public class TitleSearchIndexTest {
+
+    private static final Map<Character, String> PINYIN = new HashMap<>();
+
+    static {
+        PINYIN.put('动', "dong");
+        PINYIN.put('画', "hua");
+        PINYIN.put('音', "yin");
+        PINYIN.put('乐', "yue");
+        PINYIN.put('新', "xin");
+        PINYIN.put('旧', "jiu");
+        PINYIN.put('标', "biao");
+        PINYIN.put('题', "ti");
+    }
+
+    private static TitleSearchIndex<String> newIndex() {
+        return new TitleSearchIndex<>(PINYIN::get);
+    }
+
+    @Test
+    public void rankTitleBeforePinyinBeforeFuzzy() {
+        TitleSearchIndex<String> index = newIndex();
+        index.put("fuzzy", "dongh.mp4", "fuzzy");
+        index.put("pinyin", "动画.mp4", "pinyin");
+        index.put("inner", "我的donghua合集.mp4", "inner");
+        index.put("prefix", "donghua第一集.mp4", "prefix");
+
+        // 标题前缀 > 标题子串 > 拼音 > 二元组部分重合
+        assertEquals(Arrays.asList("prefix", "inner", "pinyin", "fuzzy"), index.search("donghua"));
+        // 首字母与汉字也能匹配
+        assertEquals(Collections.singletonList("pinyin"), index.search("dh"));
+        assertEquals(Collections.singletonList("pinyin"), index.search("动画"));
+    }
+
+    @Test
+    public void tolerateTypoByBigrams() {
+        TitleSearchIndex<String> index = newIndex();
+        index.put("a", "Download Guide.mp4", "a");
+        index.put("b", "Upload Notes.mp4", "b");
+
+        // 输错两个字母仍有过半二元组重合
+        assertEquals(Collections.singletonList("a"), index.search("downlaod"));
+        // 重合率不足阈值的不返回
+        assertTrue(index.search("dxwxlxax").isEmpty());
+        // 忽略大小写与空白
+        assertEquals(Collections.singletonList("a"), index.search("download guide"));
+    }
+
+    @Test
+    public void compactAfterManyRemovals() {
+        TitleSearchIndex<String> index = newIndex();
+        for (int i = 0; i < 200; i++) {
+            index.put("k" + i, "video" + i + ".mp4", "v" + i);
+        }
+        // 删除过半后触发重建，ID 重新分配
+        for (int i = 0; i < 150; i++) {
+            index.remove("k" + i);
+        }
+        assertEquals(50, index.size());
+
+        List<String> results = index.search("video");
+        assertEquals(50, results.size());
+        for (String value : results) {
+            assertTrue(value, Integer.parseInt(value.substring(1)) >= 150);
+        }
+        assertEquals("v199", index.search("video199").get(0));
+
+        // 重建后继续新增与删除
+        index.put("k0", "video0.mp4", "v0");
+        index.remove("k199");
+        assertEquals(50, index.size());
+        assertEquals("v0", index.search("video0").get(0));
+        assertEquals(50, index.search("video").size());
+        assertFalse(index.search("video199").contains("v199"));
+    }
+
+    @Test
+    public void replaceExistingKey() {
+        TitleSearchIndex<String> index = newIndex();
+        index.put("a", "旧标题.mp4", "old");
+        index.put("a", "新标题.mp4", "new");
+
+        assertEquals(1, index.size());
+        assertTrue(index.search("旧").isEmpty());
+        assertTrue(index.search("jiu").isEmpty());
+        assertEquals(Collections.singletonList("new"), index.search("xin"));
+        assertEquals(Collections.singletonList("new"), index.search("标题"));
+
+        index.remove("a");
+        assertEquals(0, index.size());
+        assertTrue(index.search("标题").isEmpty());
+    }
+
+    @Test
+    public void searchTenThousandTitlesWithinOneMillisecond() {
+        String[] words = {"动画", "音乐", "新", "旧", "标题", "Download", "Guide", "第", "集", "合集"};
+        Random random = new Random(42);
+        TitleSearchIndex<String> index = newIndex();
+        for (int i = 0; i < 10000; i++) {
+            String title = words[random.nextInt(words.length)] + words[random.nextInt(words.length)] + i + ".mp4";
+            index.put("k" + i, title, title);
+        }
+
+        // 先预热，再统计平均耗时
+        List<String> queries = Arrays.asList("donghua", "dh", "动画", "downlaod", "yinyue", "标题12", "guide");
+        int rounds = 200;
+        long elapsed = 0;
+        for (int round = -rounds; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (String query : queries) {
+                assertFalse(query, index.search(query).isEmpty());
+            }
+            if (round >= 0) {
+                elapsed += System.nanoTime() - start;
+            }
+        }
+        double perQueryMs = elapsed / 1e6 / rounds / queries.size();
+        assertTrue("per query " + perQueryMs + " ms", perQueryMs < 1);
+    }
+}
@@ -0,0 +1,67 @@
+package com.yz.bdown.utils;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * 基准测试工具，供标记为 @Ignore 的对比基准手动运行时使用
+ */
+final class BenchmarkUtils {
+
+    private BenchmarkUtils() {
+    }
+
+    interface Work {
+        /**
+         * @return 本轮的结果大小，用于防止工作被优化掉
+         */
+        long run() throws IOException;
+    }
+
+    /**
+     * 预热后连续执行，统计当前线程的耗时与分配
+     *
+     * @return {每轮纳秒数, 每轮分配的字节数}
+     */
+    static long[] measure(int rounds, Work work) throws IOException {
+        warmup(rounds, work);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long total = 0;
+        for (int i = 0; i < rounds; i++) {
+            total += work.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        assertTrue(total > 0);
+        return new long[]{elapsed / rounds, allocated / rounds};
+    }
+
+    /**
+     * 预热后逐轮计时，取中位数以减少 GC 抖动的影响
+     *
+     * @return 每轮耗时的中位数（毫秒）
+     */
+    static double medianMs(int rounds, Work work) throws IOException {
+        warmup(rounds, work);
+        double[] samples = new double[rounds];
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            assertTrue(work.run() > 0);
+            samples[i] = (System.nanoTime() - start) / 1_000_000.0;
+        }
+        Arrays.sort(samples);
+        return samples[rounds / 2];
+    }
+
+    private static void warmup(int rounds, Work work) throws IOException {
+        for (int i = 0; i < rounds; i++) {
+            work.run();
+        }
+    }
+}
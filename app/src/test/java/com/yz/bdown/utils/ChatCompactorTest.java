@@ -0,0 +1,263 @@
+package com.yz.bdown.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.yz.bdown.callback.DeepSeekStreamCallback;
+import com.yz.bdown.contents.DeepSeekModelEnum;
+import com.yz.bdown.model.chat.ChatMessage;
+import com.yz.bdown.model.chat.ChatSummary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 上下文压缩测试
+ * 摘要请求由测试手动完成，模拟后台请求在之后的发送之间返回
+ */
+public class ChatCompactorTest {
+
+    private static final String SESSION = "session";
+    private static final int BUDGET = ChatContextWindow.inputBudget(DeepSeekModelEnum.R1);
+
+    @Test
+    public void keepShortConversation() {
+        FakeStore store = new FakeStore();
+        FakeSummarizer summarizer = new FakeSummarizer();
+        ChatCompactor compactor = new ChatCompactor(store, summarizer);
+
+        List<ChatMessage> history = new ArrayList<>();
+        addTurns(history, 4, 500);
+        List<ChatMessage> messages = compactor.build(history, history.size(), SESSION, BUDGET);
+        assertEquals(history.size(), messages.size());
+        assertEquals(0, summarizer.prompts.size());
+    }
+
+    @Test
+    public void summarizeOldTurnsOnce() {
+        FakeStore store = new FakeStore();
+        FakeSummarizer summarizer = new FakeSummarizer();
+        ChatCompactor compactor = new ChatCompactor(store, summarizer);
+
+        // 20 条约 1000 token 的消息，超过压缩阈值
+        List<ChatMessage> history = new ArrayList<>();
+        addTurns(history, 10, 1600);
+        addQuestion(history);
+        List<ChatMessage> messages = compactor.build(history, history.size(), SESSION, BUDGET);
+        assertEquals(ChatMessage.ROLE_USER, messages.get(0).getRole());
+        assertEquals(1, summarizer.prompts.size());
+        assertTrue(compactor.isSummarizing());
+
+        // 摘要返回前照常发送原文，也不重复请求
+        compactor.build(history, history.size(), SESSION, BUDGET);
+        assertEquals(1, summarizer.prompts.size());
+
+        summarizer.complete("用户在分析一段代码的性能问题");
+        ChatSummary saved = store.latest;
+        assertEquals(history.get(0).getId(), saved.getStartMessageId());
+        assertEquals(ChatMessage.ROLE_ASSISTANT, find(history, saved.getEndMessageId()).getRole());
+
+        // 之后的发送以摘要代替较早的对话，只保留最近的原文
+        messages = compactor.build(history, history.size(), SESSION, BUDGET);
+        assertEquals(ChatMessage.ROLE_SYSTEM, messages.get(0).getRole());
+        assertTrue(messages.get(0).getContent().contains("用户在分析一段代码的性能问题"));
+        assertEquals(ChatMessage.ROLE_USER, messages.get(1).getRole());
+        assertSame(history.get(history.size() - 1), messages.get(messages.size() - 1));
+        assertTrue(compactor.getTotalTokens() <= ChatCompactor.KEEP_RECENT_TOKENS + ChatCompactor.MAX_SUMMARY_TOKENS + 64);
+        assertEquals(1, summarizer.prompts.size());
+    }
+
+    @Test
+    public void boundPromptForLongSession() {
+        FakeStore store = new FakeStore();
+        FakeSummarizer summarizer = new FakeSummarizer();
+        ChatCompactor compactor = new ChatCompactor(store, summarizer);
+
+        List<ChatMessage> history = new ArrayList<>();
+        int maxTokens = 0;
+        for (int turn = 0; turn < 300; turn++) {
+            addQuestion(history);
+            compactor.build(history, history.size(), SESSION, BUDGET);
+            maxTokens = Math.max(maxTokens, compactor.getTotalTokens());
+            addAnswer(history, 1200);
+            // 摘要在下一次发送前返回
+            if (compactor.isSummarizing()) {
+                summarizer.complete("第 " + summarizer.prompts.size() + " 次合并的摘要");
+            }
+        }
+
+        int limit = ChatCompactor.COMPACT_THRESHOLD_TOKENS + ChatCompactor.MAX_SUMMARY_TOKENS + 2 * 1024;
+        assertTrue("max tokens " + maxTokens, maxTokens <= limit);
+        // 每次合并约 8K token 的原文，不会每轮都请求摘要
+        assertTrue("summaries " + summarizer.prompts.size(), summarizer.prompts.size() < 300 / 5);
+
+        // 滚动合并：新的请求包含上一份摘要，保存的区间始终从第一条消息开始
+        String lastPrompt = summarizer.prompts.get(summarizer.prompts.size() - 1).get(1).getContent();
+        assertTrue(lastPrompt.contains("次合并的摘要"));
+        assertEquals(history.get(0).getId(), store.latest.getStartMessageId());
+    }
+
+    @Test
+    public void reuseStoredSummaryAndRetryOnError() {
+        FakeStore store = new FakeStore();
+        FakeSummarizer summarizer = new FakeSummarizer();
+        List<ChatMessage> history = new ArrayList<>();
+        addTurns(history, 10, 1600);
+        addQuestion(history);
+
+        ChatSummary stored = new ChatSummary();
+        stored.setSessionId(SESSION);
+        stored.setStartMessageId(history.get(0).getId());
+        stored.setEndMessageId(history.get(9).getId());
+        stored.setContent("已保存的摘要");
+        store.latest = stored;
+
+        // 重新打开会话时直接使用数据库中的摘要，不再请求
+        ChatCompactor compactor = new ChatCompactor(store, summarizer);
+        List<ChatMessage> messages = compactor.build(history, history.size(), SESSION, BUDGET);
+        assertEquals(ChatMessage.ROLE_SYSTEM, messages.get(0).getRole());
+        assertSame(history.get(10), messages.get(1));
+        assertEquals(0, summarizer.prompts.size());
+
+        // 摘要失败后下次发送重试
+        addTurns(history, 10, 1600);
+        addQuestion(history);
+        compactor.build(history, history.size(), SESSION, BUDGET);
+        assertEquals(1, summarizer.prompts.size());
+        assertTrue(summarizer.prompts.get(0).get(1).getContent().contains("已保存的摘要"));
+        summarizer.fail();
+        assertSame(stored, store.latest);
+        compactor.build(history, history.size(), SESSION, BUDGET);
+        assertEquals(2, summarizer.prompts.size());
+
+        // 会话切换后返回的摘要只保存，不用于新的会话
+        compactor.reset();
+        List<ChatMessage> other = new ArrayList<>();
+        addQuestion(other);
+        other.get(0).setSessionId("other");
+        compactor.build(other, other.size(), "other", BUDGET);
+        summarizer.complete("旧会话的摘要");
+        assertEquals(SESSION, store.latest.getSessionId());
+        assertEquals(1, compactor.build(other, other.size(), "other", BUDGET).size());
+    }
+
+    @Test
+    public void retryWhenSummarizerNeverCallsBack() {
+        FakeStore store = new FakeStore();
+        List<List<ChatMessage>> prompts = new ArrayList<>();
+        long[] now = {0};
+        // 请求失败时没有任何回调的摘要接口
+        ChatCompactor compactor = new ChatCompactor(store, (prompt, callback) -> prompts.add(prompt), () -> now[0]);
+
+        List<ChatMessage> history = new ArrayList<>();
+        addTurns(history, 10, 1600);
+        addQuestion(history);
+        compactor.build(history, history.size(), SESSION, BUDGET);
+        assertEquals(1, prompts.size());
+
+        // 超时前不重复请求
+        now[0] = ChatCompactor.SUMMARY_TIMEOUT_MS - 1;
+        assertTrue(compactor.isSummarizing());
+        compactor.build(history, history.size(), SESSION, BUDGET);
+        assertEquals(1, prompts.size());
+
+        // 超时后不再等待，下一次发送重新请求
+        now[0] = ChatCompactor.SUMMARY_TIMEOUT_MS;
+        assertFalse(compactor.isSummarizing());
+        compactor.build(history, history.size(), SESSION, BUDGET);
+        assertEquals(2, prompts.size());
+        assertTrue(compactor.isSummarizing());
+    }
+
+    @Test
+    public void truncateLongSummary() {
+        assertEquals("短摘要", ChatCompactor.truncate("短摘要", 10));
+        String text = ChatCompactor.truncate(repeat("长", 5000), ChatCompactor.MAX_SUMMARY_TOKENS);
+        assertTrue(TokenCountUtils.count(text) <= ChatCompactor.MAX_SUMMARY_TOKENS);
+        assertTrue(text.endsWith("…"));
+        // 每个字符一个 token 时也能收敛
+        assertTrue(TokenCountUtils.count(ChatCompactor.truncate(repeat(",", 1025), 1024)) <= 1024);
+    }
+
+    private static void addTurns(List<ChatMessage> history, int turns, int chars) {
+        for (int i = 0; i < turns; i++) {
+            addQuestion(history);
+            history.get(history.size() - 1).setContent(repeat("问", chars));
+            addAnswer(history, chars);
+        }
+    }
+
+    private static void addQuestion(List<ChatMessage> history) {
+        add(history, new ChatMessage(ChatMessage.ROLE_USER, "继续分析下一段代码"));
+    }
+
+    private static void addAnswer(List<ChatMessage> history, int chars) {
+        add(history, new ChatMessage(ChatMessage.ROLE_ASSISTANT, repeat("答", chars)));
+    }
+
+    private static void add(List<ChatMessage> history, ChatMessage message) {
+        message.setId("m" + history.size());
+        message.setSessionId(SESSION);
+        history.add(message);
+    }
+
+    private static ChatMessage find(List<ChatMessage> history, String id) {
+        for (ChatMessage message : history) {
+            if (message.getId().equals(id)) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(text);
+        }
+        return sb.toString();
+    }
+
+    private static class FakeStore implements ChatCompactor.SummaryStore {
+        ChatSummary latest;
+
+        @Override
+        public ChatSummary getLatestSummary(String sessionId) {
+            return latest != null && latest.getSessionId().equals(sessionId) ? latest : null;
+        }
+
+        @Override
+        public void saveSummary(ChatSummary summary) {
+            latest = summary;
+        }
+    }
+
+    private static class FakeSummarizer implements ChatCompactor.Summarizer {
+        final List<List<ChatMessage>> prompts = new ArrayList<>();
+        DeepSeekStreamCallback pending;
+
+        @Override
+        public void summarize(List<ChatMessage> prompt, DeepSeekStreamCallback callback) {
+            assertNull(pending);
+            prompts.add(prompt);
+            pending = callback;
+        }
+
+        void complete(String content) {
+            DeepSeekStreamCallback callback = pending;
+            pending = null;
+            callback.onComplete(content, null);
+        }
+
+        void fail() {
+            DeepSeekStreamCallback callback = pending;
+            pending = null;
+            callback.onError("请求失败");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.yz.bdown.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.yz.bdown.contents.DeepSeekModelEnum;
+import com.yz.bdown.model.chat.ChatMessage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 上下文窗口与 token 计数测试
+ */
+public class ChatContextWindowTest {
+
+    @Test
+    public void countTokens() {
+        assertEquals(0, TokenCountUtils.count(""));
+        // 汉字约 0.6 token
+        assertEquals(60, TokenCountUtils.count(repeat("数", 100)));
+        // 常见单词一个 token，单个空格并入单词
+        assertEquals(4, TokenCountUtils.count("the quick brown fox"));
+        // 数字每 3 位一个 token
+        assertEquals(3, TokenCountUtils.count("1234567"));
+        // 代码里的符号各占一个 token，不会像按字符数 × 0.3 那样低估
+        String code = "for (int i = 0; i < n; i++) {\n    sum += a[i];\n}\n";
+        assertTrue(TokenCountUtils.count(code) > code.length() / 3);
+        // 4 个汉字 2.4 + 全角逗号 1，向上取整
+        assertEquals(TokenCountUtils.MESSAGE_OVERHEAD_TOKENS + 4, new ChatMessage(ChatMessage.ROLE_USER, "你好，世界").getTokenCount());
+    }
+
+    @Test
+    public void cacheTokenCount() {
+        ChatMessage message = new ChatMessage(ChatMessage.ROLE_USER, "你好");
+        int tokens = message.getTokenCount();
+        message.setContent(repeat("你好", 50));
+        assertTrue(message.getTokenCount() > tokens);
+    }
+
+    @Test
+    public void keepNewestWithinBudget() {
+        List<ChatMessage> history = conversation(10, 100);
+        int perMessage = history.get(0).getTokenCount();
+        ChatContextWindow window = new ChatContextWindow();
+
+        List<ChatMessage> messages = window.build(history, history.size(), null, perMessage * 4 + 1);
+        assertEquals(4, messages.size());
+        assertSame(history.get(6), messages.get(0));
+        assertSame(history.get(9), messages.get(3));
+        assertEquals(perMessage * 4, window.getTotalTokens());
+    }
+
+    @Test
+    public void extendIncrementally() {
+        List<ChatMessage> history = conversation(4, 10);
+        ChatContextWindow window = new ChatContextWindow();
+        int budget = 1000;
+
+        assertEquals(4, window.build(history, history.size(), null, budget).size());
+
+        // 追加消息后只处理新增部分，已在窗口中的消息不再计数
+        ChatMessage counted = new CountingMessage(ChatMessage.ROLE_USER, "新的问题");
+        history.add(counted);
+        history.add(new ChatMessage(ChatMessage.ROLE_ASSISTANT, "正在生成"));
+        List<ChatMessage> messages = window.build(history, history.size() - 1, null, budget);
+        assertEquals(5, messages.size());
+        assertSame(counted, messages.get(4));
+        window.build(history, history.size() - 1, null, budget);
+        assertEquals(1, ((CountingMessage) counted).counts);
+    }
+
+    @Test
+    public void dropLeadingAnswerAndRebuild() {
+        List<ChatMessage> history = conversation(6, 100);
+        int perMessage = history.get(0).getTokenCount();
+        ChatContextWindow window = new ChatContextWindow();
+
+        // 预算只够 3 条时，开头的回答随提问一起移出
+        List<ChatMessage> messages = window.build(history, history.size(), null, perMessage * 3);
+        assertEquals(2, messages.size());
+        assertEquals(ChatMessage.ROLE_USER, messages.get(0).getRole());
+
+        // 预算变大时重新计算，之前移出的消息重新加入
+        assertEquals(6, window.build(history, history.size(), null, perMessage * 6).size());
+
+        // 历史被替换时从头计算
+        List<ChatMessage> other = conversation(2, 10);
+        assertSame(other.get(0), window.build(other, other.size(), null, perMessage * 6).get(0));
+    }
+
+    @Test
+    public void filterSessionAndKeepLatest() {
+        List<ChatMessage> history = conversation(4, 10);
+        history.get(0).setSessionId("other");
+        history.get(1).setSessionId("other");
+        ChatContextWindow window = new ChatContextWindow();
+
+        List<ChatMessage> messages = window.build(history, history.size(), "current", 1000);
+        assertEquals(2, messages.size());
+        assertSame(history.get(2), messages.get(0));
+
+        // 最新一条消息超出预算时仍然保留
+        List<ChatMessage> single = new ArrayList<>();
+        single.add(new ChatMessage(ChatMessage.ROLE_USER, repeat("长", 1000)));
+        assertEquals(1, new ChatContextWindow().build(single, 1, null, 10).size());
+    }
+
+    @Test
+    public void reserveOutputBudget() {
+        assertEquals(24 * 1024, ChatContextWindow.inputBudget(DeepSeekModelEnum.R1));
+        assertEquals(56 * 1024, ChatContextWindow.inputBudget(DeepSeekModelEnum.V3));
+    }
+
+    private static List<ChatMessage> conversation(int size, int chars) {
+        List<ChatMessage> history = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String role = i % 2 == 0 ? ChatMessage.ROLE_USER : ChatMessage.ROLE_ASSISTANT;
+            history.add(new ChatMessage(role, repeat("字", chars)));
+        }
+        return history;
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(text);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 记录 token 数被读取的次数
+     */
+    private static class CountingMessage extends ChatMessage {
+        int counts;
+
+        CountingMessage(String role, String content) {
+            super(role, content);
+        }
+
+        @Override
+        public int getTokenCount() {
+            counts++;
+            return super.getTokenCount();
+        }
+    }
+}
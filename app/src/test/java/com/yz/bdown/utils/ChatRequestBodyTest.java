@@ -0,0 +1,135 @@
+package com.yz.bdown.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.yz.bdown.model.chat.ChatMessage;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * 对话请求体测试
+ * 包含 JSON 转义的正确性测试，以及与 JSONObject 树 + toString 方式的对比基准
+ */
+public class ChatRequestBodyTest {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    // 基准使用的历史：约 64K 字符，中文对话与代码混合
+    private static final int HISTORY_CHARS = 64 * 1024;
+    private static final int ROUNDS = 500;
+
+    @Test
+    public void writeEscapedJson() throws IOException {
+        List<ChatMessage> messages = Arrays.asList(
+                new ChatMessage(ChatMessage.ROLE_USER, "你好 \"引号\" \\ 反斜杠\n换行\t制表\u0001控制 😀 表情"),
+                new ChatMessage(ChatMessage.ROLE_ASSISTANT, ""));
+        ChatRequestBody body = new ChatRequestBody("deepseek-reasoner", true, 0.7, messages);
+
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        assertEquals(buffer.size(), body.contentLength());
+
+        JSONObject json = JSONObject.parseObject(buffer.readUtf8());
+        assertEquals("deepseek-reasoner", json.getString("model"));
+        assertTrue(json.getBooleanValue("stream"));
+        assertEquals(0.7, json.getDoubleValue("temperature"), 0);
+        JSONArray array = json.getJSONArray("messages");
+        assertEquals(2, array.size());
+        assertEquals("user", array.getJSONObject(0).getString("role"));
+        assertEquals(messages.get(0).getContent(), array.getJSONObject(0).getString("content"));
+        assertEquals("", array.getJSONObject(1).getString("content"));
+    }
+
+    @Test
+    public void matchTreeSerialization() throws IOException {
+        List<ChatMessage> messages = history();
+        ChatRequestBody body = new ChatRequestBody("deepseek-chat", false, 1.0, messages);
+
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        assertEquals(buffer.size(), body.contentLength());
+        assertEquals(JSONObject.parseObject(buildTree(messages)), JSONObject.parseObject(buffer.readUtf8()));
+    }
+
+    /**
+     * 对比基准：输出每次发送的耗时与分配的字节数，包含计算长度与写入连接
+     */
+    @Test
+    @Ignore("基准测试，手动运行")
+    public void benchmark() throws IOException {
+        List<ChatMessage> messages = history();
+        BufferedSink sink = Okio.buffer(Okio.blackhole());
+
+        long[] tree = BenchmarkUtils.measure(ROUNDS, () -> sendWithTree(messages, sink));
+        long[] streaming = BenchmarkUtils.measure(ROUNDS, () -> sendWithBody(messages, sink));
+        System.out.println("messages=" + messages.size() + ", chars=" + HISTORY_CHARS);
+        System.out.println("JSONObject + toString: " + tree[0] / 1000 + " us/send, " + tree[1] / 1024 + " KB/send");
+        System.out.println("ChatRequestBody:       " + streaming[0] / 1000 + " us/send, " + streaming[1] / 1024 + " KB/send");
+    }
+
+    /**
+     * 原实现：构建 JSONObject 树，toString 后由 RequestBody.create 转为字节数组
+     */
+    private static long sendWithTree(List<ChatMessage> messages, BufferedSink sink) throws IOException {
+        RequestBody body = RequestBody.create(buildTree(messages), JSON);
+        body.writeTo(sink);
+        sink.flush();
+        return body.contentLength();
+    }
+
+    private static long sendWithBody(List<ChatMessage> messages, BufferedSink sink) throws IOException {
+        RequestBody body = new ChatRequestBody("deepseek-chat", false, 1.0, messages);
+        long length = body.contentLength();
+        body.writeTo(sink);
+        sink.flush();
+        return length;
+    }
+
+    private static String buildTree(List<ChatMessage> messages) {
+        JSONObject jsonBody = new JSONObject();
+        jsonBody.put("model", "deepseek-chat");
+        jsonBody.put("stream", false);
+        jsonBody.put("temperature", 1.0);
+
+        JSONArray messagesArray = new JSONArray();
+        for (ChatMessage m : messages) {
+            JSONObject msgObj = new JSONObject();
+            msgObj.put("role", m.getRole());
+            msgObj.put("content", m.getContent());
+            messagesArray.add(msgObj);
+        }
+        jsonBody.put("messages", messagesArray);
+        return jsonBody.toString();
+    }
+
+    private static List<ChatMessage> history() {
+        String question = "请分析下面这段代码的性能问题，并给出优化建议：\n";
+        String code = "```java\nfor (int i = 0; i < list.size(); i++) {\n    String s = \"item: \" + list.get(i);\n    result += s;\n}\n```\n";
+        String answer = "**结论**：循环中使用 `+=` 拼接字符串，每次都会复制整个结果，时间复杂度为 O(n²)。"
+                + "建议改用 `StringBuilder`，并在循环外预估容量。\n\n| 方案 | 复杂度 |\n|---|---|\n| += | O(n²) |\n| StringBuilder | O(n) |\n";
+        List<ChatMessage> messages = new ArrayList<>();
+        int chars = 0;
+        while (chars < HISTORY_CHARS) {
+            boolean user = messages.size() % 2 == 0;
+            String content = user ? question + code : answer + code;
+            messages.add(new ChatMessage(user ? ChatMessage.ROLE_USER : ChatMessage.ROLE_ASSISTANT, content));
+            chars += content.length();
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,207 @@
+package com.yz.bdown.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.alibaba.fastjson2.JSONObject;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * DeepSeek 流式响应解析测试
+ * 包含 SSE 格式的正确性测试，以及与逐行 String + JSONObject 解析方式的对比基准
+ */
+public class DeepSeekStreamParserTest {
+
+    // 基准使用的流：推理 3000 个分片 + 回答 2000 个分片，接近一次长 R1 回答
+    private static final int REASONING_CHUNKS = 3000;
+    private static final int CONTENT_CHUNKS = 2000;
+    private static final int ROUNDS = 50;
+
+    @Test
+    public void parseDeltas() throws IOException {
+        String stream = chunk("好的", null) + chunk(null, "你好") + chunk(null, "，世界\n") + "data: [DONE]\n\n";
+        Recorder recorder = new Recorder();
+
+        assertTrue(new DeepSeekStreamParser(source(stream)).parse(recorder));
+        assertEquals("好的", recorder.reasoning.toString());
+        assertEquals("你好，世界\n", recorder.content.toString());
+        assertEquals(3, recorder.deltas);
+    }
+
+    @Test
+    public void parseMultiLineDataAndComments() throws IOException {
+        String stream = ": keep-alive\r\n"
+                + "\r\n"
+                + "event: message\r\n"
+                + "data: {\"choices\":[{\"index\":0,\r\n"
+                + "data: \"delta\":{\"content\":\"a\"}}]}\r\n"
+                + "\r\n"
+                + "data:{\"choices\":[{\"delta\":{\"content\":\"b\"}},{\"delta\":{\"content\":\"x\"}}]}\n"
+                + "\n"
+                + "event: ping\n"
+                + "data: {\"choices\":[{\"delta\":{\"content\":\"ignored\"}}]}\n"
+                + "\n"
+                + "event: error\n"
+                + "data: {\"error\":\"overloaded\"}\n"
+                + "\n"
+                + "data: not json\n"
+                + "\n"
+                + "data: [DONE]\n"
+                + "\n";
+        Recorder recorder = new Recorder();
+
+        assertTrue(new DeepSeekStreamParser(source(stream)).parse(recorder));
+        assertEquals("ab", recorder.content.toString());
+        assertEquals(1, recorder.errors.size());
+        assertEquals("{\"error\":\"overloaded\"}", recorder.errors.get(0));
+        assertEquals(1, recorder.malformed);
+    }
+
+    @Test
+    public void parseUnterminatedStream() throws IOException {
+        // 最后一个事件没有以空行结尾，按 SSE 规范丢弃
+        String stream = chunk(null, "a") + "data: {\"choices\":[{\"delta\":{\"content\":\"b\"}}]}";
+        Recorder recorder = new Recorder();
+
+        assertFalse(new DeepSeekStreamParser(source(stream)).parse(recorder));
+        assertEquals("a", recorder.content.toString());
+    }
+
+    @Test
+    public void stopWhenCancelled() throws IOException {
+        String stream = chunk(null, "a") + chunk(null, "b") + "data: [DONE]\n\n";
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onDelta(String reasoningContent, String content) {
+                super.onDelta(reasoningContent, content);
+                stopped.set(true);
+            }
+        };
+
+        // 已读入缓冲的后续事件不再分发
+        assertFalse(new DeepSeekStreamParser(source(stream)).parse(recorder, stopped));
+        assertEquals("a", recorder.content.toString());
+    }
+
+    /**
+     * 对比基准：输出耗时与每轮分配的字节数
+     */
+    @Test
+    @Ignore("基准测试，手动运行")
+    public void benchmark() throws IOException {
+        byte[] stream = recordedStream().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+
+        long[] lines = BenchmarkUtils.measure(ROUNDS, () -> parseWithLines(stream));
+        long[] parser = BenchmarkUtils.measure(ROUNDS, () -> parseWithParser(stream));
+        System.out.println("stream=" + stream.length + " bytes, events=" + (REASONING_CHUNKS + CONTENT_CHUNKS));
+        System.out.println("readUtf8Line + JSONObject: " + lines[0] / 1000 + " us/round, " + lines[1] / 1024 + " KB/round");
+        System.out.println("DeepSeekStreamParser:      " + parser[0] / 1000 + " us/round, " + parser[1] / 1024 + " KB/round");
+    }
+
+    /**
+     * 原实现：每行生成 String，data 行截取子串，每个分片解析为 JSONObject
+     */
+    private static int parseWithLines(byte[] stream) throws IOException {
+        BufferedSource source = new Buffer().write(stream);
+        int length = 0;
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (!line.startsWith("data: ")) {
+                continue;
+            }
+            String data = line.substring(6);
+            if ("[DONE]".equals(data)) {
+                break;
+            }
+            JSONObject delta = JSONObject.parseObject(data)
+                    .getJSONArray("choices")
+                    .getJSONObject(0)
+                    .getJSONObject("delta");
+            String reasoning = delta.getString("reasoning_content");
+            String content = delta.getString("content");
+            length += (reasoning != null ? reasoning.length() : 0) + (content != null ? content.length() : 0);
+        }
+        return length;
+    }
+
+    private static int parseWithParser(byte[] stream) throws IOException {
+        Recorder recorder = new Recorder();
+        new DeepSeekStreamParser(new Buffer().write(stream)).parse(recorder);
+        return recorder.reasoning.length() + recorder.content.length();
+    }
+
+    /**
+     * 按 DeepSeek 接口的分片格式生成的响应流
+     */
+    private static String recordedStream() {
+        String[] tokens = {"我们", "需要", "分析", "这个", "问题", "，", "首先", "考虑", "数据", "的", "分布",
+                "。", "\n", "function", "(", "x", ")", " {", " return", " x", " * ", "2", "; }", "**", "结论", "**"};
+        StringBuilder sb = new StringBuilder();
+        sb.append(": keep-alive\n\n");
+        for (int i = 0; i < REASONING_CHUNKS; i++) {
+            sb.append(chunk(tokens[i % tokens.length], null));
+        }
+        for (int i = 0; i < CONTENT_CHUNKS; i++) {
+            sb.append(chunk(null, tokens[(i * 7) % tokens.length]));
+        }
+        sb.append("data: [DONE]\n\n");
+        return sb.toString();
+    }
+
+    private static String chunk(String reasoning, String content) {
+        return "data: {\"id\":\"0f0c6a7e-6d2b-4bb4-9a65-5b8d3a1f2c11\",\"object\":\"chat.completion.chunk\","
+                + "\"created\":1738400000,\"model\":\"deepseek-reasoner\",\"system_fingerprint\":\"fp_7e73fd9a08\","
+                + "\"choices\":[{\"index\":0,\"delta\":{\"content\":" + quote(content)
+                + ",\"reasoning_content\":" + quote(reasoning) + "},"
+                + "\"logprobs\":null,\"finish_reason\":null}]}\n\n";
+    }
+
+    private static String quote(String value) {
+        return value == null ? "null" : JSONObject.toJSONString(value);
+    }
+
+    private static BufferedSource source(String stream) {
+        return new Buffer().writeUtf8(stream);
+    }
+
+    private static class Recorder implements DeepSeekStreamParser.Listener {
+        final StringBuilder reasoning = new StringBuilder();
+        final StringBuilder content = new StringBuilder();
+        final List<String> errors = new ArrayList<>();
+        int deltas;
+        int malformed;
+
+        @Override
+        public void onDelta(String reasoningContent, String content) {
+            deltas++;
+            if (reasoningContent != null) {
+                reasoning.append(reasoningContent);
+            }
+            if (content != null) {
+                this.content.append(content);
+            }
+        }
+
+        @Override
+        public void onError(String data) {
+            errors.add(data);
+        }
+
+        @Override
+        public void onMalformed(String data) {
+            malformed++;
+        }
+    }
+}
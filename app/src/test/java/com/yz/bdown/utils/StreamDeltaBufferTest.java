@@ -0,0 +1,275 @@
+package com.yz.bdown.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.html.HtmlRenderer;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 流式增量缓冲测试
+ * 包含合并与间隔的正确性测试，以及逐分片刷新与按帧合并刷新的掉帧对比基准
+ */
+public class StreamDeltaBufferTest {
+
+    private static final double FRAME_MS = 1000.0 / 60;
+    // 每帧除消息刷新外的固定开销（测量、布局、绘制）
+    private static final double BASE_FRAME_MS = 2;
+    // JVM 上测得的渲染耗时换算到中端手机的倍数，Markwon 生成 Span 与 TextView 排版的开销未计入
+    private static final double[] DEVICE_SLOWDOWNS = {1, 4, 8};
+
+    private static final int REASONING_CHUNKS = 3000;
+    private static final int CONTENT_CHUNKS = 2000;
+
+    @Test
+    public void coalesceDeltas() {
+        StreamDeltaBuffer buffer = new StreamDeltaBuffer(0);
+
+        assertTrue(buffer.append("思考", null));
+        assertFalse(buffer.append(null, "回答"));
+        assertFalse(buffer.append("中", "内容"));
+
+        Pair<String, String> delta = buffer.drain(0);
+        assertEquals("思考中", delta.getLeft());
+        assertEquals("回答内容", delta.getRight());
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.drain(1));
+
+        // 只有一侧有内容时另一侧为 null
+        assertTrue(buffer.append(null, "a"));
+        delta = buffer.drain(2);
+        assertNull(delta.getLeft());
+        assertEquals("a", delta.getRight());
+    }
+
+    @Test
+    public void respectMinInterval() {
+        StreamDeltaBuffer buffer = new StreamDeltaBuffer(50);
+        assertEquals(0, buffer.delayUntilDue(1000));
+
+        buffer.append(null, "a");
+        buffer.drain(1000);
+        buffer.append(null, "b");
+        assertEquals(50, buffer.delayUntilDue(1000));
+        assertEquals(34, buffer.delayUntilDue(1016));
+        assertEquals(0, buffer.delayUntilDue(1050));
+    }
+
+    /**
+     * 对比基准：按录制的分片到达节奏模拟主线程，统计流式输出期间的掉帧数
+     * 拼接与刷新耗时按长度线性估算，系数由实际的字符串拼接与 Markdown 解析渲染测得，避免 GC 抖动影响模拟
+     */
+    @Test
+    @Ignore("基准测试，手动运行")
+    public void benchmark() throws IOException {
+        List<Chunk> chunks = recordedChunks();
+        CostModel cost = CostModel.calibrate(chunks);
+        System.out.println("chunks=" + chunks.size() + ", duration=" + (int) chunks.get(chunks.size() - 1).arrivalMs
+                + " ms, " + cost);
+
+        for (double slowdown : DEVICE_SLOWDOWNS) {
+            System.out.println("slowdown x" + (int) slowdown);
+            print("per-chunk post:        ", simulatePerChunk(chunks, cost, slowdown));
+            print("coalesced, per frame:  ", simulateCoalesced(chunks, cost, 0, slowdown));
+            print("coalesced, min 50 ms:  ", simulateCoalesced(chunks, cost, 50, slowdown));
+            print("coalesced, min 100 ms: ", simulateCoalesced(chunks, cost, 100, slowdown));
+        }
+    }
+
+    private static void print(String name, Result result) {
+        System.out.println(name + result.dropped + "/" + result.frames + " frames dropped, "
+                + result.updates + " updates, main thread busy " + (int) result.busyMs + " ms");
+    }
+
+    /**
+     * 原实现：每个分片投递一次主线程消息并拼接内容，RecyclerView 在下一帧重新绑定，每个有改动的帧都渲染整条消息
+     */
+    private static Result simulatePerChunk(List<Chunk> chunks, CostModel cost, double slowdown) {
+        Result result = new Result();
+        int length = 0;
+        double now = 0;
+        int next = 0;
+        boolean dirty = false;
+
+        for (long frame = 0; next < chunks.size() || dirty; frame++) {
+            double vsync = frame * FRAME_MS;
+            while (next < chunks.size() && chunks.get(next).arrivalMs <= vsync) {
+                Chunk chunk = chunks.get(next++);
+                length += chunk.length();
+                double work = cost.append(length) * slowdown;
+                now = Math.max(now, chunk.arrivalMs) + work;
+                result.busyMs += work;
+                dirty = true;
+            }
+
+            double work = BASE_FRAME_MS;
+            if (dirty) {
+                work += cost.render(length) * slowdown;
+                result.updates++;
+                dirty = false;
+            }
+            now = runFrame(result, vsync, now, work);
+        }
+        return result;
+    }
+
+    /**
+     * 新实现：分片在网络线程写入 StreamDeltaBuffer，主线程每帧最多取出一次
+     */
+    private static Result simulateCoalesced(List<Chunk> chunks, CostModel cost, long minIntervalMs, double slowdown) {
+        Result result = new Result();
+        StreamDeltaBuffer buffer = new StreamDeltaBuffer(minIntervalMs);
+        int length = 0;
+        double now = 0;
+        int next = 0;
+
+        for (long frame = 0; next < chunks.size() || !buffer.isEmpty(); frame++) {
+            double vsync = frame * FRAME_MS;
+            while (next < chunks.size() && chunks.get(next).arrivalMs <= vsync) {
+                Chunk chunk = chunks.get(next++);
+                buffer.append(chunk.reasoning, chunk.content);
+            }
+
+            double work = BASE_FRAME_MS;
+            long frameMs = (long) Math.max(now, vsync);
+            if (buffer.delayUntilDue(frameMs) == 0) {
+                Pair<String, String> delta = buffer.drain(frameMs);
+                if (delta != null) {
+                    length += length(delta.getLeft()) + length(delta.getRight());
+                    work += (cost.append(length) + cost.render(length)) * slowdown;
+                    result.updates++;
+                }
+            }
+            now = runFrame(result, vsync, now, work);
+        }
+        return result;
+    }
+
+    /**
+     * 执行一帧：主线程仍在忙时本帧错过，帧内工作超过一帧时长也算掉帧
+     *
+     * @return 主线程空闲的时刻
+     */
+    private static double runFrame(Result result, double vsync, double now, double work) {
+        result.frames++;
+        double start = Math.max(now, vsync);
+        if (start >= vsync + FRAME_MS) {
+            result.dropped++;
+            return now;
+        }
+        double end = start + work;
+        if (end > vsync + FRAME_MS) {
+            result.dropped++;
+        }
+        result.busyMs += work - BASE_FRAME_MS;
+        return end;
+    }
+
+    private static int length(String text) {
+        return text != null ? text.length() : 0;
+    }
+
+    /**
+     * 拼接与刷新的耗时模型：与 DeepSeekFragment 相同地用 String 拼接内容，刷新时对全文做 Markdown 解析与渲染
+     */
+    private static class CostModel {
+        private static final int ROUNDS = 30;
+
+        double appendBaseMs, appendPerCharMs;
+        double renderBaseMs, renderPerCharMs;
+
+        static CostModel calibrate(List<Chunk> chunks) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            for (Chunk chunk : chunks) {
+                sb.append(chunk.reasoning != null ? chunk.reasoning : chunk.content);
+            }
+            String small = sb.substring(0, 1000);
+            String large = sb.toString();
+
+            Parser parser = Parser.builder().build();
+            HtmlRenderer renderer = HtmlRenderer.builder().build();
+            CostModel model = new CostModel();
+            double renderSmall = BenchmarkUtils.medianMs(ROUNDS, () -> renderer.render(parser.parse(small)).length());
+            double renderLarge = BenchmarkUtils.medianMs(ROUNDS, () -> renderer.render(parser.parse(large)).length());
+            double appendSmall = BenchmarkUtils.medianMs(ROUNDS, () -> (small + "。").length());
+            double appendLarge = BenchmarkUtils.medianMs(ROUNDS, () -> (large + "。").length());
+
+            model.renderPerCharMs = (renderLarge - renderSmall) / (large.length() - small.length());
+            model.renderBaseMs = Math.max(0, renderSmall - model.renderPerCharMs * small.length());
+            model.appendPerCharMs = Math.max(0, (appendLarge - appendSmall) / (large.length() - small.length()));
+            model.appendBaseMs = Math.max(0, appendSmall - model.appendPerCharMs * small.length());
+            return model;
+        }
+
+        double append(int length) {
+            return appendBaseMs + appendPerCharMs * length;
+        }
+
+        double render(int length) {
+            return renderBaseMs + renderPerCharMs * length;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.ROOT, "render(10k chars)=%.2f ms, append(10k chars)=%.3f ms",
+                    render(10_000), append(10_000));
+        }
+    }
+
+    /**
+     * 按 DeepSeek 接口的到达节奏生成分片：服务端逐个推送，间隔 5~25ms，
+     * 移动网络偶尔停顿 200~500ms，之后积压的 10~30 个分片同时到达
+     */
+    private static List<Chunk> recordedChunks() {
+        String[] tokens = {"我们", "需要", "分析", "这个", "问题", "，", "首先", "考虑", "数据", "的", "分布",
+                "。", "\n", "- ", "`x`", " 和 ", "**", "结论", "**", "\n\n", "| a | b |\n", "```\n", "return x * 2;\n"};
+        Random random = new Random(42);
+        List<Chunk> chunks = new ArrayList<>();
+        double time = 0;
+        int total = REASONING_CHUNKS + CONTENT_CHUNKS;
+        while (chunks.size() < total) {
+            boolean stalled = random.nextInt(100) < 3;
+            time += stalled ? 200 + random.nextInt(300) : 5 + random.nextInt(20);
+            int batch = stalled ? 10 + random.nextInt(20) : 1;
+            for (int i = 0; i < batch && chunks.size() < total; i++) {
+                String token = tokens[random.nextInt(tokens.length)];
+                boolean reasoning = chunks.size() < REASONING_CHUNKS;
+                chunks.add(new Chunk(time, reasoning ? token : null, reasoning ? null : token));
+            }
+        }
+        return chunks;
+    }
+
+    private static class Chunk {
+        final double arrivalMs;
+        final String reasoning;
+        final String content;
+
+        Chunk(double arrivalMs, String reasoning, String content) {
+            this.arrivalMs = arrivalMs;
+            this.reasoning = reasoning;
+            this.content = content;
+        }
+
+        int length() {
+            return StreamDeltaBufferTest.length(reasoning) + StreamDeltaBufferTest.length(content);
+        }
+    }
+
+    private static class Result {
+        int frames;
+        int dropped;
+        int updates;
+        double busyMs;
+    }
+}